@@ -0,0 +1,35 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.operator.Apply;
+import org.opt4j.operator.copy.Copy;
+
+/**
+ * Copies a {@link SPLBitGenotype} word by word.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+@Apply(SPLBitGenotype.class)
+public class CopySPLBitGenotype implements Copy<SPLBitGenotype> {
+
+	@Override
+	public SPLBitGenotype copy(SPLBitGenotype genotype) {
+		return new SPLBitGenotype(genotype);
+	}
+}
+// EOF
@@ -16,6 +16,8 @@
 
 package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
 
+import java.util.Random;
+
 import org.opt4j.common.random.Rand;
 import org.opt4j.core.problem.Genotype;
 import org.opt4j.operator.Apply;
@@ -23,7 +25,10 @@ import org.opt4j.operator.neighbor.Neighbor;
 import org.opt4j.operator.neighbor.NeighborBoolean;
 import org.opt4j.operator.neighbor.NeighborDouble;
 import org.opt4j.operator.normalize.NormalizeDouble;
+import org.opt4j.start.Constant;
+
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 
 
 /**
@@ -34,13 +39,62 @@ import com.google.inject.Inject;
  *
  */
 @Apply(SPLGenotype.class)
+@Singleton
 public class NeighborSPLGenotype implements Neighbor<Genotype>{
 
+	/**
+	 * The kinds of changes applied to a genotype.
+	 */
+	public enum Move {
+		/**
+		 * assign a random product to a random segment
+		 */
+		X,
+		/**
+		 * raise the price of a random product by a random fraction of a price
+		 * step, or to the next price of the price grid
+		 */
+		P,
+		/**
+		 * assign a random segment the produced product with the highest
+		 * surplus
+		 */
+		REASSIGN,
+		/**
+		 * swap the products of two segments
+		 */
+		SWAP,
+		/**
+		 * remove a product from the product line and assign its segments the
+		 * remaining product with the highest surplus
+		 */
+		DROP,
+		/**
+		 * raise the price of a product as far as none of its segments prefers
+		 * another product or the competitor
+		 */
+		RAISE;
+	}
+
+	private SPLProblem problem;
 	private SPLProblemDescription description;
+	private final boolean priceGrid;
 	private Rand random;
 	protected final NormalizeDouble normalize;
 	protected final NeighborDouble doubleNeighbor;
 	protected final NeighborBoolean booleanNeighbor;
+
+	// the move applied by the last call of neighbor(Genotype)
+	private Move lastMove = null;
+
+	// cumulated selection weights of the moves in the order of Move
+	private final double[] weights;
+
+	private SPLMoveSelection selection = null;
+
+	// the generator of the current thread if given to
+	// neighbor(Genotype, Random)
+	private final ThreadLocal<Random> stream = new ThreadLocal<Random>();
 	
 	/**
 	 * creates a new neighbor creator.
@@ -48,15 +102,65 @@ public class NeighborSPLGenotype implements Neighbor<Genotype>{
 	 * @param problem
 	 * @param random
 	 * @param normalize
+	 * @param moveX
+	 *            the selection weight of the X move
+	 * @param moveP
+	 *            the selection weight of the P move
+	 * @param moveReassign
+	 *            the selection weight of the REASSIGN move
+	 * @param moveSwap
+	 *            the selection weight of the SWAP move
+	 * @param moveDrop
+	 *            the selection weight of the DROP move
+	 * @param moveRaise
+	 *            the selection weight of the RAISE move
+	 * @param priceGrid
+	 *            true if the prices are restricted to the
+	 *            {@link SPLPriceGrid}
 	 */
 	@Inject
-	public NeighborSPLGenotype(SPLProblem problem, Rand random, NormalizeDouble normalize){
+	public NeighborSPLGenotype(SPLProblem problem, Rand random, NormalizeDouble normalize,
+			@Constant(value = "moveX") double moveX,
+			@Constant(value = "moveP") double moveP,
+			@Constant(value = "moveReassign") double moveReassign,
+			@Constant(value = "moveSwap") double moveSwap,
+			@Constant(value = "moveDrop") double moveDrop,
+			@Constant(value = "moveRaise") double moveRaise,
+			@Constant(value = "priceGrid") boolean priceGrid){
 		
+		this.problem = problem;
 		this.description = problem.getSPLProblemDescription();
+		this.priceGrid = priceGrid;
 		this.random = random;
 		this.normalize = normalize;
 		this.doubleNeighbor = new NeighborDouble(normalize, random);
 		this.booleanNeighbor = new NeighborBoolean(random);
+
+		double[] w = { moveX, moveP, moveReassign, moveSwap, moveDrop, moveRaise };
+		this.weights = new double[w.length];
+		double sum = 0.0d;
+		for(int m = 0; m < w.length; m++){
+			if(w[m] < 0.0d)
+				throw new IllegalArgumentException("The weight of move "
+						+ Move.values()[m] + " is negative.");
+			sum += w[m];
+			weights[m] = sum;
+		}
+		if(sum <= 0.0d)
+			throw new IllegalArgumentException("At least one move needs a positive weight.");
+	}
+
+	/**
+	 * Sets the selection that chooses the moves instead of the fixed weights.
+	 * Is only injected if a selection is bound, e.g. by the
+	 * {@link SPLMoveSelectionModule}.
+	 * 
+	 * @param selection
+	 *            the move selection
+	 */
+	@Inject(optional = true)
+	public void setSelection(SPLMoveSelection selection) {
+		this.selection = selection;
 	}
 	
 	/**
@@ -67,16 +171,110 @@ public class NeighborSPLGenotype implements Neighbor<Genotype>{
 	 */
 	@Override
 	public void neighbor(Genotype genotype) {
-		SPLGenotype splGenotype = (SPLGenotype) genotype;
-		
-		// Randomly decide which part of the genotype to alter
-		if(random.nextBoolean()){
-			neighborX(splGenotype);
+		lastMove = change((SPLGenotype) genotype);
+	}
+
+	/**
+	 * Creates a neighbor like {@link #neighbor(Genotype)}, but draws all
+	 * random numbers from the given generator instead of the shared one and
+	 * returns the applied move instead of keeping it. Can be called by
+	 * several threads at once.
+	 * 
+	 * @param genotype
+	 *            the genotype to change
+	 * @param random
+	 *            the generator
+	 * @return the applied move
+	 */
+	public Move neighbor(Genotype genotype, Random random) {
+		stream.set(random);
+		try {
+			return change((SPLGenotype) genotype);
+		} finally {
+			stream.remove();
+		}
+	}
+
+	/**
+	 * Chooses a move and applies it.
+	 * 
+	 * @return the applied move
+	 */
+	private Move change(SPLGenotype genotype) {
+		if(selection != null)
+			return apply(selection.select(random()), genotype);
+
+		// Randomly decide which move to apply
+		double r = random().nextDouble() * weights[weights.length - 1];
+		int m = 0;
+		while(m < weights.length - 1 && r >= weights[m])
+			m++;
+
+		return apply(Move.values()[m], genotype);
+	}
+
+	/**
+	 * @return the generator of the current thread
+	 */
+	private Random random() {
+		Random r = stream.get();
+		return r != null ? r : random;
+	}
+
+	/**
+	 * Applies a move to the genotype. A guided move that cannot improve the
+	 * genotype falls back to the X move (or the P move for RAISE), thus every
+	 * call changes the genotype.
+	 * 
+	 * @param move
+	 *            the move to apply
+	 * @param genotype
+	 *            the genotype to change
+	 * @return the applied move
+	 */
+	protected Move apply(Move move, SPLGenotype genotype) {
+		boolean applied = true;
+		switch(move){
+		case X:
+			neighborX(genotype);
+			break;
+		case P:
+			neighborP(genotype);
+			break;
+		case REASSIGN:
+			applied = neighborReassign(genotype);
+			break;
+		case SWAP:
+			applied = neighborSwap(genotype);
+			break;
+		case DROP:
+			applied = neighborDrop(genotype);
+			break;
+		case RAISE:
+			applied = neighborRaise(genotype);
+			break;
+		}
+
+		if(applied){
+			return move;
+		}else if(move == Move.RAISE){
+			neighborP(genotype);
+			return Move.P;
 		}else{
-			neighborP(splGenotype);
+			neighborX(genotype);
+			return Move.X;
 		}
 	}
 
+	/**
+	 * @return the move applied by the last call of {@link #neighbor(Genotype)}
+	 *         (calls of {@link #neighbor(Genotype, Random)} return their move
+	 *         instead)
+	 */
+	public Move getLastMove() {
+		return lastMove;
+	}
+
 	/**
 	 * Select a price that satisfies the constraint of the SPL portfolio
 	 * optimization problem.
@@ -84,12 +282,20 @@ public class NeighborSPLGenotype implements Neighbor<Genotype>{
 	 * @param genotype
 	 */
 	protected void neighborP(SPLGenotype genotype){
-		int r = random.nextInt(genotype.getP().size());
+		int r = random().nextInt(genotype.getP().size());
 
+		if(priceGrid){
+			if(r != 0){
+				SPLPriceGrid grid = problem.getPriceGrid();
+				int k = grid.index(r, genotype.getP().get(r)) + 1;
+				genotype.getP().set(r, grid.price(r, k > grid.getSteps() ? 0 : k));
+			}
+			return;
+		}
 		
 		double value = 0.0d;
 		if(r != 0){
-			value = genotype.getP().get(r) + random.nextDouble() * description.priceStep(r);
+			value = genotype.getP().get(r) + random().nextDouble() * description.priceStep(r);
 		}// Dont change the initital price of the 0 product
 		
 		if(value > genotype.getP().getUpperBound(r))
@@ -101,14 +307,193 @@ public class NeighborSPLGenotype implements Neighbor<Genotype>{
 	
 	protected void neighborX(SPLGenotype genotype){
 			
-		int i      = random.nextInt(description.getCustomer().numberOfSegments());
-		int change = random.nextInt(description.getFirm().NumberOfProducts());
+		int i      = random().nextInt(description.getCustomer().numberOfSegments());
+		int change = random().nextInt(description.getFirm().NumberOfProducts());
 		int offset = genotype.getP().size();
 		
 		for(int j = 0; j < description.getFirm().NumberOfProducts(); j++){
 			genotype.getX().set(i*offset + j, j == change);
 		}	
 	}
+
+	/**
+	 * Assigns a random segment the produced product that gives it the highest
+	 * surplus.
+	 * 
+	 * @return false if the segment has this product assigned already
+	 */
+	protected boolean neighborReassign(SPLGenotype genotype){
+		int i = random().nextInt(description.getCustomer().numberOfSegments());
+		boolean[] y = produced(genotype);
+		int best = bestProduct(genotype, i, y, -1);
+
+		if(best < 0 || best == assigned(genotype, i))
+			return false;
+		assign(genotype, i, best);
+		return true;
+	}
+
+	/**
+	 * Swaps the products of two random segments.
+	 * 
+	 * @return false if the segments have the same product assigned
+	 */
+	protected boolean neighborSwap(SPLGenotype genotype){
+		int segments = description.getCustomer().numberOfSegments();
+		if(segments < 2)
+			return false;
+
+		int i1 = random().nextInt(segments);
+		int i2 = random().nextInt(segments - 1);
+		if(i2 >= i1)
+			i2++;
+
+		int j1 = assigned(genotype, i1);
+		int j2 = assigned(genotype, i2);
+		if(j1 == j2)
+			return false;
+		assign(genotype, i1, j2);
+		assign(genotype, i2, j1);
+		return true;
+	}
+
+	/**
+	 * Removes a random product from the product line. Each of its segments gets
+	 * the remaining produced product with the highest surplus, or the 0
+	 * product if nothing else is produced.
+	 * 
+	 * @return false if nothing but the 0 product is produced
+	 */
+	protected boolean neighborDrop(SPLGenotype genotype){
+		boolean[] y = produced(genotype);
+		int count = 0;
+		for(int j = 1; j < y.length; j++){
+			if(y[j])
+				count++;
+		}
+		if(count == 0)
+			return false;
+
+		// select the product to drop among the produced ones
+		int drop = 0;
+		for(int n = random().nextInt(count); ; drop++){
+			if(drop > 0 && y[drop] && n-- == 0)
+				break;
+		}
+		y[drop] = false;
+
+		for(int i = 0; i < description.getCustomer().numberOfSegments(); i++){
+			if(assigned(genotype, i) == drop){
+				int best = bestProduct(genotype, i, y, drop);
+				assign(genotype, i, best < 0 ? 0 : best);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Raises the price of a random product up to the highest price at which
+	 * each of its segments still gets at least the surplus of its best
+	 * alternative, i.e. another produced product or the competitor.
+	 * 
+	 * @return false if the price cannot be raised
+	 */
+	protected boolean neighborRaise(SPLGenotype genotype){
+		int products = genotype.getP().size();
+		if(products < 2)
+			return false;
+		int j = 1 + random().nextInt(products - 1); // the 0 product keeps its price
+
+		SPLProblemDescription.Customer c = description.getCustomer();
+		boolean[] y = produced(genotype);
+		double[] threshold = new double[c.numberOfSegments()];
+		double price = genotype.getP().getUpperBound(j);
+		boolean assignedToJ = false;
+
+		for(int i = 0; i < c.numberOfSegments(); i++){
+			if(assigned(genotype, i) != j)
+				continue;
+			assignedToJ = true;
+
+			threshold[i] = description.getCompetition().getW(i);
+			int alternative = bestProduct(genotype, i, y, j);
+			if(alternative >= 0)
+				threshold[i] = Math.max(threshold[i], c.getWTP(i, alternative) - genotype.getP().get(alternative));
+			price = Math.min(price, c.getWTPOfProduct(j, i) - threshold[i]);
+		}
+		if(!assignedToJ)
+			return false;
+
+		// make sure rounding does not push a segment over the boundary
+		for(int i = 0; i < c.numberOfSegments(); i++){
+			while(assigned(genotype, i) == j && c.getWTPOfProduct(j, i) - price < threshold[i])
+				price = Math.nextAfter(price, Double.NEGATIVE_INFINITY);
+		}
+
+		if(priceGrid){
+			SPLPriceGrid grid = problem.getPriceGrid();
+			int k = grid.floorIndex(j, price);
+			if(k < 0)
+				return false;
+			price = grid.price(j, k);
+		}
+
+		if(price <= genotype.getP().get(j))
+			return false;
+		genotype.getP().set(j, price);
+		return true;
+	}
+
+	/**
+	 * @return the product assigned to segment i or -1 if there is none
+	 */
+	protected int assigned(SPLGenotype genotype, int i){
+		int offset = genotype.getP().size();
+		int n = genotype.getX().nextSetBit(i*offset);
+		return n >= 0 && n < (i + 1)*offset ? n - i*offset : -1;
+	}
+
+	/**
+	 * Assigns product j to segment i and removes any other assignment of i.
+	 */
+	protected void assign(SPLGenotype genotype, int i, int j){
+		int offset = genotype.getP().size();
+		for(int k = 0; k < offset; k++){
+			genotype.getX().set(i*offset + k, k == j);
+		}
+	}
+
+	/**
+	 * @return the products assigned to at least one segment
+	 */
+	protected boolean[] produced(SPLGenotype genotype){
+		int offset = genotype.getP().size();
+		boolean[] y = new boolean[offset];
+		SPLBitGenotype x = genotype.getX();
+		for(int n = x.nextSetBit(0); n >= 0; n = x.nextSetBit(n + 1)){
+			y[n % offset] = true;
+		}
+		return y;
+	}
+
+	/**
+	 * @return the produced product except the excluded one that gives segment
+	 *         i the highest surplus, or -1 if there is none
+	 */
+	protected int bestProduct(SPLGenotype genotype, int i, boolean[] y, int excluded){
+		int best = -1;
+		double surplus = Double.NEGATIVE_INFINITY;
+		for(int j = 0; j < y.length; j++){
+			if(!y[j] || j == excluded)
+				continue;
+			double s = description.getCustomer().getWTP(i, j) - genotype.getP().get(j);
+			if(s > surplus){
+				surplus = s;
+				best = j;
+			}
+		}
+		return best;
+	}
 }
 
 // EOF
\ No newline at end of file
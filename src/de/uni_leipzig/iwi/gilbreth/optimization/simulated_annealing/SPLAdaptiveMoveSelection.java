@@ -0,0 +1,241 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.Random;
+
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Adaptive move selection by probability matching. For each move the
+ * selection keeps an exponential moving average of the relative improvement
+ * of the objective value and of the acceptance rate. The quality of a move is
+ * the mean of its improvement (scaled to the best move) and its acceptance
+ * rate. Each move gets a minimal probability, the remaining probability is
+ * distributed in proportion to the qualities. Thus the search prefers the
+ * moves that are productive in its current phase, but keeps trying the
+ * others. A selected move that is not applicable counts as neither improving
+ * nor accepted, the outcome of the fallback is credited to the applied move.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+@Singleton
+public class SPLAdaptiveMoveSelection implements SPLMoveSelection {
+
+	private static final NeighborSPLGenotype.Move[] MOVES = NeighborSPLGenotype.Move
+			.values();
+
+	private final double adaptation;
+	private final double minProbability;
+
+	// the moves that take part in the selection
+	private final boolean[] active;
+	private final int nrOfActive;
+
+	private final double[] improvement;
+	private final double[] acceptance;
+	private final double[] probabilities;
+
+	// the move selected last, -1 after its feedback
+	private int last = -1;
+
+	/**
+	 * Constructs a new {@code SPLAdaptiveMoveSelection}. Only the moves with a
+	 * positive weight take part.
+	 * 
+	 * @param adaptation
+	 *            the weight of a new observation in the moving averages
+	 * @param minProbability
+	 *            the minimal selection probability of each move
+	 */
+	@Inject
+	public SPLAdaptiveMoveSelection(
+			@Constant(value = "moveAdaptation") double adaptation,
+			@Constant(value = "moveMinProbability") double minProbability,
+			@Constant(value = "moveX") double moveX,
+			@Constant(value = "moveP") double moveP,
+			@Constant(value = "moveReassign") double moveReassign,
+			@Constant(value = "moveSwap") double moveSwap,
+			@Constant(value = "moveDrop") double moveDrop,
+			@Constant(value = "moveRaise") double moveRaise) {
+		this(adaptation, minProbability, new double[] { moveX, moveP,
+				moveReassign, moveSwap, moveDrop, moveRaise });
+	}
+
+	/**
+	 * Constructs a new {@code SPLAdaptiveMoveSelection}.
+	 * 
+	 * @param adaptation
+	 *            the weight of a new observation in the moving averages
+	 * @param minProbability
+	 *            the minimal selection probability of each move
+	 * @param weights
+	 *            the weights of the moves indexed by their ordinal, the moves
+	 *            with a positive weight take part
+	 */
+	public SPLAdaptiveMoveSelection(double adaptation,
+			double minProbability, double[] weights) {
+		if (adaptation <= 0.0d || adaptation > 1.0d)
+			throw new IllegalArgumentException(
+					"The adaptation has to be within (0, 1].");
+		if (weights.length != MOVES.length)
+			throw new IllegalArgumentException("Expected " + MOVES.length
+					+ " weights, got " + weights.length + ".");
+
+		this.adaptation = adaptation;
+		this.active = new boolean[MOVES.length];
+		int n = 0;
+		for (int k = 0; k < MOVES.length; k++) {
+			if (weights[k] > 0.0d) {
+				active[k] = true;
+				n++;
+			}
+		}
+		if (n == 0)
+			throw new IllegalArgumentException(
+					"At least one move needs a positive weight.");
+		if (minProbability < 0.0d || minProbability * n > 1.0d)
+			throw new IllegalArgumentException("The minimal probability "
+					+ minProbability + " is not possible for " + n
+					+ " moves.");
+		this.nrOfActive = n;
+		this.minProbability = minProbability;
+
+		this.improvement = new double[MOVES.length];
+		this.acceptance = new double[MOVES.length];
+		this.probabilities = new double[MOVES.length];
+		update();
+	}
+
+	@Override
+	public NeighborSPLGenotype.Move select(Random random) {
+		double r = random.nextDouble();
+		int k = -1;
+		for (int m = 0; m < MOVES.length; m++) {
+			if (!active[m])
+				continue;
+			k = m;
+			r -= probabilities[m];
+			if (r < 0.0d)
+				break;
+		}
+		// k is the last active move if rounding left some probability
+		last = k;
+		return MOVES[k];
+	}
+
+	@Override
+	public void feedback(NeighborSPLGenotype.Move move, double fx,
+			double fy, boolean accepted) {
+		// a selected move that was not applicable gets a zero outcome, the
+		// outcome belongs to the move applied instead
+		if (last >= 0 && (move == null || move.ordinal() != last))
+			learn(last, 0.0d, false);
+		if (move != null && active[move.ordinal()]) {
+			double gain = fx > fy ? (fx - fy)
+					/ Math.max(Math.abs(fx), 1.0d) : 0.0d;
+			learn(move.ordinal(), gain, accepted);
+		}
+		last = -1;
+
+		update();
+	}
+
+	@Override
+	public double[] getProbabilities() {
+		return probabilities.clone();
+	}
+
+	/**
+	 * @return the moving average of the relative improvement of each move,
+	 *         indexed by the ordinal of the move
+	 */
+	public double[] getImprovements() {
+		return improvement.clone();
+	}
+
+	/**
+	 * @return the moving average of the acceptance rate of each move, indexed
+	 *         by the ordinal of the move
+	 */
+	public double[] getAcceptanceRates() {
+		return acceptance.clone();
+	}
+
+	/**
+	 * Adds an outcome of move k to its moving averages.
+	 */
+	private void learn(int k, double gain, boolean accepted) {
+		improvement[k] += adaptation * (gain - improvement[k]);
+		acceptance[k] += adaptation
+				* ((accepted ? 1.0d : 0.0d) - acceptance[k]);
+	}
+
+	/**
+	 * Recalculates the selection probabilities from the qualities.
+	 */
+	private void update() {
+		double max = 0.0d;
+		for (int k = 0; k < MOVES.length; k++) {
+			if (active[k] && improvement[k] > max)
+				max = improvement[k];
+		}
+
+		double sum = 0.0d;
+		for (int k = 0; k < MOVES.length; k++) {
+			if (active[k]) {
+				double quality = 0.5d * (max > 0.0d ? improvement[k] / max
+						: 0.0d) + 0.5d * acceptance[k];
+				probabilities[k] = quality;
+				sum += quality;
+			}
+		}
+
+		double free = 1.0d - nrOfActive * minProbability;
+		for (int k = 0; k < MOVES.length; k++) {
+			if (active[k]) {
+				probabilities[k] = minProbability
+						+ free
+						* (sum > 0.0d ? probabilities[k] / sum
+								: 1.0d / nrOfActive);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int k = 0; k < MOVES.length; k++) {
+			if (active[k]) {
+				if (s.length() > 0)
+					s.append(' ');
+				s.append(MOVES[k]).append('=')
+						.append(String.format("%.3f", probabilities[k]));
+			}
+		}
+		return s.toString();
+	}
+}
+// EOF
@@ -0,0 +1,130 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * The core of an iteration of the {@link SPLSimulatedAnnealing}, also used by
+ * the {@link SPLSweep}. Iteration i draws its neighbor and the random number
+ * of the acceptance from the random stream i of a seed. A neighbor that is not
+ * worse is accepted and counts as a change if it improves by at least delta
+ * relative to the current one, a worse neighbor is accepted with the
+ * probability exp(-(fy - fx) / T). The optimization has converged after a
+ * number of accepted neighbors without change. The objective values are
+ * minimized.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLAnnealingStep {
+
+	private final long seed;
+	private final double delta;
+	private final int changeIterations;
+
+	private int changecounter;
+
+	/**
+	 * @param seed
+	 *            the seed of the random streams
+	 * @param delta
+	 *            the relative improvement that counts as a change
+	 * @param changeIterations
+	 *            the number of accepted neighbors without change until the
+	 *            optimization has converged
+	 */
+	public SPLAnnealingStep(long seed, double delta, int changeIterations) {
+		this.seed = seed;
+		this.delta = delta;
+		this.changeIterations = changeIterations;
+		this.changecounter = changeIterations;
+	}
+
+	/**
+	 * @return the random stream of iteration i
+	 */
+	public SPLRandom stream(int i) {
+		return SPLRandom.stream(seed, i);
+	}
+
+	/**
+	 * @return the random stream of a restart after iteration i, which no
+	 *         iteration uses
+	 */
+	public SPLRandom restartStream(int i) {
+		return SPLRandom.stream(seed, -i);
+	}
+
+	/**
+	 * Decides on a neighbor and counts the accepted neighbors without
+	 * change.
+	 *
+	 * @param fx
+	 *            the objective value of the current individual
+	 * @param fy
+	 *            the objective value of the neighbor
+	 * @param temperature
+	 *            the temperature of the iteration
+	 * @param u
+	 *            the uniform random number of the iteration
+	 * @return true if the neighbor replaces the current individual
+	 */
+	public boolean accept(double fx, double fy, double temperature, double u) {
+		if (fy <= fx) {
+			double epsilon = fx != 0.0d ? (fx - fy) / Math.abs(fx) : 1.0d;
+			if (epsilon < delta) {
+				changecounter--;
+			} else {
+				changecounter = changeIterations;
+			}
+			return true;
+		}
+		return u < Math.exp((fx - fy) / temperature);
+	}
+
+	/**
+	 * @return true if there has been no change for the given number of
+	 *         accepted neighbors
+	 */
+	public boolean isConverged() {
+		return changecounter <= 0;
+	}
+
+	/**
+	 * Starts a new period of change, e.g. after a restart.
+	 */
+	public void resetChangecounter() {
+		changecounter = changeIterations;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getChangecounter() {
+		return changecounter;
+	}
+
+	/**
+	 * Restores the counter of a checkpoint.
+	 *
+	 * @param changecounter
+	 *            the remaining accepted neighbors without change
+	 */
+	public void setChangecounter(int changecounter) {
+		this.changecounter = changecounter;
+	}
+}
+// EOF
@@ -0,0 +1,242 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A manifest of optimization runs for the {@link SPLBatchRunner}. It names the
+ * problem instances and the parameter grid of the simulated annealing. Every
+ * combination of instance, parameters and seed is one job. The manifest is a
+ * plain text file with one entry per line:
+ * 
+ * <pre>
+ * # instance &lt;name&gt; PAPER|SMALL
+ * # instance &lt;name&gt; RANDOM &lt;segments&gt; &lt;products&gt; &lt;assets&gt; &lt;priceLevel&gt; &lt;priceStep&gt; [&lt;instanceSeed&gt; [UNIFORM|TIERED]]
+ * # instance &lt;name&gt; FILE &lt;file&gt;
+ * instance paper PAPER
+ * instance r100 RANDOM 100 20 30 100 100
+ * instance r1m RANDOM 1000000 20 30 100 100 42 TIERED
+ * iterations 10000 100000
+ * delta 0.01 0.001
+ * change 1000
+ * seed 1 2 3
+ * threads 4
+ * </pre>
+ * 
+ * Parameters that are not given keep the defaults of the
+ * {@link SPLSimulatedAnnealingModule}.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLBatchManifest {
+
+	/**
+	 * A single optimization run of the batch.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public static class Job {
+		public final String instance;
+		public final int iterations;
+		public final double delta;
+		public final int changeIterations;
+		public final long seed;
+
+		public Job(String instance, int iterations, double delta,
+				int changeIterations, long seed) {
+			this.instance = instance;
+			this.iterations = iterations;
+			this.delta = delta;
+			this.changeIterations = changeIterations;
+			this.seed = seed;
+		}
+	}
+
+	// ---- Data Member Section ----
+
+	private final Map<String, SPLProblem> instances = new LinkedHashMap<String, SPLProblem>();
+
+	private final List<Integer> iterations = new ArrayList<Integer>();
+
+	private final List<Double> delta = new ArrayList<Double>();
+
+	private final List<Integer> changeIterations = new ArrayList<Integer>();
+
+	private final List<Long> seeds = new ArrayList<Long>();
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// ---- Constructor Section ----
+
+	/**
+	 * Reads a manifest file. The problem instances are created once while
+	 * reading and shared by all jobs that refer to them.
+	 * 
+	 * @param file
+	 *            the manifest file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws IllegalArgumentException
+	 *             if a line of the manifest is malformed
+	 */
+	public SPLBatchManifest(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+				try {
+					parse(line.split("\\s+"));
+				} catch (RuntimeException e) {
+					throw new IllegalArgumentException(file + ":" + number
+							+ ": " + e.getMessage(), e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		if (instances.isEmpty())
+			throw new IllegalArgumentException(file
+					+ ": the manifest does not name any instance.");
+	}
+
+	// ---- Method Section ----
+
+	public SPLProblem getInstance(String name) {
+		return instances.get(name);
+	}
+
+	/**
+	 * @return all jobs of the batch, i.e. the cartesian product of the
+	 *         instances, the parameter grid and the seeds
+	 */
+	public List<Job> getJobs() {
+		SPLSimulatedAnnealingModule defaults = new SPLSimulatedAnnealingModule();
+
+		List<Integer> _iterations = iterations.isEmpty() ? single(defaults
+				.getIterations()) : iterations;
+		List<Double> _delta = delta.isEmpty() ? single(defaults.getDelta())
+				: delta;
+		List<Integer> _change = changeIterations.isEmpty() ? single(defaults
+				.getChangeIterations()) : changeIterations;
+		List<Long> _seeds = seeds.isEmpty() ? single(0L) : seeds;
+
+		List<Job> jobs = new ArrayList<Job>();
+		for (String instance : instances.keySet()) {
+			for (int it : _iterations) {
+				for (double d : _delta) {
+					for (int c : _change) {
+						for (long seed : _seeds) {
+							jobs.add(new Job(instance, it, d, c, seed));
+						}
+					}
+				}
+			}
+		}
+		return jobs;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	private void parse(String[] token) {
+		String key = token[0];
+
+		if (key.equals("instance")) {
+			if (token.length < 3)
+				throw new IllegalArgumentException(
+						"an instance needs a name and a problem selection.");
+			if (instances.containsKey(token[1]))
+				throw new IllegalArgumentException("instance " + token[1]
+						+ " is defined twice.");
+			instances.put(token[1], createInstance(token));
+		} else if (key.equals("iterations")) {
+			for (int n = 1; n < token.length; n++)
+				iterations.add(Integer.valueOf(token[n]));
+		} else if (key.equals("delta")) {
+			for (int n = 1; n < token.length; n++)
+				delta.add(Double.valueOf(token[n]));
+		} else if (key.equals("change")) {
+			for (int n = 1; n < token.length; n++)
+				changeIterations.add(Integer.valueOf(token[n]));
+		} else if (key.equals("seed")) {
+			for (int n = 1; n < token.length; n++)
+				seeds.add(Long.valueOf(token[n]));
+		} else if (key.equals("threads")) {
+			threads = Integer.parseInt(token[1]);
+			if (threads <= 0)
+				throw new IllegalArgumentException(
+						"the number of threads has to be positive.");
+		} else {
+			throw new IllegalArgumentException("unknown entry " + key);
+		}
+	}
+
+	private SPLProblem createInstance(String[] token) {
+		SPLModule.ProblemSelection selection = SPLModule.ProblemSelection
+				.valueOf(token[2]);
+		SPLModule defaults = new SPLModule();
+
+		if (selection == SPLModule.ProblemSelection.RANDOM) {
+			if (token.length < 8 || token.length > 10)
+				throw new IllegalArgumentException(
+						"a RANDOM instance needs segments, products, assets, price level and price step.");
+			return new SPLProblem(Integer.parseInt(token[3]),
+					Integer.parseInt(token[4]), Integer.parseInt(token[5]),
+					Double.parseDouble(token[6]), Integer.parseInt(token[7]),
+					selection, token.length > 8 ? Long.parseLong(token[8])
+							: 0L,
+					token.length > 9 ? SPLInstanceGenerator.Structure
+							.valueOf(token[9])
+							: SPLInstanceGenerator.Structure.UNIFORM, "");
+		}
+		if (selection == SPLModule.ProblemSelection.FILE) {
+			if (token.length != 4)
+				throw new IllegalArgumentException(
+						"a FILE instance needs the file name.");
+			return new SPLProblem(0, 0, 0, 0.0d, 0, selection, 0L,
+					SPLInstanceGenerator.Structure.UNIFORM, token[3]);
+		}
+		return new SPLProblem(defaults.getNrOfSegments(),
+				defaults.getNrOfProducts(), defaults.getNrOfAssets(),
+				defaults.getPriceLevel(), defaults.getPriceStep(), selection);
+	}
+
+	private static <T> List<T> single(T value) {
+		List<T> list = new ArrayList<T>();
+		list.add(value);
+		return list;
+	}
+}
+// EOF
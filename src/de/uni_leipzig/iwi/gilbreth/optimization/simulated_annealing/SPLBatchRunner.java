@@ -0,0 +1,235 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.opt4j.common.random.RandomModule;
+import org.opt4j.core.Archive;
+import org.opt4j.core.Individual;
+import org.opt4j.optimizer.sa.CoolingSchedulesModule;
+import org.opt4j.start.Opt4JTask;
+
+import com.google.inject.Module;
+
+/**
+ * Runs the jobs of a {@link SPLBatchManifest} without the opt4j configurator
+ * and viewer. The jobs are executed concurrently on a bounded thread pool.
+ * Each job gets its own injector, whereas the problem instances are shared.
+ * Every finished job is written as one tab separated line to the output file.
+ * 
+ * <pre>
+ * java SPLBatchRunner &lt;manifest&gt; &lt;output&gt;
+ * </pre>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLBatchRunner {
+
+	/**
+	 * Configures the SPL problem for a given, already created problem instance
+	 * and without the solution viewer.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	static class HeadlessSPLModule extends SPLModule {
+
+		private final SPLProblem problem;
+
+		HeadlessSPLModule(SPLProblem problem) {
+			this.problem = problem;
+		}
+
+		@Override
+		protected void config() {
+			super.config();
+			bind(SPLProblem.class).toInstance(problem);
+		}
+
+		@Override
+		protected void configVisualization() {
+			// no viewer
+		}
+	}
+
+	/**
+	 * The outcome of a job.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public static class Result {
+		public final SPLBatchManifest.Job job;
+		public final double fitness;
+		public final double profit;
+		public final long millis;
+
+		Result(SPLBatchManifest.Job job, double fitness, double profit,
+				long millis) {
+			this.job = job;
+			this.fitness = fitness;
+			this.profit = profit;
+			this.millis = millis;
+		}
+	}
+
+	public static final String HEADER = "instance\titerations\tdelta\tchange\tseed\tfitness\tprofit\tmillis";
+
+	private final SPLBatchManifest manifest;
+
+	public SPLBatchRunner(SPLBatchManifest manifest) {
+		this.manifest = manifest;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("usage: SPLBatchRunner <manifest> <output>");
+			System.exit(1);
+		}
+
+		SPLBatchManifest manifest = new SPLBatchManifest(new File(args[0]));
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(args[1]), "UTF-8"));
+		try {
+			new SPLBatchRunner(manifest).run(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Executes all jobs of the manifest and writes the results in the order
+	 * the jobs finish.
+	 * 
+	 * @param out
+	 *            the writer for the results
+	 * @return the number of failed jobs
+	 * @throws IOException
+	 *             if writing the results fails
+	 * @throws InterruptedException
+	 *             if the runner is interrupted while waiting for the jobs
+	 */
+	public int run(Writer out) throws IOException, InterruptedException {
+		List<SPLBatchManifest.Job> jobs = manifest.getJobs();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				manifest.getThreads(), jobs.size()));
+		CompletionService<Result> completion = new ExecutorCompletionService<Result>(
+				executor);
+		int failed = 0;
+
+		try {
+			for (final SPLBatchManifest.Job job : jobs) {
+				completion.submit(new Callable<Result>() {
+					@Override
+					public Result call() throws Exception {
+						return execute(job);
+					}
+				});
+			}
+
+			out.write(HEADER);
+			out.write('\n');
+			for (int n = 0; n < jobs.size(); n++) {
+				try {
+					write(out, completion.take().get());
+				} catch (ExecutionException e) {
+					failed++;
+					System.err.println("job failed: " + e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return failed;
+	}
+
+	/**
+	 * Runs a single job in the calling thread.
+	 * 
+	 * @param job
+	 *            the job to run
+	 * @return the best solution found by the job
+	 * @throws Exception
+	 *             if the optimization fails
+	 */
+	public Result execute(SPLBatchManifest.Job job) throws Exception {
+		SPLProblem problem = manifest.getInstance(job.instance);
+
+		SPLSimulatedAnnealingModule sa = new SPLSimulatedAnnealingModule();
+		sa.setIterations(job.iterations);
+		sa.setDelta(job.delta);
+		sa.setChangeIterations(job.changeIterations);
+
+		RandomModule random = new RandomModule();
+		random.setSeed(job.seed);
+
+		List<Module> modules = new ArrayList<Module>();
+		modules.add(new HeadlessSPLModule(problem));
+		modules.add(sa);
+		modules.add(new CoolingSchedulesModule());
+		modules.add(random);
+
+		long start = System.currentTimeMillis();
+		Opt4JTask task = new Opt4JTask(false);
+		task.init(modules);
+		try {
+			task.execute();
+
+			SPLEvaluator evaluator = task.getInstance(SPLEvaluator.class);
+			double fitness = Double.NEGATIVE_INFINITY;
+			double profit = Double.NaN;
+			for (Individual individual : task.getInstance(Archive.class)) {
+				Solution solution = (Solution) individual.getPhenotype();
+				double f = evaluator.fitness(solution);
+				if (f > fitness) {
+					fitness = f;
+					profit = solution.profit();
+				}
+			}
+			return new Result(job, fitness, profit, System.currentTimeMillis()
+					- start);
+		} finally {
+			// the thread runs the next job with another evaluator
+			task.getInstance(SPLEvaluator.class).release();
+			task.close();
+		}
+	}
+
+	static void write(Writer out, Result result) throws IOException {
+		SPLBatchManifest.Job job = result.job;
+		out.write(job.instance + "\t" + job.iterations + "\t" + job.delta
+				+ "\t" + job.changeIterations + "\t" + job.seed + "\t"
+				+ result.fitness + "\t" + result.profit + "\t"
+				+ result.millis + "\n");
+		out.flush();
+	}
+}
+// EOF
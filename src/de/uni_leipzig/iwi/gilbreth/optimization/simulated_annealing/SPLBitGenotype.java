@@ -0,0 +1,189 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.Arrays;
+
+import org.opt4j.core.problem.Genotype;
+
+/**
+ * A fixed size genotype of bits packed into 64 bit words. It replaces the
+ * {@link org.opt4j.genotype.BooleanGenotype} for the segment assignment x of
+ * the {@link SPLGenotype}, a list of boxed booleans that needs many times the
+ * memory and is copied element by element. Copy, equality and hashing work on
+ * whole words. The bits beyond the size are always zero.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLBitGenotype implements Genotype {
+
+	private final int size;
+	private final long[] words;
+
+	/**
+	 * Constructs a genotype with all bits cleared.
+	 * 
+	 * @param size
+	 *            the number of bits
+	 */
+	public SPLBitGenotype(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("The size must not be negative.");
+		this.size = size;
+		this.words = new long[(size + 63) >>> 6];
+	}
+
+	/**
+	 * Copy constructor.
+	 * 
+	 * @param genotype
+	 *            the genotype to copy
+	 */
+	public SPLBitGenotype(SPLBitGenotype genotype) {
+		this.size = genotype.size;
+		this.words = genotype.words.clone();
+	}
+
+	public boolean get(int n) {
+		check(n);
+		return (words[n >>> 6] & (1L << n)) != 0;
+	}
+
+	public void set(int n, boolean value) {
+		check(n);
+		if (value)
+			words[n >>> 6] |= 1L << n;
+		else
+			words[n >>> 6] &= ~(1L << n);
+	}
+
+	/**
+	 * Clears all bits.
+	 */
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * @return the number of set bits
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long word : words)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	/**
+	 * @param from
+	 *            the first bit to look at
+	 * @return the first set bit at or after from, -1 if there is none
+	 */
+	public int nextSetBit(int from) {
+		if (from >= size)
+			return -1;
+		int w = from >>> 6;
+		long word = words[w] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w == words.length)
+				return -1;
+			word = words[w];
+		}
+	}
+
+	/**
+	 * Sets the bits of this genotype to those of another genotype of the same
+	 * size.
+	 * 
+	 * @param genotype
+	 *            the genotype to copy from
+	 */
+	public void copyFrom(SPLBitGenotype genotype) {
+		if (genotype.size != size)
+			throw new IllegalArgumentException("Expected " + size
+					+ " bits, got " + genotype.size + ".");
+		System.arraycopy(genotype.words, 0, words, 0, words.length);
+	}
+
+	/**
+	 * @return the number of 64 bit words
+	 */
+	public int numberOfWords() {
+		return words.length;
+	}
+
+	/**
+	 * @return the word w, bit n is bit n % 64 of word n / 64
+	 */
+	public long getWord(int w) {
+		return words[w];
+	}
+
+	/**
+	 * Sets the word w. Bits beyond the size are dropped.
+	 */
+	public void setWord(int w, long word) {
+		if (w == words.length - 1 && (size & 63) != 0)
+			word &= (1L << size) - 1;
+		words[w] = word;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return a genotype of the same size with all bits cleared
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <G extends Genotype> G newInstance() {
+		return (G) new SPLBitGenotype(size);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SPLBitGenotype))
+			return false;
+		SPLBitGenotype other = (SPLBitGenotype) obj;
+		return size == other.size && Arrays.equals(words, other.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * size + Arrays.hashCode(words);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder(size);
+		for (int n = 0; n < size; n++)
+			s.append(get(n) ? '1' : '0');
+		return s.toString();
+	}
+
+	private void check(int n) {
+		if (n < 0 || n >= size)
+			throw new IndexOutOfBoundsException("Bit " + n + " of " + size);
+	}
+}
+// EOF
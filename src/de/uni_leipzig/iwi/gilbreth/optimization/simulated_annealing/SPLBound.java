@@ -0,0 +1,41 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * An upper bound of the fitness a solution of the problem can reach. If
+ * bound, the {@link SPLSimulatedAnnealing} stops as soon as its best fitness
+ * is within the relative gap {@link #getGap()} of the bound, see
+ * {@link SPLExactSolver.Result#gap()}.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public interface SPLBound {
+
+	/**
+	 * @return an upper bound of the fitness, see
+	 *         {@link SPLEvaluator#fitness(Solution)}
+	 */
+	public double getBound();
+
+	/**
+	 * @return the relative gap between the best fitness and the bound that is
+	 *         good enough
+	 */
+	public double getGap();
+}
+// EOF
@@ -0,0 +1,60 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Constant;
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Stops the {@link SPLSimulatedAnnealing} as soon as its best solution is
+ * within a relative gap of the {@link SPLLagrangianBound}, in addition to the
+ * delta and change criterion. The bound is computed once before the
+ * optimization starts. The optimizer then reports the termination
+ * {@link SPLSimulatedAnnealing.Termination#BOUND}.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLBoundModule extends Opt4JModule {
+
+	@Constant(value = "gap")
+	protected double gap = 0.01d;
+
+	@Constant(value = "boundRounds")
+	protected int boundRounds = 100;
+
+	@Override
+	public void config() {
+		bind(SPLBound.class).to(SPLLagrangianBound.class);
+	}
+
+	public int getBoundRounds() {
+		return boundRounds;
+	}
+
+	public double getGap() {
+		return gap;
+	}
+
+	public void setBoundRounds(int boundRounds) {
+		this.boundRounds = boundRounds;
+	}
+
+	public void setGap(double gap) {
+		this.gap = gap;
+	}
+}
+// EOF
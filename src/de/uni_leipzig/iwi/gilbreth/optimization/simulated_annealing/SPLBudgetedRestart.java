@@ -0,0 +1,110 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+
+/**
+ * Restarts the {@link SPLSimulatedAnnealing} a limited number of times and
+ * stops it when a time budget is used up.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLBudgetedRestart implements SPLRestart {
+
+	private final SPLRestartModule.Strategy strategy;
+	private final double reheat;
+	private final int perturbation;
+	private final int maxRestarts;
+	private final long budget;
+
+	private int restarts = 0;
+
+	/**
+	 * @param strategy
+	 *            the individual to continue with
+	 * @param reheat
+	 *            the fraction of the temperature to continue with, in (0, 1]
+	 * @param perturbation
+	 *            the number of moves applied to the best individual
+	 * @param maxRestarts
+	 *            the maximal number of restarts
+	 * @param timeBudget
+	 *            the time budget of the whole run in seconds, 0 for none
+	 */
+	@Inject
+	public SPLBudgetedRestart(
+			@Constant(value = "restartStrategy") SPLRestartModule.Strategy strategy,
+			@Constant(value = "reheat") double reheat,
+			@Constant(value = "restartPerturbation") int perturbation,
+			@Constant(value = "maxRestarts") int maxRestarts,
+			@Constant(value = "timeBudget") double timeBudget) {
+		if (reheat <= 0.0d || reheat > 1.0d)
+			throw new IllegalArgumentException("The reheat fraction " + reheat
+					+ " is not in (0, 1].");
+		if (perturbation < 0 || maxRestarts < 0 || timeBudget < 0.0d)
+			throw new IllegalArgumentException(
+					"The perturbation, the number of restarts and the time budget must not be negative.");
+		this.strategy = strategy;
+		this.reheat = reheat;
+		this.perturbation = perturbation;
+		this.maxRestarts = maxRestarts;
+		this.budget = timeBudget > 0.0d ? (long) (timeBudget * 1000.0d)
+				: Long.MAX_VALUE;
+	}
+
+	@Override
+	public boolean restart(int iteration, long millis) {
+		if (restarts >= maxRestarts || exhausted(millis))
+			return false;
+		restarts++;
+		return true;
+	}
+
+	@Override
+	public boolean exhausted(long millis) {
+		return millis >= budget;
+	}
+
+	@Override
+	public SPLRestartModule.Strategy getStrategy() {
+		return strategy;
+	}
+
+	@Override
+	public double getReheat() {
+		return reheat;
+	}
+
+	@Override
+	public int getPerturbation() {
+		return perturbation;
+	}
+
+	@Override
+	public int getRestarts() {
+		return restarts;
+	}
+
+	@Override
+	public void setRestarts(int restarts) {
+		this.restarts = restarts;
+	}
+}
+// EOF
@@ -0,0 +1,194 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A snapshot of a running {@link SPLSimulatedAnnealing}. It contains
+ * everything needed to continue the optimization exactly at the iteration the
+ * snapshot has been taken: the current and the best genotype, the iteration
+ * index and the total number of iterations (which determine the temperature),
+ * the change counter of the stopping criteria, the state of the random
+ * number generator and the state of the restarts.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLCheckpoint {
+
+	private static final int MAGIC = 0x53504c43; // "SPLC"
+	private static final int VERSION = 2;
+	// without the state of the restarts
+	private static final int VERSION_1 = 1;
+
+	private final int iteration;
+	private final int iterations;
+	private final int changecounter;
+	private final boolean hasRandomState;
+	private final long randomState;
+	private final SPLGenotype current;
+	private final SPLGenotype best;
+	private final int restartIteration;
+	private final int restarts;
+
+	/**
+	 * Creates a checkpoint of an optimization that has not restarted yet.
+	 * The genotypes are not copied, they must not be changed afterwards.
+	 * 
+	 * @param iteration
+	 *            the last finished iteration
+	 * @param iterations
+	 *            the total number of iterations
+	 * @param changecounter
+	 *            the remaining iterations without significant change
+	 * @param hasRandomState
+	 *            true if the random state is known
+	 * @param randomState
+	 *            the state of the random number generator
+	 * @param current
+	 *            the current genotype
+	 * @param best
+	 *            the best genotype found so far
+	 */
+	public SPLCheckpoint(int iteration, int iterations, int changecounter,
+			boolean hasRandomState, long randomState, SPLGenotype current,
+			SPLGenotype best) {
+		this(iteration, iterations, changecounter, hasRandomState,
+				randomState, current, best, -1, 0);
+	}
+
+	/**
+	 * Creates a checkpoint. The genotypes are not copied, they must not be
+	 * changed afterwards.
+	 * 
+	 * @param iteration
+	 *            the last finished iteration
+	 * @param iterations
+	 *            the total number of iterations
+	 * @param changecounter
+	 *            the remaining iterations without significant change
+	 * @param hasRandomState
+	 *            true if the random state is known
+	 * @param randomState
+	 *            the state of the random number generator
+	 * @param current
+	 *            the current genotype
+	 * @param best
+	 *            the best genotype found so far
+	 * @param restartIteration
+	 *            the iteration of the last restart, -1 if there has been none
+	 * @param restarts
+	 *            the number of restarts so far
+	 */
+	public SPLCheckpoint(int iteration, int iterations, int changecounter,
+			boolean hasRandomState, long randomState, SPLGenotype current,
+			SPLGenotype best, int restartIteration, int restarts) {
+		this.iteration = iteration;
+		this.iterations = iterations;
+		this.changecounter = changecounter;
+		this.hasRandomState = hasRandomState;
+		this.randomState = randomState;
+		this.current = current;
+		this.best = best;
+		this.restartIteration = restartIteration;
+		this.restarts = restarts;
+	}
+
+	public static SPLCheckpoint read(DataInput in, SPLGenotypeCodec codec)
+			throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("The data does not contain a checkpoint.");
+		int version = in.readInt();
+		if (version != VERSION && version != VERSION_1)
+			throw new IOException("Unsupported checkpoint version " + version);
+
+		int iteration = in.readInt();
+		int iterations = in.readInt();
+		int changecounter = in.readInt();
+		boolean hasRandomState = in.readBoolean();
+		long randomState = in.readLong();
+		SPLGenotype current = codec.read(in);
+		SPLGenotype best = codec.read(in);
+		int restartIteration = -1;
+		int restarts = 0;
+		if (version != VERSION_1) {
+			restartIteration = in.readInt();
+			restarts = in.readInt();
+		}
+
+		return new SPLCheckpoint(iteration, iterations, changecounter,
+				hasRandomState, randomState, current, best, restartIteration,
+				restarts);
+	}
+
+	public void write(DataOutput out, SPLGenotypeCodec codec)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(iteration);
+		out.writeInt(iterations);
+		out.writeInt(changecounter);
+		out.writeBoolean(hasRandomState);
+		out.writeLong(randomState);
+		codec.write(out, current);
+		codec.write(out, best);
+		out.writeInt(restartIteration);
+		out.writeInt(restarts);
+	}
+
+	public SPLGenotype getBest() {
+		return best;
+	}
+
+	public int getChangecounter() {
+		return changecounter;
+	}
+
+	public SPLGenotype getCurrent() {
+		return current;
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public long getRandomState() {
+		return randomState;
+	}
+
+	/**
+	 * @return the iteration of the last restart, -1 if there has been none
+	 */
+	public int getRestartIteration() {
+		return restartIteration;
+	}
+
+	public int getRestarts() {
+		return restarts;
+	}
+
+	public boolean hasRandomState() {
+		return hasRandomState;
+	}
+}
+// EOF
@@ -0,0 +1,83 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.common.random.Rand;
+import org.opt4j.start.Constant;
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Saves checkpoints of the {@link SPLSimulatedAnnealing} and continues an
+ * interrupted optimization from its last checkpoint. The module binds the
+ * {@link SPLRandom} as random number generator, because its state can be
+ * restored. Thus it must not be combined with the opt4j random module.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLCheckpointModule extends Opt4JModule {
+
+	@Constant(value = "checkpointFile")
+	protected String checkpointFile = "spl.checkpoint";
+
+	@Constant(value = "checkpointInterval")
+	protected int checkpointInterval = 100000;
+
+	@Constant(value = "resume")
+	protected boolean resume = true;
+
+	@Constant(value = "seed")
+	protected long seed = 0;
+
+	@Override
+	public void config() {
+		bind(SPLCheckpointer.class).to(SPLFileCheckpointer.class);
+		bind(Rand.class).to(SPLRandom.class);
+	}
+
+	public String getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setCheckpointFile(String checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+}
+// EOF
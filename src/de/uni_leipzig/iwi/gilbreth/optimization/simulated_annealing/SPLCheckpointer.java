@@ -0,0 +1,54 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * Stores and restores checkpoints of the {@link SPLSimulatedAnnealing}. If
+ * bound, the optimizer saves a checkpoint every {@link #getInterval()}
+ * iterations and asks for a checkpoint to continue from before it starts.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public interface SPLCheckpointer {
+
+	/**
+	 * @return the number of iterations between two checkpoints
+	 */
+	public int getInterval();
+
+	/**
+	 * @return the checkpoint to continue from or null to start a new
+	 *         optimization
+	 */
+	public SPLCheckpoint restore();
+
+	/**
+	 * Saves a checkpoint. Must not block, the checkpoint may be written
+	 * asynchronously.
+	 * 
+	 * @param checkpoint
+	 *            the checkpoint to save
+	 */
+	public void save(SPLCheckpoint checkpoint);
+
+	/**
+	 * Called once after the optimization has finished. Waits until the last
+	 * saved checkpoint is written.
+	 */
+	public void close();
+}
+// EOF
@@ -17,15 +17,18 @@ package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
 
 import java.util.Random;
 
+import org.opt4j.common.random.Rand;
 import org.opt4j.core.problem.Creator;
-import org.opt4j.genotype.BooleanGenotype;
 import org.opt4j.genotype.DoubleBounds;
 import org.opt4j.genotype.DoubleGenotype;
+import org.opt4j.start.Constant;
 
 import com.google.inject.Inject;
 
 /**
- * Responsible for creation of SPLGenotypes for a given SPLProblem.
+ * Responsible for creation of SPLGenotypes for a given SPLProblem. Depending
+ * on the {@link SPLModule.Initialization} the genotypes are drawn at random
+ * or constructed greedily.
  * 
  * @author Johannes Müller
  * 
@@ -34,11 +37,18 @@ public class SPLCreator implements Creator<SPLGenotype> {
 
 	protected final SPLProblem problem;
 	private final SPLProblemDescription problemDescription;
-	private Random random = new Random();
+	private final Rand random;
+	private final SPLModule.Initialization initialization;
+	private final boolean priceGrid;
 
 	@Inject
-	public SPLCreator(SPLProblem problem) {
+	public SPLCreator(SPLProblem problem, Rand random,
+			@Constant(value = "initialization") SPLModule.Initialization initialization,
+			@Constant(value = "priceGrid") boolean priceGrid) {
 		this.problem = problem;
+		this.random = random;
+		this.initialization = initialization;
+		this.priceGrid = priceGrid;
 		this.problemDescription = problem.getSPLProblemDescription();
 	}
 
@@ -49,28 +59,312 @@ public class SPLCreator implements Creator<SPLGenotype> {
 	 */
 	@Override
 	public SPLGenotype create() {
+		return create(random);
+	}
+
+	/**
+	 * Creates a genotype like {@link #create()}, but draws the random numbers
+	 * from the given generator instead of the shared one.
+	 * 
+	 * @param random
+	 *            the generator
+	 * @return the genotype
+	 */
+	public SPLGenotype create(Random random) {
+		switch (initialization) {
+		case GREEDY:
+			return createGreedy();
+		default:
+			return createRandom(random);
+		}
+	}
+
+	/**
+	 * 
+	 * @return a SPLGenotype with random assignments and prices
+	 */
+	protected SPLGenotype createRandom() {
+		return createRandom(random);
+	}
+
+	/**
+	 * @param random
+	 *            the generator
+	 * @return a SPLGenotype with random assignments and prices
+	 */
+	protected SPLGenotype createRandom(Random random) {
 
 		// The SPLGenotype consists of three sub genotypes for the selected
 		// products in the SPL (y)
 		// the product-segment assignment (x) and the prices (p)
-		BooleanGenotype x;
+		SPLBitGenotype x;
 		DoubleGenotype p;
 
 		// initialize the product-segment assignments
-		x = new BooleanGenotype();
+		int products = problemDescription.getFirm().NumberOfProducts();
+		x = new SPLBitGenotype(problemDescription.getCustomer()
+				.numberOfSegments() * products);
 
 		int setTrue = 0;
 		for (int i = 0; i < problemDescription.getCustomer().numberOfSegments(); i++) {
-			setTrue = random.nextInt(problemDescription.getFirm()
-					.NumberOfProducts());
-			for (int j = 0; j < problemDescription.getFirm().NumberOfProducts(); j++) {
-
-				x.add(j == setTrue);
-			}
+			setTrue = random.nextInt(products);
+			x.set(i * products + setTrue, true);
 		}
 
 		// initialize the price genotype
 		// the price for each product can vary within predefined bounds
+		p = new DoubleGenotype(priceBounds(problemDescription));
+
+		// init with random prices within the given bounds
+		p.init(random, problemDescription.getFirm().NumberOfProducts());
+		// set the 0 product explicitly to 0
+		p.set(0, 0.0d);
+		if (priceGrid) {
+			// a random price of the grid instead
+			SPLPriceGrid grid = problem.getPriceGrid();
+			for (int j = 1; j < p.size(); j++)
+				p.set(j, grid.price(j, random.nextInt(grid.getSteps() + 1)));
+		}
+		// Assemble SPLGenotype
+		SPLGenotype splgenotype = new SPLGenotype();
+		splgenotype.setP(p);
+		splgenotype.setX(x);
+
+		return splgenotype;
+	}
+
+	/**
+	 * Constructs a SPLGenotype greedily. Each segment gets the product with
+	 * the highest margin it pays, i.e. at the price that leaves it the
+	 * surplus of the competitor. Then products are removed from the line as
+	 * long as the fixed cost and the cost of the assets only they require
+	 * exceed the margin lost by moving their segments to the next best
+	 * remaining product. Finally each product gets the highest price that
+	 * satisfies the competitor constraints of its segments and every segment
+	 * buys the product of the line it prefers at these prices. A segment for
+	 * which no product beats the competitor does not keep a product in the
+	 * line, it buys the product of the line it prefers.
+	 * <p>
+	 * The best and second best product of the line are kept for each
+	 * segment, thus a removal only updates the segments of the removed
+	 * product.
+	 * 
+	 * @return a SPLGenotype close to a feasible, profitable solution
+	 */
+	protected SPLGenotype createGreedy() {
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		int segments = c.numberOfSegments();
+		int products = f.NumberOfProducts();
+
+		// the best and second best product of the line of each segment and
+		// their margins, -1 if there is no such product that beats the
+		// competitor
+		int[] first = new int[segments];
+		int[] second = new int[segments];
+		double[] firstMargin = new double[segments];
+		double[] secondMargin = new double[segments];
+
+		boolean[] y = new boolean[products];
+		int produced = 0;
+		for (int i = 0; i < segments; i++) {
+			best(i, null, first, second, firstMargin, secondMargin);
+			if (first[i] >= 0 && !y[first[i]]) {
+				y[first[i]] = true;
+				produced++;
+			}
+		}
+		if (produced == 0) {
+			y[0] = true;
+			produced++;
+		}
+		for (int i = 0; i < segments; i++) {
+			if (first[i] >= 0)
+				best(i, y, first, second, firstMargin, secondMargin);
+		}
+
+		// usage[k] counts the produced products that require asset k
+		int[] usage = new int[f.NumberOfAssets()];
+		for (int j = 0; j < products; j++) {
+			if (y[j]) {
+				for (int n = 0; n < f.numberOfAssetsOf(j); n++)
+					usage[f.getAssetOf(j, n)]++;
+			}
+		}
+
+		// remove the product with the highest saving until none saves more
+		// than it loses
+		double[] gains = new double[products];
+		boolean[] needed = new boolean[products];
+		while (produced > 1) {
+			for (int j = 0; j < products; j++) {
+				if (!y[j])
+					continue;
+				double g = f.getCf(j);
+				for (int n = 0; n < f.numberOfAssetsOf(j); n++) {
+					int k = f.getAssetOf(j, n);
+					if (usage[k] == 1)
+						g += f.getCa(k);
+				}
+				gains[j] = g;
+				needed[j] = false;
+			}
+			for (int i = 0; i < segments; i++) {
+				int j = first[i];
+				if (j < 0)
+					continue;
+				if (second[i] < 0)
+					needed[j] = true; // the only product i can be sold
+				else
+					gains[j] -= firstMargin[i] - secondMargin[i];
+			}
+
+			int drop = -1;
+			double gain = 0.0d;
+			for (int j = 0; j < products; j++) {
+				if (y[j] && !needed[j] && gains[j] > gain) {
+					gain = gains[j];
+					drop = j;
+				}
+			}
+			if (drop < 0)
+				break;
+
+			y[drop] = false;
+			produced--;
+			for (int n = 0; n < f.numberOfAssetsOf(drop); n++)
+				usage[f.getAssetOf(drop, n)]--;
+			for (int i = 0; i < segments; i++) {
+				if (first[i] == drop || second[i] == drop)
+					best(i, y, first, second, firstMargin, secondMargin);
+			}
+		}
+
+		int[] assignment = new int[segments];
+		int any = 0;
+		while (!y[any])
+			any++;
+		for (int i = 0; i < segments; i++) {
+			// a segment without a product is placed below
+			assignment[i] = first[i] >= 0 ? first[i] : any;
+		}
+
+		// the highest prices that satisfy the competitor constraints
+		double[] price = new double[products];
+		for (int j = 0; j < products; j++)
+			price[j] = problemDescription.upperPriceBound(j);
+		for (int i = 0; i < segments; i++) {
+			if (first[i] >= 0)
+				price[first[i]] = Math.min(price[first[i]], greedyPrice(i,
+						first[i]));
+		}
+		if (priceGrid) {
+			// the next lower price of the grid leaves even more surplus
+			SPLPriceGrid grid = problem.getPriceGrid();
+			for (int j = 0; j < products; j++)
+				price[j] = grid.price(j, Math.max(0, grid.floorIndex(j, price[j])));
+		}
+
+		// a segment that prefers another product of the line buys it, it
+		// still beats the competitor there since it gets even more surplus
+		for (int i = 0; i < segments; i++) {
+			int j = assignment[i];
+			double surplus = c.getWTP(i, j) - price[j];
+			for (int k = 0; k < products; k++) {
+				if (y[k] && c.getWTP(i, k) - price[k] > surplus) {
+					surplus = c.getWTP(i, k) - price[k];
+					assignment[i] = k;
+				}
+			}
+		}
+
+		SPLBitGenotype x = new SPLBitGenotype(segments * products);
+		for (int i = 0; i < segments; i++) {
+			x.set(i * products + assignment[i], true);
+		}
+
+		DoubleGenotype p = new DoubleGenotype(priceBounds(problemDescription));
+		for (int j = 0; j < products; j++) {
+			p.add(j == 0 ? 0.0d : price[j]);
+		}
+
+		SPLGenotype splgenotype = new SPLGenotype();
+		splgenotype.setP(p);
+		splgenotype.setX(x);
+
+		return splgenotype;
+	}
+
+	/**
+	 * @return the price of product j that leaves segment i the surplus of
+	 *         the competitor, within the price bounds of j
+	 */
+	private double greedyPrice(int i, int j) {
+		double wtp = problemDescription.getCustomer().getWTP(i, j);
+		double w = problemDescription.getCompetition().getW(i);
+		double price = Math.min(wtp - w, problemDescription.upperPriceBound(j));
+		// the evaluator compares wtp - price with w, do not lose by rounding
+		while (wtp - price < w)
+			price = Math.nextAfter(price, Double.NEGATIVE_INFINITY);
+		return Math.max(price, problemDescription.lowerPriceBound(j));
+	}
+
+	/**
+	 * @return the highest margin segment i pays for product j, negative
+	 *         infinity if j cannot beat the competitor within its price
+	 *         bounds
+	 */
+	private double greedyMargin(int i, int j) {
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		if (c.getWTP(i, j) - problemDescription.getCompetition().getW(i) < problemDescription
+				.lowerPriceBound(j))
+			return Double.NEGATIVE_INFINITY;
+		return c.getQ(i)
+				* (greedyPrice(i, j) - problemDescription.getFirm().getCv(j));
+	}
+
+	/**
+	 * Finds the best and second best product of segment i among the products
+	 * that beat the competitor, restricted to the produced products if y is
+	 * given. Ties go to the lower index.
+	 */
+	private void best(int i, boolean[] y, int[] first, int[] second,
+			double[] firstMargin, double[] secondMargin) {
+		int b1 = -1;
+		int b2 = -1;
+		double m1 = Double.NEGATIVE_INFINITY;
+		double m2 = Double.NEGATIVE_INFINITY;
+		int products = problemDescription.getFirm().NumberOfProducts();
+		for (int j = 0; j < products; j++) {
+			if (y != null && !y[j])
+				continue;
+			double m = greedyMargin(i, j);
+			if (m == Double.NEGATIVE_INFINITY)
+				continue;
+			if (b1 < 0 || m > m1) {
+				b2 = b1;
+				m2 = m1;
+				b1 = j;
+				m1 = m;
+			} else if (b2 < 0 || m > m2) {
+				b2 = j;
+				m2 = m;
+			}
+		}
+		first[i] = b1;
+		second[i] = b2;
+		firstMargin[i] = m1;
+		secondMargin[i] = m2;
+	}
+
+	/**
+	 * 
+	 * @param problemDescription
+	 *            the problem description
+	 * @return the bounds within the price of each product can vary
+	 */
+	public static DoubleBounds priceBounds(
+			SPLProblemDescription problemDescription) {
 		double[] upperbounds = new double[problemDescription.getFirm()
 				.NumberOfProducts()];
 		double[] lowerbounds = new double[problemDescription.getFirm()
@@ -84,20 +378,7 @@ public class SPLCreator implements Creator<SPLGenotype> {
 			lowerbounds[i] = problemDescription.lowerPriceBound(i);
 		}
 
-		DoubleBounds db = new DoubleBounds(lowerbounds, upperbounds);
-
-		p = new DoubleGenotype(db);
-
-		// init with random prices within the given bounds
-		p.init(random, problemDescription.getFirm().NumberOfProducts());
-		// set the 0 product explicitly to 0
-		p.set(0, 0.0d);
-		// Assemble SPLGenotype
-		SPLGenotype splgenotype = new SPLGenotype();
-		splgenotype.setP(p);
-		splgenotype.setX(x);
-
-		return splgenotype;
+		return new DoubleBounds(lowerbounds, upperbounds);
 	}
 }
 
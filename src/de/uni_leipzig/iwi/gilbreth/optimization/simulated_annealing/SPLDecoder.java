@@ -17,6 +17,7 @@
 package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
 
 import org.opt4j.core.problem.Decoder;
+import org.opt4j.start.Constant;
 
 import com.google.inject.Inject;
 
@@ -34,10 +35,25 @@ public class SPLDecoder implements Decoder<SPLGenotype, Solution> {
 
 	SPLProblem problem;
 
-	@Inject
+	private final boolean priceGrid;
+
 	public SPLDecoder(SPLProblem problem) {
+		this(problem, false);
+	}
+
+	/**
+	 * @param problem
+	 *            the problem
+	 * @param priceGrid
+	 *            true if the prices are moved to the nearest price of the
+	 *            {@link SPLPriceGrid} and the solutions carry their indices
+	 */
+	@Inject
+	public SPLDecoder(SPLProblem problem,
+			@Constant(value = "priceGrid") boolean priceGrid) {
 
 		this.problem = problem;
+		this.priceGrid = priceGrid;
 	}
 
 	/**
@@ -46,13 +62,46 @@ public class SPLDecoder implements Decoder<SPLGenotype, Solution> {
 	 */
 	@Override
 	public Solution decode(SPLGenotype genotype) {
-		boolean[][] x = genotype.getXAsMatrix();
 		double[] p = genotype.getPAsVector();
 
-		Solution solution = new Solution(x, p,
-				problem.getSPLProblemDescription());
+		// the assignment matrix is only built if a segment does not have
+		// exactly one product
+		int[] assignment = assignment(genotype);
+		Solution solution = assignment != null ? new Solution(assignment, p,
+				problem.getSPLProblemDescription()) : new Solution(
+				genotype.getXAsMatrix(), p, problem.getSPLProblemDescription());
+
+		if (priceGrid) {
+			SPLPriceGrid grid = problem.getPriceGrid();
+			int[] k = new int[p.length];
+			for (int j = 0; j < p.length; j++) {
+				k[j] = grid.index(j, p[j]);
+				p[j] = grid.price(j, k[j]);
+			}
+			solution.setPriceIndex(k);
+		}
 
 		return solution;
 	}
+
+	/**
+	 * Walks the set bits of the segment assignment.
+	 * 
+	 * @return the product of each segment, null if a segment has no or
+	 *         several products assigned
+	 */
+	static int[] assignment(SPLGenotype genotype) {
+		SPLBitGenotype x = genotype.getX();
+		int offset = genotype.getP().size();
+		int[] assignment = new int[x.size() / offset];
+
+		int next = 0; // the next segment without product
+		for (int n = x.nextSetBit(0); n >= 0; n = x.nextSetBit(n + 1)) {
+			if (n / offset != next)
+				return null;
+			assignment[next++] = n % offset;
+		}
+		return next == assignment.length ? assignment : null;
+	}
 }
 // EOF
\ No newline at end of file
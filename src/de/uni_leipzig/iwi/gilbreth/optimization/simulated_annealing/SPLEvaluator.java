@@ -29,6 +29,18 @@ import com.google.inject.Inject;
  * Responsible for evaluation a specific Solution. It calculates the generated
  * profit and saves it in a objective object.
  * 
+ * <p>
+ * The self selection check keeps a {@link SPLSurplusIndex} for each thread
+ * that evaluates solutions, i.e. the optimizer and every speculation thread.
+ * An index takes 16 * I * L bytes for I segments and the number of products
+ * rounded up to a power of two L, e.g. 512 MB for 10^6 segments and 32
+ * products. The number of evaluating threads has to be chosen accordingly.
+ * The first evaluation of a thread compares the products directly, only the
+ * second builds the index, thus a thread that evaluates a single solution
+ * does without. A thread that has finished a run calls {@link #release()},
+ * otherwise its index is kept as long as the thread lives.
+ * </p>
+ * 
  * @author Johannes Müller
  * 
  */
@@ -37,6 +49,29 @@ public class SPLEvaluator implements Evaluator<Solution> {
 	private Objective profit = new Objective("profit", Sign.MAX);
 	private SPLProblem problem;
 
+	/**
+	 * The surplus index of a thread and the number of changes of the
+	 * willingness to pay it has seen.
+	 */
+	private static class IndexState {
+		SPLSurplusIndex index;
+		int seen;
+
+		IndexState(SPLSurplusIndex index, int seen) {
+			this.index = index;
+			this.seen = seen;
+		}
+	}
+
+	// the surplus index follows the solutions evaluated by a thread, one
+	// index per thread, see the class comment for its size
+	private final ThreadLocal<IndexState> surplusIndex = new ThreadLocal<IndexState>();
+
+	// for each segment the number of the change that affected it last, null
+	// as long as no willingness to pay has changed
+	private int[] changed = null;
+	private volatile int changeCount = 0;
+
 	@Inject
 	public SPLEvaluator(SPLProblem problem) {
 		this.problem = problem;
@@ -44,23 +79,20 @@ public class SPLEvaluator implements Evaluator<Solution> {
 
 
 	private int countSegmentsBuyingFromCompetitor(Solution solution) {
-		boolean[][] x = solution.getX();
+		if (solution.getPriceIndex() != null)
+			return countSegmentsBuyingFromCompetitorOnGrid(solution);
+
+		int[] a = solution.getAssignment();
 		double[] p = solution.getP();
 		SPLProblemDescription.Customer c = problem.getSPLProblemDescription()
 				.getCustomer();
-		SPLProblemDescription.Firm f = problem.getSPLProblemDescription()
-				.getFirm();
 		SPLProblemDescription.Competition co = problem
 				.getSPLProblemDescription().getCompetition();
 		double value = 0.0d;
 		int count = 0;
 		for (int i = 0; i < c.numberOfSegments(); i++) {
-			value = 0.0d;
-			for (int j = 0; j < f.NumberOfProducts(); j++) {
-				if (x[i][j]) {
-					value += c.getWTP(i, j) - p[j];
-				}
-			}
+			value = a[i] >= 0 ? c.getWTP(i, a[i]) - p[a[i]] : surplus(
+					solution, i);
 			if (value < co.getW(i))
 				count++;
 		}
@@ -68,31 +100,215 @@ public class SPLEvaluator implements Evaluator<Solution> {
 		return count;
 	}
 
+	/**
+	 * @return the summed surplus of the products of segment i, for the rare
+	 *         segments without exactly one product
+	 */
+	private double surplus(Solution solution, int i) {
+		boolean[] row = solution.getX()[i];
+		double[] p = solution.getP();
+		SPLProblemDescription.Customer c = problem.getSPLProblemDescription()
+				.getCustomer();
+		double value = 0.0d;
+		for (int j = 0; j < row.length; j++) {
+			if (row[j])
+				value += c.getWTP(i, j) - p[j];
+		}
+		return value;
+	}
+
+	/**
+	 * Counts the segments buying from the competitor for prices of the price
+	 * grid. A segment buying a single product beats the competitor if the
+	 * price index does not exceed the threshold of the grid.
+	 */
+	private int countSegmentsBuyingFromCompetitorOnGrid(Solution solution) {
+		int[] a = solution.getAssignment();
+		int[] k = solution.getPriceIndex();
+		SPLProblemDescription.Competition co = problem
+				.getSPLProblemDescription().getCompetition();
+		SPLPriceGrid grid = problem.getPriceGrid();
+		int count = 0;
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] >= 0) {
+				if (k[a[i]] > grid.threshold(i, a[i]))
+					count++;
+			} else {
+				if (surplus(solution, i) < co.getW(i))
+					count++;
+			}
+		}
+		return count;
+	}
+
 	private int countSegmentsWithSuboptimalProductsAssigned(Solution solution) {
-		boolean[][] x = solution.getX();
+		int[] a = solution.getAssignment();
 		boolean[] y = solution.determineY();
 		double[] p = solution.getP();
 		SPLProblemDescription.Customer c = problem.getSPLProblemDescription()
 				.getCustomer();
-		SPLProblemDescription.Firm f = problem.getSPLProblemDescription()
-				.getFirm();
 		double welfare = 0.0d;
 		int count = 0;
 
+		SPLSurplusIndex index = surplusIndex();
+		if (index == null)
+			return countSegmentsWithSuboptimalProductsAssigned(solution, y);
+		index.update(p, y);
+
 		for (int i = 0; i < c.numberOfSegments(); i++) {
-			welfare = 0.0d;
-			for (int s = 0; s < f.NumberOfProducts(); s++) {
-				if (x[i][s])
-					welfare = c.getWTP(i, s) - p[s];
-			}
-			for (int j = 0; j < f.NumberOfProducts(); j++) {
-				if (y[j] && welfare < (c.getWTP(i, j) - p[j]))
+			welfare = a[i] >= 0 ? c.getWTP(i, a[i]) - p[a[i]]
+					: lastSurplus(solution, i);
+			// count the produced products with a higher surplus, usually
+			// there is none
+			if (welfare < index.best(i))
+				count += index.countBetter(i, welfare);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts like {@link #countSegmentsWithSuboptimalProductsAssigned(Solution)}
+	 * but compares each segment with every produced product, for a single
+	 * evaluation.
+	 */
+	private int countSegmentsWithSuboptimalProductsAssigned(Solution solution,
+			boolean[] y) {
+		int[] a = solution.getAssignment();
+		double[] p = solution.getP();
+		SPLProblemDescription.Customer c = problem.getSPLProblemDescription()
+				.getCustomer();
+		int count = 0;
+		for (int i = 0; i < c.numberOfSegments(); i++) {
+			double welfare = a[i] >= 0 ? c.getWTP(i, a[i]) - p[a[i]]
+					: lastSurplus(solution, i);
+			for (int j = 0; j < y.length; j++) {
+				if (y[j] && welfare < c.getWTP(i, j) - p[j])
 					count++;
 			}
 		}
 		return count;
 	}
 
+	/**
+	 * @return the surplus of the last product of segment i, 0 if it has none,
+	 *         for the rare segments without exactly one product
+	 */
+	private double lastSurplus(Solution solution, int i) {
+		boolean[] row = solution.getX()[i];
+		double welfare = 0.0d;
+		for (int j = 0; j < row.length; j++) {
+			if (row[j])
+				welfare = problem.getSPLProblemDescription().getCustomer()
+						.getWTP(i, j)
+						- solution.getP()[j];
+		}
+		return welfare;
+	}
+
+	/**
+	 * Announces that the willingness to pay of some segments has changed. The
+	 * cached surplus of these segments is rebuilt before the next evaluation
+	 * of each thread, the other segments keep their cached state. Only the
+	 * last change of each segment is kept, thus the memory does not grow with
+	 * the number of changes.
+	 * 
+	 * @param segments
+	 *            the changed segments
+	 */
+	public synchronized void segmentsChanged(int[] segments) {
+		if (changed == null)
+			changed = new int[problem.getSPLProblemDescription().getCustomer()
+					.numberOfSegments()];
+		int count = changeCount + 1;
+		for (int i : segments)
+			changed[i] = count;
+		changeCount = count;
+	}
+
+	/**
+	 * Drops the surplus index of the calling thread, e.g. at the end of a run
+	 * in a thread of a pool. A later evaluation of the thread starts over.
+	 */
+	public void release() {
+		surplusIndex.remove();
+	}
+
+	/**
+	 * @return the surplus index of the current thread, brought up to date
+	 *         with the changes of the willingness to pay, or null at the
+	 *         first evaluation of the thread
+	 */
+	private SPLSurplusIndex surplusIndex() {
+		IndexState state = surplusIndex.get();
+		if (state == null) {
+			surplusIndex.set(new IndexState(null, changeCount));
+			return null;
+		}
+		if (state.index == null) {
+			// built from the current willingness to pay by the next update
+			state.index = new SPLSurplusIndex(problem
+					.getSPLProblemDescription());
+			state.seen = changeCount;
+			return state.index;
+		}
+		if (state.seen != changeCount) {
+			synchronized (this) {
+				int pending = 0;
+				for (int i = 0; i < changed.length; i++) {
+					if (changed[i] > state.seen)
+						pending++;
+				}
+
+				if (pending == changed.length) {
+					state.index.clear();
+				} else {
+					for (int i = 0; i < changed.length; i++) {
+						if (changed[i] > state.seen)
+							state.index.refresh(i);
+					}
+				}
+				state.seen = changeCount;
+			}
+		}
+		return state.index;
+	}
+
+	/**
+	 * Calculates the value of the profit objective for a given solution. It
+	 * equals the profit if the solution satisfies the competitor and self
+	 * selection constraints, otherwise the profit is penalized by the number
+	 * of violating segments.
+	 * 
+	 * @param solution
+	 *            the solution to evaluate
+	 * @return the (penalized) profit of the solution
+	 */
+	public double fitness(Solution solution) {
+		int suboptimalSegments = countSegmentsWithSuboptimalProductsAssigned(solution);
+		int segmentsBuyingFromComp = countSegmentsBuyingFromCompetitor(solution);
+
+		return penalize(solution.profit(), suboptimalSegments
+				+ segmentsBuyingFromComp);
+	}
+
+	/**
+	 * Penalizes the profit of a solution by the number of violations of the
+	 * competitor and self selection constraints.
+	 * 
+	 * @param profit
+	 *            the profit
+	 * @param violations
+	 *            the number of violations
+	 * @return the penalized profit
+	 */
+	static double penalize(double profit, int violations) {
+		if (violations == 0) {
+			return profit;
+		} else {
+			return profit >= 0.0d ? Math.sqrt(profit) / violations : 0.0d;
+		}
+	}
+
 	/**
 	 * Evaluates the performance of a given solution with respect to the
 	 * generated profit.
@@ -104,18 +320,7 @@ public class SPLEvaluator implements Evaluator<Solution> {
 	@Override
 	public Objectives evaluate(Solution solution) {
 
-		double _profit = 0.0d;
-
-		int suboptimalSegments = countSegmentsWithSuboptimalProductsAssigned(solution);
-		int segmentsBuyingFromComp = countSegmentsBuyingFromCompetitor(solution);
-
-		if (segmentsBuyingFromComp == 0 && suboptimalSegments == 0) {
-			_profit = solution.profit();
-		} else {
-			double pr = solution.profit();
-			_profit = pr >= 0.0d ? Math.sqrt(pr)
-					/ (suboptimalSegments + segmentsBuyingFromComp) : 0.0d;
-		}
+		double _profit = fitness(solution);
 
 		// Collection of objectives, since we have a single objective problem,
 		// the collection
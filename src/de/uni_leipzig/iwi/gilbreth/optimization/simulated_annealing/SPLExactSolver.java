@@ -0,0 +1,713 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves small and medium instances of the SPL problem exactly by branch and
+ * bound. The solver branches over the product line y first and then over the
+ * assignment of the segments to the produced products, the segments with
+ * the largest demand first.
+ * 
+ * <p>
+ * For a given (partial) assignment the highest feasible prices follow from
+ * the competitor and self selection constraints: each constraint limits the
+ * price of a product to the price of another product plus a WTP difference,
+ * thus the greatest solution of these difference constraints is a shortest
+ * path problem and is solved by Bellman-Ford. Since every produced product
+ * is sold to at least one segment, these prices maximize the contribution
+ * margin of the assignment. Adding constraints only lowers the prices, hence
+ * the prices of a partial assignment bound the prices of all its
+ * completions.
+ * </p>
+ * 
+ * <p>
+ * The bound of a node is the margin of the assigned segments at these prices
+ * plus the best margin each open segment could pay for a candidate product,
+ * minus the fixed cost of the products and the cost of the union of their
+ * assets. The asset requirements are bit sets, the union of a product line is
+ * a bitwise or. The subtrees of the first products of the product line are
+ * solved in parallel on a fixed thread pool.
+ * </p>
+ * 
+ * <pre>
+ * java SPLExactSolver PAPER|SMALL [threads] [seconds]
+ * java SPLExactSolver RANDOM &lt;segments&gt; &lt;products&gt; &lt;assets&gt; &lt;priceLevel&gt; &lt;priceStep&gt; &lt;seed&gt; [UNIFORM|TIERED] [threads] [seconds]
+ * java SPLExactSolver FILE &lt;file&gt; [threads] [seconds]
+ * </pre>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLExactSolver {
+
+	/**
+	 * The outcome of a solver run.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public static class Result {
+		/**
+		 * the best feasible solution found, null if there is none
+		 */
+		public final Solution solution;
+		/**
+		 * the profit of the solution, negative infinity if there is none
+		 */
+		public final double profit;
+		/**
+		 * an upper bound of the optimal profit, equals the profit if the
+		 * solution is optimal
+		 */
+		public final double bound;
+		public final long nodes;
+		public final long millis;
+
+		Result(Solution solution, double profit, double bound, long nodes,
+				long millis) {
+			this.solution = solution;
+			this.profit = profit;
+			this.bound = bound;
+			this.nodes = nodes;
+			this.millis = millis;
+		}
+
+		/**
+		 * @return true if the solution is proven to be optimal, i.e. the
+		 *         search has not been stopped by the time limit
+		 */
+		public boolean isOptimal() {
+			return bound <= profit;
+		}
+
+		/**
+		 * @return the relative gap between the bound and the profit
+		 */
+		public double gap() {
+			if (isOptimal())
+				return 0.0d;
+			if (Double.isInfinite(profit))
+				return Double.POSITIVE_INFINITY;
+			return (bound - profit) / Math.max(Math.abs(profit), 1.0d);
+		}
+	}
+
+	// number of nodes between two checks of the time limit
+	private static final int CHECK_INTERVAL = 1 << 10;
+
+	// rounds to repair prices that violate a constraint by rounding
+	private static final int REPAIR_ROUNDS = 64;
+
+	private final SPLProblemDescription description;
+	private final int nrOfSegments;
+	private final int nrOfProducts;
+	private final int threads;
+	private final long timeLimit;
+
+	private final int[] q;
+	private final double[][] wtp;
+	private final double[] w;
+	private final double[] cv;
+	private final double[] cf;
+	private final double[] ca;
+	private final double[] lb;
+	private final double[] ub;
+
+	// the assets of each product as bit set
+	private final long[][] assets;
+
+	// margin[i][j] is the highest margin segment i pays for product j, NaN if
+	// no price within the bounds satisfies the competitor constraint
+	private final double[][] margin;
+
+	// the segments in descending order of their demand
+	private final int[] order;
+
+	// the incumbent, guarded by this
+	private volatile double bestProfit = Double.NEGATIVE_INFINITY;
+	private int[] bestAssignment = null;
+	private double[] bestPrices = null;
+
+	private long nodes = 0;
+	private long deadline;
+	private volatile boolean stopped = false;
+
+	/**
+	 * Constructs a new solver.
+	 * 
+	 * @param problemDescription
+	 *            the problem to solve
+	 * @param threads
+	 *            the number of threads
+	 * @param timeLimit
+	 *            the time limit in milliseconds, 0 for none
+	 */
+	public SPLExactSolver(SPLProblemDescription problemDescription,
+			int threads, long timeLimit) {
+		if (threads <= 0)
+			throw new IllegalArgumentException(
+					"The number of threads has to be positive.");
+		this.description = problemDescription;
+		this.threads = threads;
+		this.timeLimit = timeLimit;
+
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		this.nrOfSegments = c.numberOfSegments();
+		this.nrOfProducts = f.NumberOfProducts();
+
+		q = new int[nrOfSegments];
+		wtp = new double[nrOfSegments][nrOfProducts];
+		w = new double[nrOfSegments];
+		for (int i = 0; i < nrOfSegments; i++) {
+			q[i] = c.getQ(i);
+			w[i] = problemDescription.getCompetition().getW(i);
+			for (int j = 0; j < nrOfProducts; j++)
+				wtp[i][j] = c.getWTP(i, j);
+		}
+
+		cv = new double[nrOfProducts];
+		cf = new double[nrOfProducts];
+		lb = new double[nrOfProducts];
+		ub = new double[nrOfProducts];
+		assets = new long[nrOfProducts][(f.NumberOfAssets() + 63) / 64];
+		for (int j = 0; j < nrOfProducts; j++) {
+			cv[j] = f.getCv(j);
+			cf[j] = f.getCf(j);
+			lb[j] = problemDescription.lowerPriceBound(j);
+			ub[j] = problemDescription.upperPriceBound(j);
+			for (int n = 0; n < f.numberOfAssetsOf(j); n++) {
+				int k = f.getAssetOf(j, n);
+				assets[j][k >>> 6] |= 1L << (k & 63);
+			}
+		}
+		ca = new double[f.NumberOfAssets()];
+		for (int k = 0; k < ca.length; k++)
+			ca[k] = f.getCa(k);
+
+		margin = margins(problemDescription);
+
+		Integer[] segments = new Integer[nrOfSegments];
+		for (int i = 0; i < nrOfSegments; i++)
+			segments[i] = i;
+		Arrays.sort(segments, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return q[b] - q[a];
+			}
+		});
+		order = new int[nrOfSegments];
+		for (int i = 0; i < nrOfSegments; i++)
+			order[i] = segments[i];
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err
+					.println("usage: SPLExactSolver PAPER|SMALL [threads] [seconds]\n"
+							+ "       SPLExactSolver RANDOM <segments> <products> <assets> <priceLevel> <priceStep> <seed> [UNIFORM|TIERED] [threads] [seconds]\n"
+							+ "       SPLExactSolver FILE <file> [threads] [seconds]");
+			System.exit(1);
+		}
+
+		SPLModule.ProblemSelection selection = SPLModule.ProblemSelection
+				.valueOf(args[0]);
+		int n = 1;
+		SPLProblem problem;
+		if (selection == SPLModule.ProblemSelection.RANDOM) {
+			// the same arguments as the instance generator, thus the instance
+			// can be reproduced
+			n = 7;
+			SPLInstanceGenerator.Structure structure = SPLInstanceGenerator.Structure.UNIFORM;
+			if (args.length > n && !Character.isDigit(args[n].charAt(0)))
+				structure = SPLInstanceGenerator.Structure.valueOf(args[n++]);
+			problem = new SPLProblem(Integer.parseInt(args[1]),
+					Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+					Double.parseDouble(args[4]), Integer.parseInt(args[5]),
+					selection, Long.parseLong(args[6]), structure, "");
+		} else if (selection == SPLModule.ProblemSelection.FILE) {
+			problem = new SPLProblem(0, 0, 0, 0.0d, 0, selection, 0L,
+					SPLInstanceGenerator.Structure.UNIFORM, args[1]);
+			n = 2;
+		} else {
+			problem = new SPLProblem(0, 0, 0, 0.0d, 0, selection);
+		}
+		int threads = args.length > n ? Integer.parseInt(args[n]) : Runtime
+				.getRuntime().availableProcessors();
+		long seconds = args.length > n + 1 ? Long.parseLong(args[n + 1]) : 0L;
+
+		Result result = new SPLExactSolver(
+				problem.getSPLProblemDescription(), threads, seconds * 1000L)
+				.solve();
+
+		System.out.println("profit\t" + result.profit);
+		System.out.println("bound\t" + result.bound);
+		System.out.println("optimal\t" + result.isOptimal());
+		System.out.println("nodes\t" + result.nodes);
+		System.out.println("millis\t" + result.millis);
+		if (result.solution != null) {
+			boolean[][] x = result.solution.getX();
+			double[] p = result.solution.getP();
+			for (int i = 0; i < x.length; i++) {
+				for (int j = 0; j < x[i].length; j++) {
+					if (x[i][j])
+						System.out.println("segment " + i + "\tproduct " + j
+								+ "\tprice " + p[j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the highest margin each segment pays for each product if it
+	 * is sold at the highest price within the bounds that satisfies the
+	 * competitor constraint.
+	 * 
+	 * @param problemDescription
+	 *            the problem
+	 * @return margin[i][j] for segment i and product j, NaN if no price of
+	 *         product j satisfies the competitor constraint of segment i
+	 */
+	static double[][] margins(SPLProblemDescription problemDescription) {
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		double[][] margin = new double[c.numberOfSegments()][f
+				.NumberOfProducts()];
+		for (int j = 0; j < f.NumberOfProducts(); j++) {
+			double lb = problemDescription.lowerPriceBound(j);
+			double ub = problemDescription.upperPriceBound(j);
+			for (int i = 0; i < c.numberOfSegments(); i++) {
+				double price = Math.min(ub, c.getWTPOfProduct(j, i)
+						- problemDescription.getCompetition().getW(i));
+				margin[i][j] = price >= lb ? c.getQ(i) * (price - f.getCv(j))
+						: Double.NaN;
+			}
+		}
+		return margin;
+	}
+
+	/**
+	 * Runs the branch and bound.
+	 * 
+	 * @return the result
+	 * @throws InterruptedException
+	 *             if the solver is interrupted while waiting for its threads
+	 */
+	public Result solve() throws InterruptedException {
+		long start = System.currentTimeMillis();
+		deadline = timeLimit > 0 ? start + timeLimit : Long.MAX_VALUE;
+
+		// the first products of the product line are decided by the tasks,
+		// enough to keep all threads busy
+		int depth = 0;
+		while (depth < nrOfProducts && (1 << depth) < 8 * threads)
+			depth++;
+
+		final List<ProductLineTask> tasks = new ArrayList<ProductLineTask>();
+		for (int mask = 0; mask < (1 << depth); mask++) {
+			boolean[] in = new boolean[nrOfProducts];
+			for (int j = 0; j < depth; j++)
+				in[j] = (mask & (1 << j)) != 0;
+			ProductLineTask task = new ProductLineTask(in, depth);
+			if (task.bound > Double.NEGATIVE_INFINITY)
+				tasks.add(task);
+		}
+		Collections.sort(tasks);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		double bound = Double.NEGATIVE_INFINITY;
+		try {
+			List<Future<Boolean>> futures = executor.invokeAll(tasks);
+			for (int n = 0; n < tasks.size(); n++) {
+				// an unfinished subtree may still contain a better solution
+				if (!futures.get(n).get())
+					bound = Math.max(bound, tasks.get(n).bound);
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		synchronized (this) {
+			bound = Math.max(bound, bestProfit);
+			return new Result(bestAssignment == null ? null : solution(),
+					bestProfit, bound, nodes, System.currentTimeMillis()
+							- start);
+		}
+	}
+
+	/**
+	 * Solves the subtree of a partially decided product line.
+	 */
+	private class ProductLineTask implements Callable<Boolean>,
+			Comparable<ProductLineTask> {
+
+		final boolean[] in;
+		final int decided;
+		final double bound;
+
+		ProductLineTask(boolean[] in, int decided) {
+			this.in = in;
+			this.decided = decided;
+			this.bound = productLineBound(in, decided);
+		}
+
+		@Override
+		public Boolean call() {
+			return new Search().productLine(in, decided);
+		}
+
+		@Override
+		public int compareTo(ProductLineTask o) {
+			return Double.compare(o.bound, bound);
+		}
+	}
+
+	/**
+	 * The state of the depth first search of a single thread.
+	 */
+	private class Search {
+
+		private long localNodes = 0;
+
+		// the assignment of the segments, -1 if open
+		private final int[] assignment = new int[nrOfSegments];
+
+		// the number of segments assigned to each product
+		private final int[] count = new int[nrOfProducts];
+
+		/**
+		 * Branches over the products from decided on.
+		 * 
+		 * @return false if the search has been stopped
+		 */
+		boolean productLine(boolean[] in, int decided) {
+			try {
+				return branchProductLine(in, decided);
+			} finally {
+				synchronized (SPLExactSolver.this) {
+					nodes += localNodes;
+				}
+			}
+		}
+
+		private boolean branchProductLine(boolean[] in, int decided) {
+			if (!visit())
+				return false;
+			if (productLineBound(in, decided) <= bestProfit)
+				return true;
+
+			if (decided == nrOfProducts) {
+				int[] products = products(in);
+				if (products.length == 0 || products.length > nrOfSegments)
+					return true;
+				Arrays.fill(assignment, -1);
+				Arrays.fill(count, 0);
+				return assign(products, fixedCost(in), 0);
+			}
+
+			in[decided] = true;
+			boolean complete = branchProductLine(in, decided + 1);
+			in[decided] = false;
+			return complete && branchProductLine(in, decided + 1);
+		}
+
+		/**
+		 * Branches over the products of the segment at position t of the
+		 * order.
+		 * 
+		 * @return false if the search has been stopped
+		 */
+		private boolean assign(int[] products, double fixedCost, int t) {
+			if (!visit())
+				return false;
+
+			if (t == nrOfSegments) {
+				double[] p = prices(products, assignment);
+				if (p != null && repair(products, p, assignment))
+					update(p, assignment, fixedCost);
+				return true;
+			}
+
+			// every product of the line needs at least one segment
+			int unused = 0;
+			for (int j : products) {
+				if (count[j] == 0)
+					unused++;
+			}
+			if (unused > nrOfSegments - t)
+				return true;
+
+			int i = order[t];
+			Integer[] sorted = new Integer[products.length];
+			int n = 0;
+			for (int j : products) {
+				if (!Double.isNaN(margin[i][j]))
+					sorted[n++] = j;
+			}
+			final double[] m = margin[i];
+			Arrays.sort(sorted, 0, n, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Double.compare(m[b], m[a]);
+				}
+			});
+
+			for (int k = 0; k < n; k++) {
+				int j = sorted[k];
+				assignment[i] = j;
+				count[j]++;
+
+				double[] p = prices(products, assignment);
+				if (p != null
+						&& assignmentBound(products, p, t + 1) - fixedCost > bestProfit) {
+					if (!assign(products, fixedCost, t + 1)) {
+						count[j]--;
+						assignment[i] = -1;
+						return false;
+					}
+				}
+
+				count[j]--;
+				assignment[i] = -1;
+			}
+			return true;
+		}
+
+		/**
+		 * The margin of the assigned segments at the given prices plus the
+		 * best margin of each open segment.
+		 */
+		private double assignmentBound(int[] products, double[] p, int t) {
+			double bound = 0.0d;
+			for (int i = 0; i < nrOfSegments; i++) {
+				int j = assignment[i];
+				if (j >= 0)
+					bound += q[i] * (p[j] - cv[j]);
+			}
+			for (int s = t; s < nrOfSegments; s++) {
+				int i = order[s];
+				double best = Double.NEGATIVE_INFINITY;
+				for (int j : products) {
+					double price = Math.min(p[j], wtp[i][j] - w[i]);
+					if (price >= lb[j])
+						best = Math.max(best, q[i] * (price - cv[j]));
+				}
+				if (best == Double.NEGATIVE_INFINITY)
+					return Double.NEGATIVE_INFINITY;
+				bound += best;
+			}
+			return bound;
+		}
+
+		/**
+		 * Counts a node and checks the time limit.
+		 * 
+		 * @return false if the search has to stop
+		 */
+		private boolean visit() {
+			if (stopped)
+				return false;
+			if (++localNodes % CHECK_INTERVAL == 0
+					&& System.currentTimeMillis() > deadline) {
+				stopped = true;
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The best margin of each segment for the products that are or may be
+	 * part of the line, minus the cost of the products that are part of it.
+	 */
+	private double productLineBound(boolean[] in, int decided) {
+		double bound = 0.0d;
+		for (int i = 0; i < nrOfSegments; i++) {
+			double best = Double.NEGATIVE_INFINITY;
+			for (int j = 0; j < nrOfProducts; j++) {
+				if ((j >= decided || in[j]) && !Double.isNaN(margin[i][j]))
+					best = Math.max(best, margin[i][j]);
+			}
+			if (best == Double.NEGATIVE_INFINITY)
+				return Double.NEGATIVE_INFINITY;
+			bound += best;
+		}
+		return bound - fixedCost(in);
+	}
+
+	/**
+	 * The fixed cost of the products that are part of the line and the cost
+	 * of the assets they share.
+	 */
+	private double fixedCost(boolean[] in) {
+		long[] used = new long[(ca.length + 63) / 64];
+		double cost = 0.0d;
+		for (int j = 0; j < nrOfProducts; j++) {
+			if (in[j]) {
+				cost += cf[j];
+				for (int n = 0; n < used.length; n++)
+					used[n] |= assets[j][n];
+			}
+		}
+		for (int n = 0; n < used.length; n++) {
+			for (long bits = used[n]; bits != 0L; bits &= bits - 1) {
+				cost += ca[(n << 6) + Long.numberOfTrailingZeros(bits)];
+			}
+		}
+		return cost;
+	}
+
+	private int[] products(boolean[] in) {
+		int n = 0;
+		for (int j = 0; j < nrOfProducts; j++) {
+			if (in[j])
+				n++;
+		}
+		int[] products = new int[n];
+		n = 0;
+		for (int j = 0; j < nrOfProducts; j++) {
+			if (in[j])
+				products[n++] = j;
+		}
+		return products;
+	}
+
+	/**
+	 * Calculates the highest prices of the product line that satisfy the
+	 * competitor and self selection constraints of the assigned segments.
+	 * 
+	 * @return the prices indexed by product, null if there are none within
+	 *         the bounds
+	 */
+	private double[] prices(int[] products, int[] assignment) {
+		double[] p = new double[nrOfProducts];
+		for (int j : products)
+			p[j] = ub[j];
+		for (int i = 0; i < nrOfSegments; i++) {
+			int j = assignment[i];
+			if (j >= 0)
+				p[j] = Math.min(p[j], wtp[i][j] - w[i]);
+		}
+
+		// Bellman-Ford, p[j] <= p[k] + wtp[i][j] - wtp[i][k] for each segment
+		// i assigned to j, a further relaxation after |products| rounds means
+		// a negative cycle
+		for (int round = 0; round <= products.length; round++) {
+			boolean relaxed = false;
+			for (int i = 0; i < nrOfSegments; i++) {
+				int j = assignment[i];
+				if (j < 0)
+					continue;
+				for (int k : products) {
+					double limit = p[k] + wtp[i][j] - wtp[i][k];
+					if (k != j && limit < p[j]) {
+						p[j] = limit;
+						relaxed = true;
+					}
+				}
+			}
+			if (!relaxed)
+				break;
+			if (round == products.length)
+				return null;
+		}
+
+		for (int j : products) {
+			if (p[j] < lb[j])
+				return null;
+		}
+		return p;
+	}
+
+	/**
+	 * Lowers prices that violate a constraint due to rounding, using the same
+	 * comparisons as the {@link SPLEvaluator}.
+	 * 
+	 * @return false if the prices cannot be repaired
+	 */
+	private boolean repair(int[] products, double[] p, int[] assignment) {
+		for (int round = 0; round < REPAIR_ROUNDS; round++) {
+			boolean violated = false;
+			for (int i = 0; i < nrOfSegments; i++) {
+				int j = assignment[i];
+				double surplus = wtp[i][j] - p[j];
+				boolean ok = surplus >= w[i];
+				for (int k : products)
+					ok &= !(surplus < wtp[i][k] - p[k]);
+				if (!ok) {
+					p[j] = Math.nextAfter(p[j], Double.NEGATIVE_INFINITY);
+					violated = true;
+				}
+			}
+			if (!violated) {
+				for (int j : products) {
+					if (p[j] < lb[j])
+						return false;
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Offers the solution of a leaf as new incumbent.
+	 */
+	private void update(double[] p, int[] assignment, double fixedCost) {
+		double profit = -fixedCost;
+		for (int i = 0; i < nrOfSegments; i++)
+			profit += q[i] * (p[assignment[i]] - cv[assignment[i]]);
+
+		synchronized (this) {
+			if (profit > bestProfit) {
+				bestProfit = profit;
+				bestAssignment = assignment.clone();
+				bestPrices = p.clone();
+			}
+		}
+	}
+
+	/**
+	 * @return the incumbent as solution, prices of products that are not
+	 *         produced are set to their lower bound
+	 */
+	private Solution solution() {
+		boolean[][] x = new boolean[nrOfSegments][nrOfProducts];
+		boolean[] y = new boolean[nrOfProducts];
+		for (int i = 0; i < nrOfSegments; i++) {
+			x[i][bestAssignment[i]] = true;
+			y[bestAssignment[i]] = true;
+		}
+		double[] p = new double[nrOfProducts];
+		for (int j = 0; j < nrOfProducts; j++)
+			p[j] = y[j] ? bestPrices[j] : lb[j];
+		return new Solution(x, p, description);
+	}
+}
+// EOF
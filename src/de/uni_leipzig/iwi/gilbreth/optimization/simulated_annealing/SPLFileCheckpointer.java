@@ -0,0 +1,185 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Writes checkpoints to a file. The checkpoints are encoded and written by a
+ * background thread, the optimizer only hands over the latest snapshot. If the
+ * writer falls behind, older snapshots are skipped. Each checkpoint is written
+ * to a temporary file, synced and then renamed onto the checkpoint file, so a
+ * crash never leaves a partially written checkpoint behind.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+@Singleton
+public class SPLFileCheckpointer implements SPLCheckpointer {
+
+	private final File file;
+	private final File temp;
+	private final int interval;
+	private final boolean resume;
+	private final SPLGenotypeCodec codec;
+
+	// the latest checkpoint that is not written yet
+	private SPLCheckpoint pending = null;
+	private boolean closed = false;
+	private Thread writer = null;
+
+	@Inject
+	public SPLFileCheckpointer(SPLProblem problem,
+			@Constant(value = "checkpointFile") String file,
+			@Constant(value = "checkpointInterval") int interval,
+			@Constant(value = "resume") boolean resume) {
+		if (interval <= 0)
+			throw new IllegalArgumentException(
+					"The checkpoint interval has to be positive.");
+
+		this.file = new File(file);
+		this.temp = new File(file + ".tmp");
+		this.interval = interval;
+		this.resume = resume;
+		this.codec = new SPLGenotypeCodec(problem.getSPLProblemDescription());
+	}
+
+	@Override
+	public int getInterval() {
+		return interval;
+	}
+
+	@Override
+	public SPLCheckpoint restore() {
+		if (!resume || !file.exists())
+			return null;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				return SPLCheckpoint.read(in, codec);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot resume from checkpoint "
+					+ file, e);
+		}
+	}
+
+	@Override
+	public synchronized void save(SPLCheckpoint checkpoint) {
+		if (closed)
+			throw new IllegalStateException("The checkpointer is closed.");
+
+		pending = checkpoint;
+		if (writer == null) {
+			writer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					writeLoop();
+				}
+			}, "checkpoint-writer");
+			writer.setDaemon(true);
+			writer.start();
+		}
+		notifyAll();
+	}
+
+	@Override
+	public void close() {
+		Thread t;
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+			t = writer;
+		}
+		if (t != null) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void writeLoop() {
+		while (true) {
+			SPLCheckpoint checkpoint;
+			synchronized (this) {
+				while (pending == null && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending == null)
+					return;
+				checkpoint = pending;
+				pending = null;
+			}
+
+			try {
+				write(checkpoint);
+			} catch (IOException e) {
+				System.err.println("Writing checkpoint " + file + " failed: "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	private void write(SPLCheckpoint checkpoint) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				32 + 2 * codec.encodedLength());
+		checkpoint.write(new DataOutputStream(bytes), codec);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			FileChannel channel = out.getChannel();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(true);
+		} finally {
+			out.close();
+		}
+
+		// rename is atomic on POSIX file systems; where the target has to be
+		// removed first there is a short window without a checkpoint
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IOException("Cannot rename " + temp + " to " + file);
+		}
+	}
+}
+// EOF
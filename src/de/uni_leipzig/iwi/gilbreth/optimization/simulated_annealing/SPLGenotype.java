@@ -16,16 +16,15 @@
 package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
 
 import org.opt4j.core.problem.Genotype;
-import org.opt4j.genotype.BooleanGenotype;
 import org.opt4j.genotype.CompositeGenotype;
 import org.opt4j.genotype.DoubleGenotype;
 
 /**
  * A Genotype representing the genome of a SPL optimization problem It consists
  * of three sub genomes for the selected products (Y), the product-segment
- * assignment (X) and the prices (P). Y and X are represented by boolean genomes
- * (just lists of booleans), P is represented by DoubleGenome, a Genome for
- * double values varied within given bounds.
+ * assignment (X) and the prices (P). X is represented by a
+ * {@link SPLBitGenotype}, the bits packed into words, P is represented by
+ * DoubleGenome, a Genome for double values varied within given bounds.
  * 
  * @author Johannes Müller
  * 
@@ -48,7 +47,7 @@ public class SPLGenotype extends CompositeGenotype<Integer, Genotype> {
 		return p;
 	}
 
-	public BooleanGenotype getX() {
+	public SPLBitGenotype getX() {
 		return this.get(1);
 	}
 
@@ -57,14 +56,13 @@ public class SPLGenotype extends CompositeGenotype<Integer, Genotype> {
 	 * @return the sub genotype X as boolean matrix
 	 */
 	public boolean[][] getXAsMatrix() {
-		boolean[][] x = new boolean[getX().size() / getP().size()][getP()
-				.size()];
+		SPLBitGenotype genotype = getX();
+		int offset = getP().size();
+		boolean[][] x = new boolean[genotype.size() / offset][offset];
 
-		int offset = x[0].length;
-		for (int i = 0; i < x.length; i++) {
-			for (int j = 0; j < x[0].length; j++) {
-				x[i][j] = getX().get(i * offset + j);
-			}
+		for (int n = genotype.nextSetBit(0); n >= 0; n = genotype
+				.nextSetBit(n + 1)) {
+			x[n / offset][n % offset] = true;
 		}
 		return x;
 	}
@@ -73,7 +71,7 @@ public class SPLGenotype extends CompositeGenotype<Integer, Genotype> {
 		this.put(2, genotype);
 	}
 
-	public void setX(BooleanGenotype genotype) {
+	public void setX(SPLBitGenotype genotype) {
 		this.put(1, genotype);
 	}
 }
@@ -0,0 +1,148 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.opt4j.genotype.DoubleBounds;
+import org.opt4j.genotype.DoubleGenotype;
+
+/**
+ * Compact binary encoding of SPLGenotypes. The segment assignment x is packed
+ * into 64 bit words, the prices are written as doubles. The encoding contains
+ * the dimensions of the problem, thus a genotype can only be read for the
+ * problem it has been written for.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLGenotypeCodec {
+
+	private static final int MAGIC = 0x53504c47; // "SPLG"
+
+	private final int nrOfSegments;
+	private final int nrOfProducts;
+	private final DoubleBounds bounds;
+
+	public SPLGenotypeCodec(SPLProblemDescription problemDescription) {
+		this.nrOfSegments = problemDescription.getCustomer()
+				.numberOfSegments();
+		this.nrOfProducts = problemDescription.getFirm().NumberOfProducts();
+		this.bounds = SPLCreator.priceBounds(problemDescription);
+	}
+
+	/**
+	 * @return the number of bytes of an encoded genotype
+	 */
+	public int encodedLength() {
+		return 12 + 8 * words() + 8 * nrOfProducts;
+	}
+
+	public byte[] toBytes(SPLGenotype genotype) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				encodedLength());
+		try {
+			write(new DataOutputStream(bytes), genotype);
+		} catch (IOException e) {
+			// cannot happen on a byte array
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public SPLGenotype fromBytes(byte[] data) throws IOException {
+		return read(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	/**
+	 * Writes a genotype.
+	 * 
+	 * @param out
+	 *            the output to write to
+	 * @param genotype
+	 *            the genotype to write
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void write(DataOutput out, SPLGenotype genotype) throws IOException {
+		SPLBitGenotype x = genotype.getX();
+		DoubleGenotype p = genotype.getP();
+
+		out.writeInt(MAGIC);
+		out.writeInt(nrOfSegments);
+		out.writeInt(nrOfProducts);
+
+		if (x.size() != nrOfSegments * nrOfProducts)
+			throw new IllegalArgumentException("The genotype has "
+					+ x.size() + " assignments, expected "
+					+ nrOfSegments * nrOfProducts + ".");
+		for (int w = 0; w < x.numberOfWords(); w++) {
+			out.writeLong(x.getWord(w));
+		}
+
+		for (int j = 0; j < nrOfProducts; j++) {
+			out.writeDouble(p.get(j));
+		}
+	}
+
+	/**
+	 * Reads a genotype.
+	 * 
+	 * @param in
+	 *            the input to read from
+	 * @return the genotype
+	 * @throws IOException
+	 *             if reading fails or the data does not encode a genotype of
+	 *             this problem
+	 */
+	public SPLGenotype read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("The data does not contain a SPLGenotype.");
+		int segments = in.readInt();
+		int products = in.readInt();
+		if (segments != nrOfSegments || products != nrOfProducts)
+			throw new IOException("The genotype has " + segments
+					+ " segments and " + products
+					+ " products, but the problem has " + nrOfSegments
+					+ " segments and " + nrOfProducts + " products.");
+
+		SPLBitGenotype x = new SPLBitGenotype(nrOfSegments * nrOfProducts);
+		for (int w = 0; w < x.numberOfWords(); w++) {
+			x.setWord(w, in.readLong());
+		}
+
+		DoubleGenotype p = new DoubleGenotype(bounds);
+		for (int j = 0; j < nrOfProducts; j++) {
+			p.add(in.readDouble());
+		}
+
+		SPLGenotype genotype = new SPLGenotype();
+		genotype.setP(p);
+		genotype.setX(x);
+		return genotype;
+	}
+
+	private int words() {
+		return (nrOfSegments * nrOfProducts + 63) / 64;
+	}
+}
+// EOF
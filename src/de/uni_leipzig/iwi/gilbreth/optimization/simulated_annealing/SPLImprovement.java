@@ -0,0 +1,130 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * An immutable snapshot of an improved solution: the prices, the segment
+ * assignment and the profit. The arrays are copies, thus a snapshot can be
+ * handed to other threads while the optimization continues. If every segment
+ * has one product assigned, only the product of each segment is copied.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public final class SPLImprovement {
+
+	private final int iteration;
+	private final double[] p;
+	// the product of each segment, null if x is kept instead
+	private final int[] assignment;
+	private final boolean[][] x;
+	private final double profit;
+	private final double fitness;
+
+	/**
+	 * Takes a snapshot of a solution. The profit is the one the evaluation
+	 * has calculated already.
+	 * 
+	 * @param iteration
+	 *            the iteration the solution has been found in
+	 * @param solution
+	 *            the solution
+	 * @param fitness
+	 *            the (penalized) profit of the solution, see
+	 *            {@link SPLEvaluator#fitness(Solution)}
+	 */
+	public SPLImprovement(int iteration, Solution solution, double fitness) {
+		this.iteration = iteration;
+		this.p = solution.getP().clone();
+		int[] assignment = solution.getAssignment();
+		if (regular(assignment)) {
+			this.assignment = assignment.clone();
+			this.x = null;
+		} else {
+			boolean[][] x = solution.getX();
+			this.assignment = null;
+			this.x = new boolean[x.length][];
+			for (int i = 0; i < x.length; i++)
+				this.x[i] = x[i].clone();
+		}
+		this.profit = solution.profit();
+		this.fitness = fitness;
+	}
+
+	public double getFitness() {
+		return fitness;
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * @return a copy of the prices
+	 */
+	public double[] getP() {
+		return p.clone();
+	}
+
+	public double getP(int j) {
+		return p[j];
+	}
+
+	public double getProfit() {
+		return profit;
+	}
+
+	/**
+	 * @return a copy of the segment assignment
+	 */
+	public boolean[][] getX() {
+		if (x == null) {
+			boolean[][] copy = new boolean[assignment.length][p.length];
+			for (int i = 0; i < assignment.length; i++)
+				copy[i][assignment[i]] = true;
+			return copy;
+		}
+		boolean[][] copy = new boolean[x.length][];
+		for (int i = 0; i < x.length; i++)
+			copy[i] = x[i].clone();
+		return copy;
+	}
+
+	/**
+	 * @return true if product j is assigned to segment i
+	 */
+	public boolean getX(int i, int j) {
+		return x == null ? assignment[i] == j : x[i][j];
+	}
+
+	/**
+	 * @return true if every segment has one product assigned
+	 */
+	private static boolean regular(int[] assignment) {
+		for (int j : assignment) {
+			if (j < 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "iteration " + iteration + ": profit " + profit + ", fitness "
+				+ fitness;
+	}
+}
+// EOF
@@ -0,0 +1,285 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.inject.Singleton;
+
+/**
+ * Publishes the improvements of an optimizer as a stream of
+ * {@link SPLImprovement} snapshots. The protocol follows the reactive streams
+ * specification: a subscriber requests a number of snapshots and receives at
+ * most that many. Delivery is conflating, i.e. a subscriber that requests
+ * slower than the optimizer improves receives only the latest snapshot, the
+ * ones in between are skipped. The optimizer only stores a reference and
+ * never waits for a subscriber.
+ * <p>
+ * The subscribers are called from background threads, each subscriber
+ * sequentially. A new subscriber receives the latest snapshot as its first
+ * element if an improvement has been published already. Without subscribers
+ * no snapshot is taken, thus a subscriber added later waits for the next
+ * improvement. After the optimization has finished, each subscriber receives
+ * its undelivered snapshot, if requested, and then onComplete.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+@Singleton
+public class SPLImprovementPublisher implements SPLImprovementSink {
+
+	/**
+	 * Receives the snapshots of a {@link SPLImprovementPublisher}.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public interface Subscriber {
+
+		/**
+		 * Called once before any other method.
+		 * 
+		 * @param subscription
+		 *            the subscription to request snapshots with
+		 */
+		public void onSubscribe(Subscription subscription);
+
+		/**
+		 * Receives a snapshot, at most as many as requested.
+		 * 
+		 * @param improvement
+		 *            the latest snapshot
+		 */
+		public void onNext(SPLImprovement improvement);
+
+		/**
+		 * Called once if the subscription fails, no other call follows.
+		 * 
+		 * @param error
+		 *            the reason
+		 */
+		public void onError(Throwable error);
+
+		/**
+		 * Called once after the optimization has finished, no other call
+		 * follows.
+		 */
+		public void onComplete();
+	}
+
+	/**
+	 * The link between a publisher and one subscriber.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public interface Subscription {
+
+		/**
+		 * Requests n more snapshots. May be called from any thread.
+		 * 
+		 * @param n
+		 *            the number of snapshots, has to be positive
+		 */
+		public void request(long n);
+
+		/**
+		 * Stops the delivery. May be called from any thread.
+		 */
+		public void cancel();
+	}
+
+	private final List<Delivery> deliveries = new CopyOnWriteArrayList<Delivery>();
+
+	private final AtomicReference<SPLImprovement> latest = new AtomicReference<SPLImprovement>();
+
+	private volatile boolean closed = false;
+
+	private final ExecutorService executor = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "improvement-publisher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Adds a subscriber. A subscriber that is added after the optimization
+	 * has finished receives the final snapshot, if requested and taken, and
+	 * then onComplete.
+	 * 
+	 * @param subscriber
+	 *            the subscriber
+	 */
+	public void subscribe(Subscriber subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("The subscriber must not be null.");
+		Delivery delivery = new Delivery(subscriber);
+		deliveries.add(delivery);
+		SPLImprovement improvement = latest.get();
+		if (improvement != null)
+			delivery.pending.compareAndSet(null, improvement);
+		if (closed)
+			delivery.completed = true;
+		delivery.schedule();
+	}
+
+	/**
+	 * @return the latest snapshot, null if nothing has been published yet or
+	 *         the latest improvement had no subscriber
+	 */
+	public SPLImprovement getLatest() {
+		return latest.get();
+	}
+
+	@Override
+	public void improved(int iteration, Solution solution, double fitness) {
+		if (deliveries.isEmpty()) {
+			// nobody would receive the snapshot
+			latest.set(null);
+			return;
+		}
+		publish(new SPLImprovement(iteration, solution, fitness));
+	}
+
+	/**
+	 * Publishes a snapshot to all subscribers. Does not block.
+	 * 
+	 * @param improvement
+	 *            the snapshot
+	 */
+	public void publish(SPLImprovement improvement) {
+		latest.set(improvement);
+		for (Delivery delivery : deliveries) {
+			delivery.pending.set(improvement);
+			delivery.schedule();
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		for (Delivery delivery : deliveries) {
+			delivery.completed = true;
+			delivery.schedule();
+		}
+	}
+
+	private class Delivery implements Subscription, Runnable {
+		private final Subscriber subscriber;
+
+		// the snapshot that is not delivered yet, replaced by newer ones
+		private final AtomicReference<SPLImprovement> pending = new AtomicReference<SPLImprovement>();
+
+		private final AtomicLong demand = new AtomicLong();
+
+		// the number of schedule() calls the drain loop has not seen yet
+		private final AtomicInteger work = new AtomicInteger();
+
+		private boolean subscribed = false;
+		private volatile boolean completed = false;
+		private volatile boolean cancelled = false;
+		private volatile Throwable error = null;
+
+		Delivery(Subscriber subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException(
+						"The number of requested snapshots has to be positive, not "
+								+ n + ".");
+			} else {
+				long current, next;
+				do {
+					current = demand.get();
+					next = current + n < 0 ? Long.MAX_VALUE : current + n;
+				} while (!demand.compareAndSet(current, next));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			deliveries.remove(this);
+		}
+
+		void schedule() {
+			if (work.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		/**
+		 * Delivers the pending snapshot and the completion. Runs in one
+		 * thread at a time, the calls of a subscriber never overlap.
+		 */
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				try {
+					drain();
+				} catch (Throwable t) {
+					// the subscriber violated the protocol
+					cancel();
+				}
+				missed = work.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain() {
+			if (cancelled)
+				return;
+			if (!subscribed) {
+				subscribed = true;
+				subscriber.onSubscribe(this);
+				if (cancelled)
+					return;
+			}
+			if (error != null) {
+				cancel();
+				subscriber.onError(error);
+				return;
+			}
+			if (demand.get() > 0) {
+				SPLImprovement improvement = pending.getAndSet(null);
+				if (improvement != null) {
+					if (demand.get() != Long.MAX_VALUE)
+						demand.decrementAndGet();
+					subscriber.onNext(improvement);
+				}
+			}
+			// the final snapshot waits for a request before the completion
+			if (completed && !cancelled && pending.get() == null) {
+				cancel();
+				subscriber.onComplete();
+			}
+		}
+	}
+}
+// EOF
@@ -0,0 +1,47 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * Receives the improvements of the best solution found by an optimizer. If
+ * bound, the {@link SPLSimulatedAnnealing} calls
+ * {@link #improved(int, Solution, double)} whenever its best solution
+ * improves, thus implementations must not block.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public interface SPLImprovementSink {
+
+	/**
+	 * Receives an improved best solution.
+	 * 
+	 * @param iteration
+	 *            the iteration
+	 * @param solution
+	 *            the solution, owned by the optimizer and only valid during
+	 *            the call
+	 * @param fitness
+	 *            the (penalized) profit of the solution
+	 */
+	public void improved(int iteration, Solution solution, double fitness);
+
+	/**
+	 * Called once after the optimization has finished.
+	 */
+	public void close();
+}
+// EOF
@@ -0,0 +1,230 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary file format of SPL problem instances. The header and the firm come
+ * first, followed by one record per segment, thus large instances can be
+ * written segment by segment without holding them in memory:
+ * 
+ * <pre>
+ * int    magic "SPLI"
+ * int    version
+ * int    segments, products, assets, price steps
+ * double cv[products], cf[products], ca[assets]
+ * int    assetStart[products + 1], assetIndex[assetStart[products]]
+ * per segment: int q, double w, double wtp[products]
+ * </pre>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLInstanceFormat {
+
+	static final int MAGIC = 0x53504c49; // "SPLI"
+
+	static final int VERSION = 1;
+
+	private static final int BUFFER = 1 << 16;
+
+	/**
+	 * Writes a problem description to a file.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param problemDescription
+	 *            the problem description
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public static void write(File file, SPLProblemDescription problemDescription)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), BUFFER));
+		try {
+			write(out, problemDescription);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a problem description.
+	 * 
+	 * @param out
+	 *            the output to write to
+	 * @param problemDescription
+	 *            the problem description
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public static void write(DataOutput out,
+			SPLProblemDescription problemDescription) throws IOException {
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		writeHeader(out, c.numberOfSegments(), f,
+				problemDescription.getPriceSteps());
+
+		double[] wtp = new double[f.NumberOfProducts()];
+		for (int i = 0; i < c.numberOfSegments(); i++) {
+			for (int j = 0; j < wtp.length; j++)
+				wtp[j] = c.getWTP(i, j);
+			writeSegment(out, c.getQ(i), problemDescription.getCompetition()
+					.getW(i), wtp);
+		}
+	}
+
+	/**
+	 * Writes the header and the firm, to be followed by the given number of
+	 * segment records.
+	 */
+	static void writeHeader(DataOutput out, int segments,
+			SPLProblemDescription.Firm f, int priceSteps) throws IOException {
+		int products = f.NumberOfProducts();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(segments);
+		out.writeInt(products);
+		out.writeInt(f.NumberOfAssets());
+		out.writeInt(priceSteps);
+
+		for (int j = 0; j < products; j++)
+			out.writeDouble(f.getCv(j));
+		for (int j = 0; j < products; j++)
+			out.writeDouble(f.getCf(j));
+		for (int k = 0; k < f.NumberOfAssets(); k++)
+			out.writeDouble(f.getCa(k));
+
+		int n = 0;
+		for (int j = 0; j < products; j++) {
+			out.writeInt(n);
+			n += f.numberOfAssetsOf(j);
+		}
+		out.writeInt(n);
+		for (int j = 0; j < products; j++) {
+			for (int m = 0; m < f.numberOfAssetsOf(j); m++)
+				out.writeInt(f.getAssetOf(j, m));
+		}
+	}
+
+	/**
+	 * Writes the record of a single segment.
+	 */
+	static void writeSegment(DataOutput out, int q, double w, double[] wtp)
+			throws IOException {
+		out.writeInt(q);
+		out.writeDouble(w);
+		for (int j = 0; j < wtp.length; j++)
+			out.writeDouble(wtp[j]);
+	}
+
+	/**
+	 * Reads a problem description from a file.
+	 * 
+	 * @param file
+	 *            the file
+	 * @return the problem description
+	 * @throws IOException
+	 *             if reading fails or the file does not contain an instance
+	 */
+	public static SPLProblemDescription read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), BUFFER));
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a problem description.
+	 * 
+	 * @param in
+	 *            the input to read from
+	 * @return the problem description
+	 * @throws IOException
+	 *             if reading fails or the data does not contain an instance
+	 */
+	public static SPLProblemDescription read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("The data does not contain a SPL instance.");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported instance version " + version
+					+ ".");
+		int segments = in.readInt();
+		int products = in.readInt();
+		int assets = in.readInt();
+		int priceSteps = in.readInt();
+		if (segments < 0 || products <= 0 || assets < 0)
+			throw new IOException("Invalid instance dimensions " + segments
+					+ "x" + products + "x" + assets + ".");
+
+		double[] cv = readDoubles(in, products);
+		double[] cf = readDoubles(in, products);
+		double[] ca = readDoubles(in, assets);
+		int[] assetStart = new int[products + 1];
+		for (int j = 0; j <= products; j++)
+			assetStart[j] = in.readInt();
+		if (assetStart[products] < 0)
+			throw new IOException("Invalid number of asset requirements.");
+		int[] assetIndex = new int[assetStart[products]];
+		for (int n = 0; n < assetIndex.length; n++)
+			assetIndex[n] = in.readInt();
+
+		SPLProblemDescription.Firm firm;
+		try {
+			firm = new SPLProblemDescription.Firm(cv, cf, ca, assetStart,
+					assetIndex);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+
+		int[] q = new int[segments];
+		double[] w = new double[segments];
+		double[][] wtp = new double[segments][];
+		for (int i = 0; i < segments; i++) {
+			q[i] = in.readInt();
+			w[i] = in.readDouble();
+			wtp[i] = readDoubles(in, products);
+		}
+
+		return new SPLProblemDescription(new SPLProblemDescription.Customer(
+				q, wtp), firm, new SPLProblemDescription.Competition(w),
+				priceSteps);
+	}
+
+	private static double[] readDoubles(DataInput in, int n)
+			throws IOException {
+		double[] values = new double[n];
+		for (int k = 0; k < n; k++)
+			values[k] = in.readDouble();
+		return values;
+	}
+}
+// EOF
@@ -0,0 +1,353 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates random SPL problem instances in parallel. The segments are
+ * generated in blocks, each block draws from its own {@link SPLRandom}
+ * stream derived from the seed and the number of the block. Thus the
+ * instance only depends on the seed, not on the number of threads or the
+ * order in which the blocks are filled. The firm (costs and assets) is
+ * drawn from a separate stream.
+ * 
+ * <p>
+ * Large instances can be written directly to the {@link SPLInstanceFormat}
+ * without holding the segments in memory.
+ * </p>
+ * 
+ * <pre>
+ * java SPLInstanceGenerator &lt;segments&gt; &lt;products&gt; &lt;assets&gt; &lt;priceLevel&gt; &lt;priceStep&gt; &lt;seed&gt; &lt;file&gt; [UNIFORM|TIERED] [premiumShare] [threads]
+ * </pre>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLInstanceGenerator {
+
+	public enum Structure {
+		/**
+		 * independent, uniformly distributed willingness to pay
+		 */
+		UNIFORM,
+		/**
+		 * premium segments pay more for products of higher quality, budget
+		 * segments prefer the basic products
+		 */
+		TIERED;
+	}
+
+	// segments per block, i.e. per random stream
+	static final int BLOCK = 4096;
+
+	// the stream of the firm, the blocks use the streams 0, 1, 2, ...
+	private static final long FIRM_STREAM = -1L;
+
+	private final int nrOfSegments;
+	private final int nrOfProducts;
+	private final int nrOfAssets;
+	private final double priceLevel;
+	private final int priceStep;
+	private final long seed;
+
+	private Structure structure = Structure.UNIFORM;
+	private double premiumShare = 0.2d;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// the quality of each product, used by the tiered structure
+	private double[] quality;
+
+	/**
+	 * Constructs a new generator, the parameters are those of the RANDOM
+	 * problem of the {@link SPLModule}.
+	 * 
+	 * @param nrOfSegments
+	 *            the number of segments
+	 * @param nrOfProducts
+	 *            the number of products including the 0 product
+	 * @param nrOfAssets
+	 *            the number of assets
+	 * @param priceLevel
+	 *            the maximal willingness to pay
+	 * @param priceStep
+	 *            the number of price steps
+	 * @param seed
+	 *            the seed
+	 */
+	public SPLInstanceGenerator(int nrOfSegments, int nrOfProducts,
+			int nrOfAssets, double priceLevel, int priceStep, long seed) {
+		if (nrOfSegments <= 0 || nrOfProducts <= 0 || nrOfAssets < 0)
+			throw new IllegalArgumentException("Invalid instance dimensions "
+					+ nrOfSegments + "x" + nrOfProducts + "x" + nrOfAssets
+					+ ".");
+		this.nrOfSegments = nrOfSegments;
+		this.nrOfProducts = nrOfProducts;
+		this.nrOfAssets = nrOfAssets;
+		this.priceLevel = priceLevel;
+		this.priceStep = priceStep;
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 7) {
+			System.err
+					.println("usage: SPLInstanceGenerator <segments> <products> <assets> <priceLevel> <priceStep> <seed> <file> [UNIFORM|TIERED] [premiumShare] [threads]");
+			System.exit(1);
+		}
+		SPLInstanceGenerator generator = new SPLInstanceGenerator(
+				Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+				Integer.parseInt(args[2]), Double.parseDouble(args[3]),
+				Integer.parseInt(args[4]), Long.parseLong(args[5]));
+		if (args.length > 7)
+			generator.setStructure(Structure.valueOf(args[7]));
+		if (args.length > 8)
+			generator.setPremiumShare(Double.parseDouble(args[8]));
+		if (args.length > 9)
+			generator.setThreads(Integer.parseInt(args[9]));
+
+		long start = System.currentTimeMillis();
+		generator.write(new File(args[6]));
+		System.out.println((System.currentTimeMillis() - start) + "ms");
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public Structure getStructure() {
+		return structure;
+	}
+
+	public double getPremiumShare() {
+		return premiumShare;
+	}
+
+	public void setThreads(int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException(
+					"The number of threads has to be positive.");
+		this.threads = threads;
+	}
+
+	public void setStructure(Structure structure) {
+		this.structure = structure;
+	}
+
+	/**
+	 * @param premiumShare
+	 *            the probability of a segment to be a premium segment in the
+	 *            tiered structure
+	 */
+	public void setPremiumShare(double premiumShare) {
+		if (premiumShare < 0.0d || premiumShare > 1.0d)
+			throw new IllegalArgumentException(
+					"The premium share has to be within [0, 1].");
+		this.premiumShare = premiumShare;
+	}
+
+	/**
+	 * Generates the instance in memory.
+	 * 
+	 * @return the problem description
+	 * @throws InterruptedException
+	 *             if the generator is interrupted while waiting for its
+	 *             threads
+	 */
+	public SPLProblemDescription generate() throws InterruptedException {
+		SPLProblemDescription.Firm firm = generateFirm();
+
+		final int[] q = new int[nrOfSegments];
+		final double[] w = new double[nrOfSegments];
+		final double[][] wtp = new double[nrOfSegments][];
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int b = 0; b < blocks(); b++) {
+			final int block = b;
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					generateBlock(block, q, w, wtp, block * BLOCK);
+					return null;
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, tasks.size()));
+		try {
+			for (Future<Object> future : executor.invokeAll(tasks))
+				future.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return new SPLProblemDescription(new SPLProblemDescription.Customer(
+				q, wtp), firm, new SPLProblemDescription.Competition(w),
+				priceStep);
+	}
+
+	/**
+	 * Generates the instance directly into a file of the
+	 * {@link SPLInstanceFormat}. At most a few blocks per thread are held in
+	 * memory at a time. The file equals the one written for the instance
+	 * returned by {@link #generate()}.
+	 * 
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             if writing fails
+	 * @throws InterruptedException
+	 *             if the generator is interrupted while waiting for its
+	 *             threads
+	 */
+	public void write(File file) throws IOException, InterruptedException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			SPLInstanceFormat.writeHeader(out, nrOfSegments, generateFirm(),
+					priceStep);
+
+			// the blocks in generation, written in order
+			LinkedList<Future<Object[]>> window = new LinkedList<Future<Object[]>>();
+			int next = 0;
+			int written = 0;
+			while (written < blocks()) {
+				while (next < blocks() && window.size() < 2 * threads) {
+					final int block = next++;
+					window.add(executor.submit(new Callable<Object[]>() {
+						@Override
+						public Object[] call() {
+							int size = Math.min(BLOCK, nrOfSegments - block
+									* BLOCK);
+							int[] q = new int[size];
+							double[] w = new double[size];
+							double[][] wtp = new double[size][];
+							generateBlock(block, q, w, wtp, 0);
+							return new Object[] { q, w, wtp };
+						}
+					}));
+				}
+
+				Object[] data = window.removeFirst().get();
+				int[] q = (int[]) data[0];
+				double[] w = (double[]) data[1];
+				double[][] wtp = (double[][]) data[2];
+				for (int i = 0; i < q.length; i++)
+					SPLInstanceFormat.writeSegment(out, q[i], w[i], wtp[i]);
+				written++;
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+	}
+
+	private int blocks() {
+		return (nrOfSegments + BLOCK - 1) / BLOCK;
+	}
+
+	/**
+	 * Draws cost and assets of the firm and the product qualities.
+	 */
+	private SPLProblemDescription.Firm generateFirm() {
+		SPLRandom random = SPLRandom.stream(seed, FIRM_STREAM);
+
+		double fixCostLevel = 100 * priceLevel;
+		double varCostLevel = priceLevel / 10;
+		double assetCostLevel = fixCostLevel / 10;
+
+		double[] cv = new double[nrOfProducts];
+		double[] cf = new double[nrOfProducts];
+		quality = new double[nrOfProducts];
+		for (int j = 0; j < nrOfProducts; j++) {
+			cv[j] = j == 0 ? 0.0d : random.nextDouble() * varCostLevel;
+			cf[j] = j == 0 ? 0.0d : random.nextDouble() * fixCostLevel;
+			quality[j] = j == 0 ? 0.0d : random.nextDouble();
+		}
+
+		boolean[][] a = new boolean[nrOfProducts][nrOfAssets];
+		for (int j = 0; j < nrOfProducts; j++) {
+			for (int k = 0; k < nrOfAssets; k++) {
+				a[j][k] = random.nextBoolean();
+			}
+		}
+		double[] ca = new double[nrOfAssets];
+		for (int k = 0; k < nrOfAssets; k++) {
+			ca[k] = assetCostLevel * random.nextDouble();
+		}
+
+		return new SPLProblemDescription.Firm(cv, cf, ca, a);
+	}
+
+	/**
+	 * Draws the segments of a block into the arrays, starting at the given
+	 * offset.
+	 */
+	private void generateBlock(int block, int[] q, double[] w,
+			double[][] wtp, int offset) {
+		SPLRandom random = SPLRandom.stream(seed, block);
+		int first = block * BLOCK;
+		int last = Math.min(first + BLOCK, nrOfSegments);
+
+		for (int i = first; i < last; i++) {
+			double[] row = new double[nrOfProducts];
+			int n = i - first + offset;
+
+			switch (structure) {
+			case TIERED:
+				boolean premium = random.nextDouble() < premiumShare;
+				// premium segments are smaller, pay more for quality and
+				// expect more from the competitor
+				q[n] = random.nextInt(premium ? 300 : 1000) + 1;
+				for (int j = 1; j < nrOfProducts; j++) {
+					double value = premium ? 0.3d + 0.7d * quality[j]
+							: 0.6d - 0.3d * quality[j];
+					row[j] = priceLevel * value
+							* (0.75d + 0.5d * random.nextDouble());
+				}
+				w[n] = i == 0 ? 0.0d : priceLevel * (premium ? 0.3d : 0.1d)
+						* random.nextDouble();
+				break;
+			default:
+				q[n] = random.nextInt(1000) + 1;
+				for (int j = 1; j < nrOfProducts; j++) {
+					row[j] = priceLevel * random.nextDouble();
+				}
+				w[n] = i == 0 ? 0.0d : priceLevel * random.nextDouble();
+			}
+			wtp[n] = row;
+		}
+	}
+}
+// EOF
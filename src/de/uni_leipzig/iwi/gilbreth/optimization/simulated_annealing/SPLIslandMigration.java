@@ -0,0 +1,320 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Migration between islands that run in separate processes on the same or
+ * different hosts. Each island listens on its own address of the peer list
+ * and keeps a connection to each of its neighbors. Sending and receiving
+ * happens in background threads, thus the optimizer never waits for the
+ * network. Unreachable neighbors are skipped and contacted again at the next
+ * migration.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+@Singleton
+public class SPLIslandMigration implements SPLMigration {
+
+	// received genotypes that are not consumed yet, the oldest ones are
+	// dropped if the optimizer does not keep up
+	private static final int CAPACITY = 16;
+
+	// upper limit of a received message, protects against garbage on the port
+	private static final int MAX_MESSAGE = 1 << 26;
+
+	// waiting time after a failed accept, e.g. if no file handles are left
+	private static final long ACCEPT_BACKOFF = 100L;
+
+	private final int island;
+	private final List<InetSocketAddress> peers;
+	private final int[] neighbors;
+	private final int interval;
+	private final SPLGenotypeCodec codec;
+
+	private final BlockingQueue<byte[]> incoming = new LinkedBlockingQueue<byte[]>(
+			CAPACITY);
+
+	// the latest genotype to send, null if it has been sent already
+	private byte[] outgoing = null;
+
+	private volatile boolean running = false;
+	private ServerSocket server;
+	private Thread receiver;
+	private Thread sender;
+
+	@Inject
+	public SPLIslandMigration(SPLProblem problem,
+			@Constant(value = "island") int island,
+			@Constant(value = "peers") String peers,
+			@Constant(value = "topology") SPLIslandModule.Topology topology,
+			@Constant(value = "migrationInterval") int interval) {
+		this.island = island;
+		this.peers = parsePeers(peers);
+		this.interval = interval;
+		this.codec = new SPLGenotypeCodec(problem.getSPLProblemDescription());
+
+		if (island < 0 || island >= this.peers.size())
+			throw new IllegalArgumentException("Island " + island
+					+ " is not in the list of " + this.peers.size()
+					+ " peers.");
+		if (interval <= 0)
+			throw new IllegalArgumentException(
+					"The migration interval has to be positive.");
+
+		this.neighbors = neighbors(island, this.peers.size(), topology);
+	}
+
+	/**
+	 * Parses a comma separated list of host:port addresses.
+	 */
+	static List<InetSocketAddress> parsePeers(String peers) {
+		List<InetSocketAddress> list = new ArrayList<InetSocketAddress>();
+		for (String peer : peers.split(",")) {
+			peer = peer.trim();
+			int colon = peer.lastIndexOf(':');
+			if (colon <= 0)
+				throw new IllegalArgumentException("Peer " + peer
+						+ " is not of the form host:port.");
+			list.add(new InetSocketAddress(peer.substring(0, colon), Integer
+					.parseInt(peer.substring(colon + 1))));
+		}
+		return list;
+	}
+
+	/**
+	 * @return the islands the given island sends its genotypes to
+	 */
+	static int[] neighbors(int island, int n,
+			SPLIslandModule.Topology topology) {
+		Set<Integer> set = new LinkedHashSet<Integer>();
+		switch (topology) {
+		case RING:
+			set.add((island + 1) % n);
+			break;
+		case BIDIRECTIONAL_RING:
+			set.add((island + 1) % n);
+			set.add((island + n - 1) % n);
+			break;
+		case FULL:
+			for (int k = 0; k < n; k++)
+				set.add(k);
+			break;
+		}
+		set.remove(island);
+
+		int[] result = new int[set.size()];
+		int k = 0;
+		for (int neighbor : set)
+			result[k++] = neighbor;
+		return result;
+	}
+
+	@Override
+	public int getInterval() {
+		return interval;
+	}
+
+	@Override
+	public void start() {
+		try {
+			server = new ServerSocket();
+			server.setReuseAddress(true);
+			server.bind(peers.get(island));
+		} catch (IOException e) {
+			throw new IllegalStateException("Island " + island
+					+ " cannot listen on " + peers.get(island), e);
+		}
+		running = true;
+
+		receiver = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "island-" + island + "-receiver");
+		receiver.setDaemon(true);
+		receiver.start();
+
+		sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				send();
+			}
+		}, "island-" + island + "-sender");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		try {
+			if (server != null)
+				server.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+		if (sender != null)
+			sender.interrupt();
+	}
+
+	@Override
+	public void emigrate(SPLGenotype genotype) {
+		byte[] data = codec.toBytes(genotype);
+		synchronized (this) {
+			outgoing = data;
+			notifyAll();
+		}
+	}
+
+	@Override
+	public List<SPLGenotype> immigrate() {
+		List<byte[]> data = new ArrayList<byte[]>();
+		incoming.drainTo(data);
+
+		List<SPLGenotype> genotypes = new ArrayList<SPLGenotype>(data.size());
+		for (byte[] d : data) {
+			try {
+				genotypes.add(codec.fromBytes(d));
+			} catch (IOException e) {
+				System.err.println("Island " + island
+						+ " dropped a genotype: " + e.getMessage());
+			}
+		}
+		return genotypes;
+	}
+
+	private void accept() {
+		while (running) {
+			try {
+				final Socket socket = server.accept();
+				Thread connection = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						receive(socket);
+					}
+				}, "island-" + island + "-connection");
+				connection.setDaemon(true);
+				connection.start();
+			} catch (IOException e) {
+				if (server.isClosed())
+					return; // stopped
+				System.err.println("Island " + island
+						+ " cannot accept a connection: " + e.getMessage());
+				try {
+					Thread.sleep(ACCEPT_BACKOFF);
+				} catch (InterruptedException i) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void receive(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream()));
+			while (running) {
+				int length = in.readInt();
+				if (length < 0 || length > MAX_MESSAGE)
+					throw new IOException("Invalid message length " + length);
+				byte[] data = new byte[length];
+				in.readFully(data);
+				while (!incoming.offer(data)) {
+					incoming.poll();
+				}
+			}
+		} catch (IOException e) {
+			// the neighbor disconnected
+		} finally {
+			close(socket);
+		}
+	}
+
+	private void send() {
+		Socket[] sockets = new Socket[neighbors.length];
+		DataOutputStream[] out = new DataOutputStream[neighbors.length];
+
+		try {
+			while (running) {
+				byte[] data;
+				synchronized (this) {
+					while (outgoing == null)
+						wait();
+					data = outgoing;
+					outgoing = null;
+				}
+
+				for (int n = 0; n < neighbors.length; n++) {
+					try {
+						if (sockets[n] == null) {
+							sockets[n] = new Socket();
+							sockets[n].setTcpNoDelay(true);
+							sockets[n].connect(peers.get(neighbors[n]));
+							out[n] = new DataOutputStream(
+									new BufferedOutputStream(sockets[n]
+											.getOutputStream()));
+						}
+						out[n].writeInt(data.length);
+						out[n].write(data);
+						out[n].flush();
+					} catch (IOException e) {
+						// neighbor not (yet) reachable, retry next time
+						close(sockets[n]);
+						sockets[n] = null;
+						out[n] = null;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		} finally {
+			for (Socket socket : sockets)
+				close(socket);
+		}
+	}
+
+	private static void close(Socket socket) {
+		try {
+			if (socket != null)
+				socket.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+	}
+}
+// EOF
@@ -0,0 +1,97 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Constant;
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Runs the {@link SPLSimulatedAnnealing} as one island of an island model.
+ * Every island is a separate process, e.g. started with the opt4j starter and
+ * a configuration that contains this module. All islands share the same list
+ * of peers and differ only in their island number. The islands exchange their
+ * best genotypes over TCP, no broker is needed.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLIslandModule extends Opt4JModule {
+
+	public enum Topology {
+		/**
+		 * each island sends to its successor
+		 */
+		RING,
+		/**
+		 * each island sends to its predecessor and successor
+		 */
+		BIDIRECTIONAL_RING,
+		/**
+		 * each island sends to all other islands
+		 */
+		FULL;
+	}
+
+	@Constant(value = "island")
+	protected int island = 0;
+
+	@Constant(value = "peers")
+	protected String peers = "localhost:7001,localhost:7002";
+
+	@Constant(value = "topology")
+	protected Topology topology = Topology.RING;
+
+	@Constant(value = "migrationInterval")
+	protected int migrationInterval = 1000;
+
+	@Override
+	public void config() {
+		bind(SPLMigration.class).to(SPLIslandMigration.class);
+	}
+
+	public int getIsland() {
+		return island;
+	}
+
+	public int getMigrationInterval() {
+		return migrationInterval;
+	}
+
+	public String getPeers() {
+		return peers;
+	}
+
+	public Topology getTopology() {
+		return topology;
+	}
+
+	public void setIsland(int island) {
+		this.island = island;
+	}
+
+	public void setMigrationInterval(int migrationInterval) {
+		this.migrationInterval = migrationInterval;
+	}
+
+	public void setPeers(String peers) {
+		this.peers = peers;
+	}
+
+	public void setTopology(Topology topology) {
+		this.topology = topology;
+	}
+}
+// EOF
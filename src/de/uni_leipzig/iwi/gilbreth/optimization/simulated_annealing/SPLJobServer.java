@@ -0,0 +1,716 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opt4j.common.random.RandomModule;
+import org.opt4j.core.Archive;
+import org.opt4j.core.Individual;
+import org.opt4j.optimizer.sa.CoolingSchedulesModule;
+import org.opt4j.start.Opt4JTask;
+
+import com.google.inject.Module;
+
+/**
+ * A long running process that optimizes problem files on request, thus the
+ * start of the JVM and the compilation of the evaluator are paid only once.
+ * Clients connect to a port on the loopback interface and send one request
+ * line per connection:
+ * 
+ * <pre>
+ * job &lt;instance file&gt; [key=value ...]
+ * status
+ * </pre>
+ * 
+ * The keys are the parameters iterations, delta, change and seed of the
+ * {@link SPLSimulatedAnnealingModule}, initialization, priceGrid and the move
+ * weights moveX, moveP, moveReassign, moveSwap, moveDrop and moveRaise of the
+ * {@link SPLModule}, and the scheduling parameters priority (higher first)
+ * and deadline (milliseconds from now). The server answers with lines, the
+ * last one ends the connection:
+ * 
+ * <pre>
+ * queued &lt;id&gt; &lt;jobs ahead&gt; [unestimated]
+ * started &lt;id&gt;
+ * progress &lt;iteration&gt; &lt;profit&gt; &lt;fitness&gt;
+ * result &lt;fitness&gt; &lt;profit&gt; &lt;millis&gt;
+ * rejected|expired|failed &lt;reason&gt;
+ * </pre>
+ * 
+ * The jobs wait in a queue ordered by priority, then by deadline, and run on
+ * a fixed number of workers. A job is rejected if the queue is full or if it
+ * cannot meet its deadline. The run time of a job is estimated from its
+ * iterations and the measured time per iteration of the finished jobs of the
+ * same problem file, or, for a file that has not run yet, the measured time
+ * per iteration, segment and product of all finished jobs. The jobs ahead of
+ * a job are the queued jobs before it and the rest of the running ones. As
+ * long as no job has finished there is no estimate, a job with a deadline is
+ * queued then but marked as unestimated. A job whose deadline passes while it
+ * waits is dropped. The problem files are read once and kept as long as they
+ * are not modified.
+ * 
+ * <pre>
+ * java SPLJobServer [port] [workers] [queue]
+ * </pre>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLJobServer {
+
+	/**
+	 * A queued job and the connection that waits for it.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	static class Request implements Comparable<Request> {
+		final long id;
+		final SPLBatchManifest.Job job;
+		final SPLModule module = new SPLModule();
+		int priority = 0;
+		// absolute time in milliseconds, 0 if there is no deadline
+		long deadline = 0L;
+		// start of the run in milliseconds, 0 while the job waits
+		long started = 0L;
+		// segments times products of the problem
+		double cells = 0.0d;
+
+		private final Writer out;
+
+		Request(long id, SPLBatchManifest.Job job, Writer out) {
+			this.id = id;
+			this.job = job;
+			this.out = out;
+		}
+
+		@Override
+		public int compareTo(Request o) {
+			if (priority != o.priority)
+				return priority > o.priority ? -1 : 1;
+			long d1 = deadline == 0L ? Long.MAX_VALUE : deadline;
+			long d2 = o.deadline == 0L ? Long.MAX_VALUE : o.deadline;
+			if (d1 != d2)
+				return d1 < d2 ? -1 : 1;
+			return id < o.id ? -1 : (id == o.id ? 0 : 1);
+		}
+
+		/**
+		 * Sends a line to the client. Failures are ignored, the client may
+		 * have disconnected.
+		 */
+		void send(String line) {
+			synchronized (out) {
+				try {
+					out.write(line);
+					out.write('\n');
+					out.flush();
+				} catch (IOException e) {
+					// the client is gone, the job runs anyway
+				}
+			}
+		}
+
+		void close() {
+			synchronized (out) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// closing anyway
+				}
+			}
+		}
+	}
+
+	// the problem files kept in memory
+	private static final int CACHE = 16;
+
+	// weight of the last finished job in the times per iteration
+	private static final double SMOOTHING = 0.2d;
+
+	// waiting time after a failed accept, e.g. if no file handles are left
+	private static final long ACCEPT_BACKOFF = 100L;
+
+	private final int port;
+	private final int workers;
+	private final int capacity;
+
+	private final PriorityBlockingQueue<Request> queue = new PriorityBlockingQueue<Request>();
+
+	private final Map<String, SPLProblem> problems = new LinkedHashMap<String, SPLProblem>(
+			CACHE, 0.75f, true);
+
+	private final Map<String, Long> modified = new LinkedHashMap<String, Long>();
+
+	// measured milliseconds per iteration of the cached problems
+	private final Map<String, Double> millisPerIteration = new HashMap<String, Double>();
+
+	private final AtomicLong ids = new AtomicLong();
+	private final AtomicInteger running = new AtomicInteger();
+
+	// the running jobs, guarded by the queue
+	private final List<Request> active = new ArrayList<Request>();
+
+	// measured milliseconds per iteration, segment and product of all
+	// problems, 0 until a job has finished
+	private volatile double millisPerCell = 0.0d;
+
+	private volatile boolean open = false;
+	private ServerSocket server;
+	private final List<Thread> threads = new ArrayList<Thread>();
+
+	/**
+	 * @param port
+	 *            the port on the loopback interface
+	 * @param workers
+	 *            the number of jobs that run at the same time
+	 * @param capacity
+	 *            the maximal number of waiting jobs
+	 */
+	public SPLJobServer(int port, int workers, int capacity) {
+		if (workers <= 0)
+			throw new IllegalArgumentException(
+					"The number of workers has to be positive.");
+		if (capacity <= 0)
+			throw new IllegalArgumentException(
+					"The queue capacity has to be positive.");
+		this.port = port;
+		this.workers = workers;
+		this.capacity = capacity;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 7100;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime
+				.getRuntime().availableProcessors();
+		int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+		SPLJobServer server = new SPLJobServer(port, workers, capacity);
+		server.start();
+		System.out.println("listening on port " + server.getPort()
+				+ " with " + workers + " workers");
+		server.join();
+	}
+
+	/**
+	 * Starts listening and the workers.
+	 * 
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public void start() throws IOException {
+		server = new ServerSocket();
+		server.setReuseAddress(true);
+		server.bind(new InetSocketAddress(InetAddress.getByName(null), port));
+		open = true;
+
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "job-server");
+		threads.add(acceptor);
+
+		for (int w = 0; w < workers; w++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "job-worker-" + w));
+		}
+		for (Thread thread : threads)
+			thread.start();
+	}
+
+	/**
+	 * Stops accepting requests. Waiting jobs are rejected, running jobs are
+	 * finished.
+	 */
+	public void stop() {
+		open = false;
+		try {
+			if (server != null)
+				server.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+		Request request;
+		while ((request = queue.poll()) != null) {
+			request.send("rejected the server is stopping");
+			request.close();
+		}
+	}
+
+	/**
+	 * Waits until the server has stopped.
+	 * 
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void join() throws InterruptedException {
+		for (Thread thread : threads)
+			thread.join();
+	}
+
+	/**
+	 * @return the bound port, useful if the server was created with port 0
+	 */
+	public int getPort() {
+		return server != null ? server.getLocalPort() : port;
+	}
+
+	private void accept() {
+		while (open) {
+			try {
+				final Socket socket = server.accept();
+				Thread connection = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				}, "job-connection");
+				connection.setDaemon(true);
+				connection.start();
+			} catch (IOException e) {
+				if (server.isClosed())
+					return; // stopped
+				System.err.println("Accepting a connection failed: "
+						+ e.getMessage());
+				try {
+					Thread.sleep(ACCEPT_BACKOFF);
+				} catch (InterruptedException i) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void handle(Socket socket) {
+		Writer out;
+		String line;
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), "UTF-8"));
+			out = new BufferedWriter(new OutputStreamWriter(
+					socket.getOutputStream(), "UTF-8"));
+			line = in.readLine();
+		} catch (IOException e) {
+			close(socket);
+			return;
+		}
+
+		Request request = new Request(0L, null, out);
+		if (line == null) {
+			request.close();
+			return;
+		}
+		try {
+			String[] token = line.trim().split("\\s+");
+			if (token[0].equals("status")) {
+				request.send("status " + queue.size() + " queued "
+						+ running.get() + " running " + millisPerCell
+						+ " ms/iteration/cell");
+				request.close();
+			} else if (token[0].equals("job")) {
+				submit(parse(token, out));
+			} else {
+				throw new IllegalArgumentException("unknown request "
+						+ token[0]);
+			}
+		} catch (Exception e) {
+			request.send("rejected " + e.getMessage());
+			request.close();
+		}
+	}
+
+	/**
+	 * Parses a job request.
+	 */
+	Request parse(String[] token, Writer out) throws IOException {
+		if (token.length < 2)
+			throw new IllegalArgumentException("a job needs an instance file.");
+
+		SPLSimulatedAnnealingModule defaults = new SPLSimulatedAnnealingModule();
+		int iterations = defaults.getIterations();
+		double delta = defaults.getDelta();
+		int change = defaults.getChangeIterations();
+		long seed = 0L;
+		SPLModule module = new SPLModule();
+		int priority = 0;
+		long deadline = 0L;
+
+		for (int n = 2; n < token.length; n++) {
+			int eq = token[n].indexOf('=');
+			if (eq <= 0)
+				throw new IllegalArgumentException(token[n]
+						+ " is not of the form key=value.");
+			String key = token[n].substring(0, eq);
+			String value = token[n].substring(eq + 1);
+
+			if (key.equals("iterations")) {
+				iterations = Integer.parseInt(value);
+			} else if (key.equals("delta")) {
+				delta = Double.parseDouble(value);
+			} else if (key.equals("change")) {
+				change = Integer.parseInt(value);
+			} else if (key.equals("seed")) {
+				seed = Long.parseLong(value);
+			} else if (key.equals("initialization")) {
+				module.setInitialization(SPLModule.Initialization
+						.valueOf(value));
+			} else if (key.equals("priceGrid")) {
+				module.setPriceGrid(Boolean.parseBoolean(value));
+			} else if (key.equals("moveX")) {
+				module.setMoveX(Double.parseDouble(value));
+			} else if (key.equals("moveP")) {
+				module.setMoveP(Double.parseDouble(value));
+			} else if (key.equals("moveReassign")) {
+				module.setMoveReassign(Double.parseDouble(value));
+			} else if (key.equals("moveSwap")) {
+				module.setMoveSwap(Double.parseDouble(value));
+			} else if (key.equals("moveDrop")) {
+				module.setMoveDrop(Double.parseDouble(value));
+			} else if (key.equals("moveRaise")) {
+				module.setMoveRaise(Double.parseDouble(value));
+			} else if (key.equals("priority")) {
+				priority = Integer.parseInt(value);
+			} else if (key.equals("deadline")) {
+				deadline = System.currentTimeMillis() + Long.parseLong(value);
+			} else {
+				throw new IllegalArgumentException("unknown parameter " + key);
+			}
+		}
+		if (iterations <= 0)
+			throw new IllegalArgumentException(
+					"the number of iterations has to be positive.");
+
+		// fails early if the file cannot be read
+		String file = new File(token[1]).getCanonicalPath();
+		problem(file);
+
+		Request request = new Request(ids.incrementAndGet(),
+				new SPLBatchManifest.Job(file, iterations, delta, change, seed),
+				out);
+		copy(module, request.module);
+		request.priority = priority;
+		request.deadline = deadline;
+		return request;
+	}
+
+	private static void copy(SPLModule from, SPLModule to) {
+		to.setInitialization(from.getInitialization());
+		to.setPriceGrid(from.isPriceGrid());
+		to.setMoveDrop(from.getMoveDrop());
+		to.setMoveP(from.getMoveP());
+		to.setMoveRaise(from.getMoveRaise());
+		to.setMoveReassign(from.getMoveReassign());
+		to.setMoveSwap(from.getMoveSwap());
+		to.setMoveX(from.getMoveX());
+	}
+
+	/**
+	 * Queues a request if the queue has space and the deadline can be met.
+	 */
+	void submit(Request request) throws IOException {
+		SPLProblemDescription description = problem(request.job.instance)
+				.getSPLProblemDescription();
+		request.cells = (double) description.getCustomer().numberOfSegments()
+				* description.getFirm().NumberOfProducts();
+		long now = System.currentTimeMillis();
+		synchronized (queue) {
+			if (!open)
+				throw new IllegalStateException("the server is stopping");
+			if (queue.size() >= capacity)
+				throw new IllegalStateException("the queue is full ("
+						+ capacity + " jobs)");
+
+			// the jobs that run before this one share the workers, the
+			// estimates follow the latest measurements
+			double ahead = 0.0d;
+			int jobsAhead = 0;
+			for (Request r : active) {
+				double estimate = estimate(r);
+				if (!Double.isNaN(estimate))
+					ahead += Math.max(0.0d, estimate - (now - r.started));
+			}
+			for (Request r : queue) {
+				if (r.compareTo(request) < 0) {
+					double estimate = estimate(r);
+					if (!Double.isNaN(estimate))
+						ahead += estimate;
+					jobsAhead++;
+				}
+			}
+			double estimate = estimate(request);
+			boolean estimated = !Double.isNaN(estimate);
+			if (request.deadline != 0L && estimated) {
+				double finish = now + ahead / workers + estimate;
+				if (finish > request.deadline)
+					throw new IllegalStateException(
+							"the deadline cannot be met, the job would finish in "
+									+ (long) (finish - now) + " ms");
+			}
+			queue.add(request);
+			request.send("queued " + request.id + " " + jobsAhead
+					+ (request.deadline != 0L && !estimated ? " unestimated"
+							: ""));
+		}
+	}
+
+	/**
+	 * @return the estimated run time of a job in milliseconds, NaN if no job
+	 *         has finished yet
+	 */
+	double estimate(Request request) {
+		String file = request.job.instance;
+		synchronized (problems) {
+			Double known = millisPerIteration.get(file);
+			if (known != null)
+				return request.job.iterations * known;
+		}
+		double perCell = millisPerCell;
+		if (perCell == 0.0d)
+			return Double.NaN;
+		return request.job.iterations * perCell * request.cells;
+	}
+
+	/**
+	 * Adds the run time of a finished job to the measured times per
+	 * iteration.
+	 */
+	private void measured(Request request, long millis) {
+		String file = request.job.instance;
+		double perIteration = (double) millis / request.job.iterations;
+		double perCell = perIteration / request.cells;
+		synchronized (problems) {
+			// only the cached problems are measured
+			if (problems.containsKey(file)) {
+				Double known = millisPerIteration.get(file);
+				millisPerIteration.put(file, known == null ? perIteration
+						: smooth(known, perIteration));
+			}
+			millisPerCell = millisPerCell == 0.0d ? perCell : smooth(
+					millisPerCell, perCell);
+		}
+	}
+
+	private static double smooth(double average, double value) {
+		return (1.0d - SMOOTHING) * average + SMOOTHING * value;
+	}
+
+	private void work() {
+		while (open) {
+			Request request;
+			try {
+				// wakes up regularly to notice stop()
+				request = queue.poll(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (request == null)
+				continue;
+			if (request.deadline != 0L
+					&& System.currentTimeMillis() > request.deadline) {
+				request.send("expired the deadline passed while waiting");
+				request.close();
+				continue;
+			}
+
+			running.incrementAndGet();
+			synchronized (queue) {
+				request.started = System.currentTimeMillis();
+				active.add(request);
+			}
+			request.send("started " + request.id);
+			try {
+				SPLBatchRunner.Result result = execute(request);
+				measured(request, result.millis);
+				request.send("result " + result.fitness + " "
+						+ result.profit + " " + result.millis);
+			} catch (Exception e) {
+				request.send("failed " + e);
+			} finally {
+				synchronized (queue) {
+					active.remove(request);
+				}
+				running.decrementAndGet();
+				request.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs a job in the calling thread and sends the improvements of the
+	 * best solution to the client.
+	 * 
+	 * @param request
+	 *            the job
+	 * @return the best solution found by the job
+	 * @throws Exception
+	 *             if the optimization fails
+	 */
+	SPLBatchRunner.Result execute(final Request request) throws Exception {
+		SPLBatchManifest.Job job = request.job;
+		SPLProblem problem = problem(job.instance);
+
+		SPLModule module = new SPLBatchRunner.HeadlessSPLModule(problem);
+		copy(request.module, module);
+
+		SPLSimulatedAnnealingModule sa = new SPLSimulatedAnnealingModule();
+		sa.setIterations(job.iterations);
+		sa.setDelta(job.delta);
+		sa.setChangeIterations(job.changeIterations);
+
+		RandomModule random = new RandomModule();
+		random.setSeed(job.seed);
+
+		List<Module> modules = new ArrayList<Module>();
+		modules.add(module);
+		modules.add(sa);
+		modules.add(new CoolingSchedulesModule());
+		modules.add(random);
+		modules.add(new SPLPublisherModule());
+
+		long start = System.currentTimeMillis();
+		Opt4JTask task = new Opt4JTask(false);
+		task.init(modules);
+		try {
+			// counted down after the last progress line
+			final CountDownLatch delivered = new CountDownLatch(1);
+
+			// a slow client receives only the latest improvement
+			SPLImprovementPublisher publisher = task
+					.getInstance(SPLImprovementPublisher.class);
+			publisher.subscribe(new SPLImprovementPublisher.Subscriber() {
+				private SPLImprovementPublisher.Subscription subscription;
+
+				@Override
+				public void onSubscribe(
+						SPLImprovementPublisher.Subscription subscription) {
+					this.subscription = subscription;
+					subscription.request(1);
+				}
+
+				@Override
+				public void onNext(SPLImprovement improvement) {
+					request.send("progress " + improvement.getIteration()
+							+ " " + improvement.getProfit() + " "
+							+ improvement.getFitness());
+					subscription.request(1);
+				}
+
+				@Override
+				public void onError(Throwable error) {
+					// progress is optional
+					delivered.countDown();
+				}
+
+				@Override
+				public void onComplete() {
+					delivered.countDown();
+				}
+			});
+			try {
+				task.execute();
+			} finally {
+				// the publisher delivers the final snapshot after the
+				// optimizer has closed it, the result has to wait for it
+				publisher.close();
+				delivered.await();
+			}
+
+			SPLEvaluator evaluator = task.getInstance(SPLEvaluator.class);
+			double fitness = Double.NEGATIVE_INFINITY;
+			double profit = Double.NaN;
+			for (Individual individual : task.getInstance(Archive.class)) {
+				Solution solution = (Solution) individual.getPhenotype();
+				double f = evaluator.fitness(solution);
+				if (f > fitness) {
+					fitness = f;
+					profit = solution.profit();
+				}
+			}
+			return new SPLBatchRunner.Result(job, fitness, profit,
+					System.currentTimeMillis() - start);
+		} finally {
+			// the thread runs the next job with another evaluator
+			task.getInstance(SPLEvaluator.class).release();
+			task.close();
+		}
+	}
+
+	/**
+	 * @return the problem of a file, read again only if the file has changed
+	 */
+	SPLProblem problem(String file) throws IOException {
+		long lastModified = new File(file).lastModified();
+		synchronized (problems) {
+			SPLProblem problem = problems.get(file);
+			Long known = modified.get(file);
+			if (problem != null && known != null && known == lastModified)
+				return problem;
+		}
+
+		// read outside the lock, two clients may read the same file once
+		SPLProblem problem = new SPLProblem(SPLInstanceFormat.read(new File(
+				file)));
+		synchronized (problems) {
+			problems.put(file, problem);
+			modified.put(file, lastModified);
+			// a modified file is measured again
+			millisPerIteration.remove(file);
+			if (problems.size() > CACHE) {
+				String eldest = problems.keySet().iterator().next();
+				problems.remove(eldest);
+				modified.remove(eldest);
+				millisPerIteration.remove(eldest);
+			}
+		}
+		return problem;
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+	}
+}
+// EOF
@@ -0,0 +1,318 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.Arrays;
+
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Bounds the profit by relaxing the links between the segments, the products
+ * and the assets. Without cost, each segment buys the product with its
+ * highest margin, see {@link SPLExactSolver}. The fixed cost of a product
+ * and the cost of an asset are then shared by the segments that buy the
+ * product or a product requiring the asset. Since the shares of a cost sum up
+ * to at most the cost, the sum of the best margins minus the shares is an
+ * upper bound for any choice of the shares (the Lagrangian dual of the links).
+ * The shares are improved for a number of rounds by moving them towards an
+ * equal split among the current buyers, the lowest bound of all rounds is
+ * kept. A segment only stores the shares of the products and assets it has
+ * chosen, all shares decay by one common scale factor, thus a round takes
+ * the time of the choices.
+ * <p>
+ * Like the {@link SPLExactSolver}, the bound assumes that a segment buys at
+ * most one product. Solutions that violate a constraint are penalized by the
+ * evaluator, their fitness is bounded by the square root of the profit of
+ * selling every product to every segment at its upper price bound.
+ * 
+ * <pre>
+ * java SPLLagrangianBound PAPER|SMALL [rounds]
+ * java SPLLagrangianBound FILE &lt;file&gt; [rounds]
+ * </pre>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+@Singleton
+public class SPLLagrangianBound implements SPLBound {
+
+	/**
+	 * The shares charged to one segment for the products or the assets it
+	 * has chosen so far, in ascending order and stored divided by the common
+	 * scale factor.
+	 */
+	private static final class Shares {
+		private int[] index = new int[0];
+		private double[] value = new double[0];
+
+		/**
+		 * Adds factor * amount[k] to the share of each key k.
+		 * 
+		 * @param keys
+		 *            the keys in ascending order
+		 * @param count
+		 *            the number of keys
+		 */
+		void add(int[] keys, int count, double[] amount, double factor) {
+			int size = index.length;
+			int missing = 0;
+			for (int n = 0, m = 0; m < count; m++) {
+				while (n < size && index[n] < keys[m])
+					n++;
+				if (n == size || index[n] != keys[m])
+					missing++;
+			}
+
+			if (missing == 0) {
+				for (int n = 0, m = 0; m < count; m++) {
+					while (index[n] < keys[m])
+						n++;
+					value[n] += factor * amount[keys[m]];
+				}
+				return;
+			}
+
+			// merges the new keys into the stored ones
+			int[] mergedIndex = new int[size + missing];
+			double[] mergedValue = new double[size + missing];
+			for (int n = 0, m = 0, o = 0; o < mergedIndex.length; o++) {
+				if (m == count || (n < size && index[n] < keys[m])) {
+					mergedIndex[o] = index[n];
+					mergedValue[o] = value[n++];
+				} else {
+					int k = keys[m++];
+					mergedIndex[o] = k;
+					mergedValue[o] = factor * amount[k];
+					if (n < size && index[n] == k)
+						mergedValue[o] += value[n++];
+				}
+			}
+			index = mergedIndex;
+			value = mergedValue;
+		}
+
+		/**
+		 * Writes the scaled shares into a dense array.
+		 */
+		void scatter(double[] dense, double scale) {
+			for (int n = 0; n < index.length; n++)
+				dense[index[n]] = scale * value[n];
+		}
+
+		/**
+		 * Resets the entries written by {@link #scatter(double[], double)}.
+		 */
+		void clear(double[] dense) {
+			for (int n = 0; n < index.length; n++)
+				dense[index[n]] = 0.0d;
+		}
+	}
+
+	private final SPLProblemDescription description;
+	private final double gap;
+	private final int rounds;
+
+	// computed at the first request
+	private double profitBound = Double.NaN;
+	private double fitnessBound = Double.NaN;
+
+	@Inject
+	public SPLLagrangianBound(SPLProblem problem,
+			@Constant(value = "gap") double gap,
+			@Constant(value = "boundRounds") int rounds) {
+		if (gap < 0.0d)
+			throw new IllegalArgumentException("The gap must not be negative.");
+		if (rounds <= 0)
+			throw new IllegalArgumentException(
+					"The number of rounds has to be positive.");
+		this.description = problem.getSPLProblemDescription();
+		this.gap = gap;
+		this.rounds = rounds;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: SPLLagrangianBound PAPER|SMALL [rounds]\n"
+					+ "       SPLLagrangianBound FILE <file> [rounds]");
+			System.exit(1);
+		}
+
+		SPLModule.ProblemSelection selection = SPLModule.ProblemSelection
+				.valueOf(args[0]);
+		int n = 1;
+		SPLProblem problem;
+		if (selection == SPLModule.ProblemSelection.FILE) {
+			problem = new SPLProblem(0, 0, 0, 0.0d, 0, selection, 0L,
+					SPLInstanceGenerator.Structure.UNIFORM, args[1]);
+			n = 2;
+		} else {
+			problem = new SPLProblem(0, 0, 0, 0.0d, 0, selection);
+		}
+		int rounds = args.length > n ? Integer.parseInt(args[n]) : 100;
+
+		long start = System.currentTimeMillis();
+		SPLLagrangianBound bound = new SPLLagrangianBound(problem, 0.0d,
+				rounds);
+		double profit = bound.getProfitBound();
+		long millis = System.currentTimeMillis() - start;
+
+		System.out.println("margin bound\t"
+				+ new SPLLagrangianBound(problem, 0.0d, 1).getProfitBound());
+		System.out.println("profit bound\t" + profit);
+		System.out.println("fitness bound\t" + bound.getBound());
+		System.out.println("millis\t" + millis);
+	}
+
+	@Override
+	public synchronized double getBound() {
+		if (Double.isNaN(fitnessBound))
+			compute();
+		return fitnessBound;
+	}
+
+	@Override
+	public double getGap() {
+		return gap;
+	}
+
+	/**
+	 * @return an upper bound of the profit of the solutions that satisfy all
+	 *         constraints, negative infinity if there is none
+	 */
+	public synchronized double getProfitBound() {
+		if (Double.isNaN(profitBound))
+			compute();
+		return profitBound;
+	}
+
+	private void compute() {
+		SPLProblemDescription.Customer c = description.getCustomer();
+		SPLProblemDescription.Firm f = description.getFirm();
+		int segments = c.numberOfSegments();
+		int products = f.NumberOfProducts();
+		int assets = f.NumberOfAssets();
+
+		double[][] margin = SPLExactSolver.margins(description);
+
+		// the shares of the fixed cost of each product and of the cost of
+		// each asset charged to each segment
+		Shares[] productShare = new Shares[segments];
+		Shares[] assetShare = new Shares[segments];
+		for (int i = 0; i < segments; i++) {
+			productShare[i] = new Shares();
+			assetShare[i] = new Shares();
+		}
+		// the factor of all stored shares, after r rounds 2 / ((r + 1)(r + 2))
+		// and thus far from an underflow
+		double scale = 1.0d;
+
+		// the shares of the current segment
+		double[] productCost = new double[products];
+		double[] assetCost = new double[assets];
+
+		// the equal splits of the current round and the keys of a choice
+		double[] productSplit = new double[products];
+		double[] assetSplit = new double[assets];
+		int[] product = new int[1];
+		int[] required = new int[assets];
+
+		int[] choice = new int[segments];
+		int[] buyers = new int[products];
+		int[] users = new int[assets];
+		double bound = Double.POSITIVE_INFINITY;
+
+		for (int r = 0; r < rounds; r++) {
+			double value = 0.0d;
+			for (int i = 0; i < segments && value > Double.NEGATIVE_INFINITY; i++) {
+				// a segment without a product satisfies the competitor
+				// constraint only if the competitor offers no surplus
+				double best = description.getCompetition().getW(i) <= 0.0d ? 0.0d
+						: Double.NEGATIVE_INFINITY;
+				choice[i] = -1;
+				productShare[i].scatter(productCost, scale);
+				assetShare[i].scatter(assetCost, scale);
+				for (int j = 0; j < products; j++) {
+					if (Double.isNaN(margin[i][j]))
+						continue;
+					double v = margin[i][j] - productCost[j];
+					for (int n = 0; n < f.numberOfAssetsOf(j); n++)
+						v -= assetCost[f.getAssetOf(j, n)];
+					if (v > best) {
+						best = v;
+						choice[i] = j;
+					}
+				}
+				productShare[i].clear(productCost);
+				assetShare[i].clear(assetCost);
+				value += best;
+			}
+			bound = Math.min(bound, value);
+			if (value == Double.NEGATIVE_INFINITY)
+				break;
+
+			// moves the shares towards an equal split among the buyers of the
+			// current choice, a convex combination keeps the sums below the
+			// cost
+			Arrays.fill(buyers, 0);
+			Arrays.fill(users, 0);
+			for (int i = 0; i < segments; i++) {
+				int j = choice[i];
+				if (j < 0)
+					continue;
+				buyers[j]++;
+				for (int n = 0; n < f.numberOfAssetsOf(j); n++)
+					users[f.getAssetOf(j, n)]++;
+			}
+			double alpha = 2.0d / (r + 2);
+			if (alpha < 1.0d) {
+				scale *= 1.0d - alpha;
+			} else {
+				// the first round starts without shares
+				scale = 1.0d;
+			}
+			for (int j = 0; j < products; j++)
+				productSplit[j] = buyers[j] > 0 ? f.getCf(j) / buyers[j] : 0.0d;
+			for (int k = 0; k < assets; k++)
+				assetSplit[k] = users[k] > 0 ? f.getCa(k) / users[k] : 0.0d;
+			for (int i = 0; i < segments; i++) {
+				int j = choice[i];
+				if (j < 0)
+					continue;
+				product[0] = j;
+				productShare[i].add(product, 1, productSplit, alpha / scale);
+
+				int count = f.numberOfAssetsOf(j);
+				for (int n = 0; n < count; n++)
+					required[n] = f.getAssetOf(j, n);
+				assetShare[i].add(required, count, assetSplit, alpha / scale);
+			}
+		}
+		profitBound = bound;
+
+		double any = 0.0d;
+		for (int i = 0; i < segments; i++) {
+			for (int j = 0; j < products; j++)
+				any += c.getQ(i)
+						* Math.max(0.0d, description.upperPriceBound(j)
+								- f.getCv(j));
+		}
+		fitnessBound = Math.max(profitBound, Math.sqrt(any));
+	}
+}
+// EOF
@@ -0,0 +1,142 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A batch of changes of the market data of a problem: the willingness to
+ * pay, size and competitor surplus of segments and the cost of products and
+ * assets. The changes are collected first and applied at once by
+ * {@link #apply(SPLProblemDescription)}, e.g. by the {@link SPLReoptimizer}.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLMarketUpdate {
+
+	private final Map<Integer, double[]> wtp = new LinkedHashMap<Integer, double[]>();
+	private final Map<Integer, Integer> q = new LinkedHashMap<Integer, Integer>();
+	private final Map<Integer, Double> w = new LinkedHashMap<Integer, Double>();
+	private final Map<Integer, Double> cv = new LinkedHashMap<Integer, Double>();
+	private final Map<Integer, Double> cf = new LinkedHashMap<Integer, Double>();
+	private final Map<Integer, Double> ca = new LinkedHashMap<Integer, Double>();
+
+	public void setWTP(int i, double[] wtp) {
+		this.wtp.put(i, wtp.clone());
+	}
+
+	public void setQ(int i, int q) {
+		this.q.put(i, q);
+	}
+
+	public void setW(int i, double w) {
+		this.w.put(i, w);
+	}
+
+	public void setCv(int j, double cv) {
+		this.cv.put(j, cv);
+	}
+
+	public void setCf(int j, double cf) {
+		this.cf.put(j, cf);
+	}
+
+	public void setCa(int k, double ca) {
+		this.ca.put(k, ca);
+	}
+
+	/**
+	 * @return the number of changed segments, products and assets
+	 */
+	public int size() {
+		Set<Integer> segments = new TreeSet<Integer>(wtp.keySet());
+		segments.addAll(q.keySet());
+		segments.addAll(w.keySet());
+		Set<Integer> products = new TreeSet<Integer>(cv.keySet());
+		products.addAll(cf.keySet());
+		return segments.size() + products.size() + ca.size();
+	}
+
+	/**
+	 * @return true if there are no changes
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Applies the changes to a problem description. Nothing is changed if a
+	 * change does not fit the problem.
+	 * 
+	 * @param problemDescription
+	 *            the problem description to change
+	 * @return the segments whose willingness to pay has changed, in
+	 *         ascending order
+	 */
+	public int[] apply(SPLProblemDescription problemDescription) {
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		SPLProblemDescription.Competition co = problemDescription
+				.getCompetition();
+
+		check(wtp.keySet(), c.numberOfSegments(), "Segment");
+		check(q.keySet(), c.numberOfSegments(), "Segment");
+		check(w.keySet(), c.numberOfSegments(), "Segment");
+		check(cv.keySet(), f.NumberOfProducts(), "Product");
+		check(cf.keySet(), f.NumberOfProducts(), "Product");
+		check(ca.keySet(), f.NumberOfAssets(), "Asset");
+		for (double[] row : wtp.values()) {
+			if (row.length != f.NumberOfProducts())
+				throw new IllegalArgumentException("Expected "
+						+ f.NumberOfProducts() + " products, got "
+						+ row.length + ".");
+		}
+
+		for (Map.Entry<Integer, double[]> e : wtp.entrySet())
+			c.setWTP(e.getKey(), e.getValue());
+		for (Map.Entry<Integer, Integer> e : q.entrySet())
+			c.setQ(e.getKey(), e.getValue());
+		for (Map.Entry<Integer, Double> e : w.entrySet())
+			co.setW(e.getKey(), e.getValue());
+		for (Map.Entry<Integer, Double> e : cv.entrySet())
+			f.setCv(e.getKey(), e.getValue());
+		for (Map.Entry<Integer, Double> e : cf.entrySet())
+			f.setCf(e.getKey(), e.getValue());
+		for (Map.Entry<Integer, Double> e : ca.entrySet())
+			f.setCa(e.getKey(), e.getValue());
+
+		int[] segments = new int[wtp.size()];
+		int n = 0;
+		for (int i : wtp.keySet())
+			segments[n++] = i;
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private static void check(Set<Integer> indices, int size, String name) {
+		for (int index : indices) {
+			if (index < 0 || index >= size)
+				throw new IllegalArgumentException(name + " " + index
+						+ " does not exist.");
+		}
+	}
+}
+// EOF
@@ -0,0 +1,61 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.List;
+
+/**
+ * Exchanges genotypes between the {@link SPLSimulatedAnnealing} and other
+ * optimizers (islands) working on the same problem. If bound, the optimizer
+ * sends its best genotype every {@link #getInterval()} iterations and adopts
+ * received genotypes that are better than its current one.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public interface SPLMigration {
+
+	/**
+	 * @return the number of iterations between two migrations
+	 */
+	public int getInterval();
+
+	/**
+	 * Called once before the optimization starts.
+	 */
+	public void start();
+
+	/**
+	 * Called once after the optimization has finished.
+	 */
+	public void stop();
+
+	/**
+	 * Sends a genotype to the neighbors of this island. Must not block.
+	 * 
+	 * @param genotype
+	 *            the genotype to send
+	 */
+	public void emigrate(SPLGenotype genotype);
+
+	/**
+	 * Returns the genotypes received since the last call. Must not block.
+	 * 
+	 * @return the received genotypes, possibly empty
+	 */
+	public List<SPLGenotype> immigrate();
+}
+// EOF
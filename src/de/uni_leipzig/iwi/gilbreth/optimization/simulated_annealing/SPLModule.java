@@ -16,6 +16,7 @@
 package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
 
 import org.opt4j.core.problem.ProblemModule;
+import org.opt4j.operator.copy.CopyModule;
 import org.opt4j.operator.neighbor.BasicNeighborModule;
 import org.opt4j.start.Constant;
 import org.opt4j.viewer.VisualizationModule;
@@ -29,7 +30,18 @@ import org.opt4j.viewer.VisualizationModule;
 public class SPLModule extends ProblemModule {
 
 	public enum ProblemSelection {
-		PAPER, SMALL, RANDOM;
+		PAPER, SMALL, RANDOM, FILE;
+	}
+
+	public enum Initialization {
+		/**
+		 * random assignments and prices
+		 */
+		RANDOM,
+		/**
+		 * best margin assignments, pruned product line and competitive prices
+		 */
+		GREEDY;
 	}
 
 	@Constant(value = "nrOfSegments")
@@ -50,18 +62,103 @@ public class SPLModule extends ProblemModule {
 	@Constant(value = "problemSelection")
 	ProblemSelection problemSelection = ProblemSelection.PAPER;
 
+	@Constant(value = "instanceSeed")
+	long instanceSeed = 0L;
+
+	@Constant(value = "instanceStructure")
+	SPLInstanceGenerator.Structure instanceStructure = SPLInstanceGenerator.Structure.UNIFORM;
+
+	@Constant(value = "wtpLayout")
+	SPLProblemDescription.Customer.Layout wtpLayout = SPLProblemDescription.Customer.Layout.ROWS;
+
+	@Constant(value = "instanceFile")
+	String instanceFile = "";
+
+	@Constant(value = "initialization")
+	Initialization initialization = Initialization.RANDOM;
+
+	@Constant(value = "priceGrid")
+	boolean priceGrid = false;
+
+	@Constant(value = "moveX")
+	double moveX = 1.0d;
+
+	@Constant(value = "moveP")
+	double moveP = 1.0d;
+
+	@Constant(value = "moveReassign")
+	double moveReassign = 0.0d;
+
+	@Constant(value = "moveSwap")
+	double moveSwap = 0.0d;
+
+	@Constant(value = "moveDrop")
+	double moveDrop = 0.0d;
+
+	@Constant(value = "moveRaise")
+	double moveRaise = 0.0d;
+
 	@Override
 	protected void config() {
 		bindProblem(SPLCreator.class, SPLDecoder.class, SPLEvaluator.class);
 
 		BasicNeighborModule.addNeighbor(this.binder(),
 				NeighborSPLGenotype.class);
+		CopyModule.addCopy(this.binder(), CopySPLBitGenotype.class);
 		// bindProblem(SPLSATDecoder.class,
 		// SPLSATDecoder.class,SPLEvaluator.class);
 
+		configVisualization();
+
+	}
+
+	/**
+	 * Registers the solution viewer of the opt4j GUI. Modules that run
+	 * without a GUI override this method.
+	 */
+	protected void configVisualization() {
 		VisualizationModule.addIndividualMouseListener(binder(),
 				SPLProblemVisualization.class);
+	}
+
+	public Initialization getInitialization() {
+		return initialization;
+	}
+
+	public String getInstanceFile() {
+		return instanceFile;
+	}
+
+	public long getInstanceSeed() {
+		return instanceSeed;
+	}
+
+	public SPLInstanceGenerator.Structure getInstanceStructure() {
+		return instanceStructure;
+	}
+
+	public double getMoveDrop() {
+		return moveDrop;
+	}
+
+	public double getMoveP() {
+		return moveP;
+	}
+
+	public double getMoveRaise() {
+		return moveRaise;
+	}
 
+	public double getMoveReassign() {
+		return moveReassign;
+	}
+
+	public double getMoveSwap() {
+		return moveSwap;
+	}
+
+	public double getMoveX() {
+		return moveX;
 	}
 
 	public int getNrOfAssets() {
@@ -84,10 +181,59 @@ public class SPLModule extends ProblemModule {
 		return priceStep;
 	}
 
+	public boolean isPriceGrid() {
+		return priceGrid;
+	}
+
 	public ProblemSelection getProblemSelection() {
 		return problemSelection;
 	}
 
+	public SPLProblemDescription.Customer.Layout getWtpLayout() {
+		return wtpLayout;
+	}
+
+	public void setInitialization(Initialization initialization) {
+		this.initialization = initialization;
+	}
+
+	public void setInstanceFile(String instanceFile) {
+		this.instanceFile = instanceFile;
+	}
+
+	public void setInstanceSeed(long instanceSeed) {
+		this.instanceSeed = instanceSeed;
+	}
+
+	public void setInstanceStructure(
+			SPLInstanceGenerator.Structure instanceStructure) {
+		this.instanceStructure = instanceStructure;
+	}
+
+	public void setMoveDrop(double moveDrop) {
+		this.moveDrop = moveDrop;
+	}
+
+	public void setMoveP(double moveP) {
+		this.moveP = moveP;
+	}
+
+	public void setMoveRaise(double moveRaise) {
+		this.moveRaise = moveRaise;
+	}
+
+	public void setMoveReassign(double moveReassign) {
+		this.moveReassign = moveReassign;
+	}
+
+	public void setMoveSwap(double moveSwap) {
+		this.moveSwap = moveSwap;
+	}
+
+	public void setMoveX(double moveX) {
+		this.moveX = moveX;
+	}
+
 	public void setNrOfAssets(int nrOfAssets) {
 		this.nrOfAssets = nrOfAssets;
 	}
@@ -100,6 +246,10 @@ public class SPLModule extends ProblemModule {
 		this.nrOfSegments = nrOfSegments;
 	}
 
+	public void setPriceGrid(boolean priceGrid) {
+		this.priceGrid = priceGrid;
+	}
+
 	public void setPriceLevel(double priceLevel) {
 		this.priceLevel = priceLevel;
 	}
@@ -112,4 +262,8 @@ public class SPLModule extends ProblemModule {
 		this.problemSelection = problemSelection;
 	}
 
+	public void setWtpLayout(SPLProblemDescription.Customer.Layout wtpLayout) {
+		this.wtpLayout = wtpLayout;
+	}
+
 }
@@ -0,0 +1,64 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.Random;
+
+/**
+ * Chooses the move that the {@link NeighborSPLGenotype} applies next and
+ * learns from the outcome. If bound, the neighbor operator asks
+ * {@link #select(Random)} for every neighbor and the {@link SPLSimulatedAnnealing}
+ * reports the result with
+ * {@link #feedback(NeighborSPLGenotype.Move, double, double, boolean)}.
+ * Otherwise the moves are chosen with the fixed weights of the
+ * {@link SPLModule}.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public interface SPLMoveSelection {
+
+	/**
+	 * @param random
+	 *            the generator the neighbor operator draws from
+	 * @return the move to apply to the next neighbor
+	 */
+	public NeighborSPLGenotype.Move select(Random random);
+
+	/**
+	 * Reports the outcome of the neighbor created last. The applied move
+	 * differs from the selected one if the selected move was not applicable
+	 * and the neighbor operator fell back to the X or P move.
+	 * 
+	 * @param move
+	 *            the applied move
+	 * @param fx
+	 *            the objective value of the current individual
+	 * @param fy
+	 *            the objective value of the neighbor
+	 * @param accepted
+	 *            true if the neighbor replaces the current individual
+	 */
+	public void feedback(NeighborSPLGenotype.Move move, double fx,
+			double fy, boolean accepted);
+
+	/**
+	 * @return the current selection probability of each move, indexed by
+	 *         the ordinal of the move
+	 */
+	public double[] getProbabilities();
+}
+// EOF
@@ -0,0 +1,58 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Constant;
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Lets the {@link NeighborSPLGenotype} learn which moves to apply. The moves
+ * with a positive weight in the {@link SPLModule} take part, their selection
+ * probabilities follow the recent success of each move.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLMoveSelectionModule extends Opt4JModule {
+
+	@Constant(value = "moveAdaptation")
+	protected double moveAdaptation = 0.01d;
+
+	@Constant(value = "moveMinProbability")
+	protected double moveMinProbability = 0.05d;
+
+	@Override
+	public void config() {
+		bind(SPLMoveSelection.class).to(SPLAdaptiveMoveSelection.class);
+	}
+
+	public double getMoveAdaptation() {
+		return moveAdaptation;
+	}
+
+	public double getMoveMinProbability() {
+		return moveMinProbability;
+	}
+
+	public void setMoveAdaptation(double moveAdaptation) {
+		this.moveAdaptation = moveAdaptation;
+	}
+
+	public void setMoveMinProbability(double moveMinProbability) {
+		this.moveMinProbability = moveMinProbability;
+	}
+}
+// EOF
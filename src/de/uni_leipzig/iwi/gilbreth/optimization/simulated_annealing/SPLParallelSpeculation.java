@@ -0,0 +1,164 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.opt4j.core.Objectives;
+import org.opt4j.core.problem.Genotype;
+import org.opt4j.operator.copy.Copy;
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Speculation with a pool of worker threads that keeps the proposals of the
+ * next iterations in evaluation. At low temperatures almost every proposal is
+ * rejected and the workers stay ahead of the optimizer, an accepted proposal
+ * discards the work in flight.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+@Singleton
+public class SPLParallelSpeculation implements SPLSpeculation {
+
+	private final NeighborSPLGenotype neighbor;
+	private final Copy<Genotype> copy;
+	private final SPLDecoder decoder;
+	private final SPLEvaluator evaluator;
+	private final int threads;
+	private final int depth;
+
+	private ExecutorService executor;
+	private long seed;
+	private int iterations;
+
+	// the genotype the proposals are created from
+	private Genotype current;
+
+	// the proposals of the iterations first, first + 1, ...
+	private final LinkedList<Future<Proposal>> pending = new LinkedList<Future<Proposal>>();
+	private int first;
+
+	@Inject
+	public SPLParallelSpeculation(NeighborSPLGenotype neighbor,
+			Copy<Genotype> copy, SPLDecoder decoder, SPLEvaluator evaluator,
+			@Constant(value = "speculationThreads") int threads,
+			@Constant(value = "speculationDepth") int depth) {
+		if (threads <= 0)
+			throw new IllegalArgumentException(
+					"The number of threads has to be positive.");
+		if (depth <= 0)
+			throw new IllegalArgumentException(
+					"The speculation depth has to be positive.");
+		this.neighbor = neighbor;
+		this.copy = copy;
+		this.decoder = decoder;
+		this.evaluator = evaluator;
+		this.threads = threads;
+		this.depth = depth;
+	}
+
+	@Override
+	public void start(long seed, int iterations) {
+		this.seed = seed;
+		this.iterations = iterations;
+		this.executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "speculation");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	@Override
+	public void stop() {
+		discard();
+		if (executor != null)
+			executor.shutdownNow();
+		executor = null;
+	}
+
+	@Override
+	public void restart(int iteration, Genotype current) {
+		discard();
+		this.current = current;
+		this.first = iteration;
+		fill();
+	}
+
+	@Override
+	public Proposal take(int iteration) throws InterruptedException {
+		if (iteration != first || pending.isEmpty())
+			restart(iteration, current);
+
+		Future<Proposal> future = pending.removeFirst();
+		first++;
+		fill();
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("The speculative evaluation of "
+					+ "iteration " + iteration + " failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * Creates and evaluates the proposal of an iteration.
+	 */
+	Proposal propose(Genotype genotype, int iteration) {
+		SPLRandom random = SPLRandom.stream(seed, iteration);
+		Genotype g = copy.copy(genotype);
+		NeighborSPLGenotype.Move move = neighbor.neighbor(g, random);
+		double u = random.nextDouble();
+
+		Solution solution = decoder.decode((SPLGenotype) g);
+		Objectives objectives = evaluator.evaluate(solution);
+		return new Proposal(g, solution, objectives, move, u);
+	}
+
+	private void fill() {
+		int next = first + pending.size();
+		while (pending.size() < depth && next < iterations) {
+			final Genotype genotype = current;
+			final int iteration = next++;
+			pending.add(executor.submit(new Callable<Proposal>() {
+				@Override
+				public Proposal call() {
+					return propose(genotype, iteration);
+				}
+			}));
+		}
+	}
+
+	private void discard() {
+		for (Future<Proposal> future : pending)
+			future.cancel(false);
+		pending.clear();
+	}
+}
+// EOF
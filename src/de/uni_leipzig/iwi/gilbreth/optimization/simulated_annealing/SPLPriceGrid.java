@@ -0,0 +1,139 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * The discrete prices of the price grid mode. The price range of product j is
+ * divided into {@link SPLProblemDescription#getPriceSteps()} steps of
+ * {@link SPLProblemDescription#priceStep(int)}, price k of product j is
+ * lowerPriceBound(j) + k * priceStep(j). A price is identified by its index
+ * k, thus equal indices give bit identical prices and comparing or hashing
+ * solutions is exact.
+ * 
+ * <p>
+ * For every segment and product the grid keeps the highest price index at
+ * which the segment still gets the surplus of the competitor. The competitor
+ * constraint of a segment buying a single product is an integer comparison
+ * of the price index with this threshold. The grid is computed for the
+ * market data at construction, a changed problem needs a new grid.
+ * </p>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLPriceGrid {
+
+	private final int nrOfSegments;
+	private final int nrOfProducts;
+	private final int steps;
+	private final double[] lower;
+	private final double[] step;
+
+	// the highest price index of product j at which segment i beats the
+	// competitor at i * nrOfProducts + j, -1 if there is none
+	private final int[] threshold;
+
+	public SPLPriceGrid(SPLProblemDescription problemDescription) {
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		SPLProblemDescription.Competition co = problemDescription
+				.getCompetition();
+		this.nrOfSegments = c.numberOfSegments();
+		this.nrOfProducts = problemDescription.getFirm().NumberOfProducts();
+		this.steps = problemDescription.getPriceSteps();
+		if (steps <= 0)
+			throw new IllegalArgumentException(
+					"The number of price steps has to be positive.");
+
+		this.lower = new double[nrOfProducts];
+		this.step = new double[nrOfProducts];
+		for (int j = 0; j < nrOfProducts; j++) {
+			lower[j] = problemDescription.lowerPriceBound(j);
+			step[j] = Math.max(0.0d, problemDescription.priceStep(j));
+		}
+
+		this.threshold = new int[nrOfSegments * nrOfProducts];
+		for (int i = 0; i < nrOfSegments; i++) {
+			for (int j = 0; j < nrOfProducts; j++) {
+				threshold[i * nrOfProducts + j] = highest(j, c.getWTP(i, j),
+						co.getW(i));
+			}
+		}
+	}
+
+	/**
+	 * @return the number of steps, the indices range from 0 to steps
+	 */
+	public int getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return price k of product j
+	 */
+	public double price(int j, int k) {
+		return lower[j] + k * step[j];
+	}
+
+	/**
+	 * @return the index of the grid price of product j nearest to the given
+	 *         price
+	 */
+	public int index(int j, double price) {
+		if (step[j] == 0.0d)
+			return 0;
+		long k = Math.round((price - lower[j]) / step[j]);
+		return (int) Math.max(0L, Math.min(steps, k));
+	}
+
+	/**
+	 * @return the index of the highest grid price of product j not above the
+	 *         given price, -1 if all grid prices are above it
+	 */
+	public int floorIndex(int j, double price) {
+		if (price < lower[j])
+			return -1;
+		int k = step[j] == 0.0d ? steps : (int) Math.min(steps,
+				Math.floor((price - lower[j]) / step[j]));
+		// the division may round across a grid price
+		while (k > 0 && price(j, k) > price)
+			k--;
+		while (k < steps && price(j, k + 1) <= price)
+			k++;
+		return k;
+	}
+
+	/**
+	 * @return the highest price index of product j at which segment i beats
+	 *         the competitor, -1 if there is none
+	 */
+	public int threshold(int i, int j) {
+		return threshold[i * nrOfProducts + j];
+	}
+
+	/**
+	 * @return the highest index k with wtp - price(j, k) >= w, evaluated like
+	 *         the {@link SPLEvaluator} does
+	 */
+	private int highest(int j, double wtp, double w) {
+		int k = floorIndex(j, wtp - w);
+		while (k >= 0 && wtp - price(j, k) < w)
+			k--;
+		while (k < steps && wtp - price(j, k + 1) >= w)
+			k++;
+		return k;
+	}
+}
+// EOF
@@ -15,6 +15,8 @@
  */
 package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
 
 import org.opt4j.start.Constant;
@@ -32,6 +34,26 @@ public class SPLProblem {
 
 	private SPLProblemDescription problemDescription;
 
+	private volatile SPLPriceGrid priceGrid = null;
+
+	public SPLProblem(int nrOfSegments, int nrOfProducts, int nrOfAssets,
+			double priceLevel, int priceStep,
+			SPLModule.ProblemSelection problemSelection) {
+		this(nrOfSegments, nrOfProducts, nrOfAssets, priceLevel, priceStep,
+				problemSelection, 0L, SPLInstanceGenerator.Structure.UNIFORM,
+				"");
+	}
+
+	public SPLProblem(int nrOfSegments, int nrOfProducts, int nrOfAssets,
+			double priceLevel, int priceStep,
+			SPLModule.ProblemSelection problemSelection, long instanceSeed,
+			SPLInstanceGenerator.Structure instanceStructure,
+			String instanceFile) {
+		this(nrOfSegments, nrOfProducts, nrOfAssets, priceLevel, priceStep,
+				problemSelection, instanceSeed, instanceStructure,
+				instanceFile, SPLProblemDescription.Customer.Layout.ROWS);
+	}
+
 	@Inject
 	public SPLProblem(
 			@Constant(value = "nrOfSegments") int nrOfSegments,
@@ -39,12 +61,19 @@ public class SPLProblem {
 			@Constant(value = "nrOfAssets") int nrOfAssets,
 			@Constant(value = "priceLevel") double priceLevel,
 			@Constant(value = "priceStep") int priceStep,
-			@Constant(value = "problemSelection") SPLModule.ProblemSelection problemSelection) {
+			@Constant(value = "problemSelection") SPLModule.ProblemSelection problemSelection,
+			@Constant(value = "instanceSeed") long instanceSeed,
+			@Constant(value = "instanceStructure") SPLInstanceGenerator.Structure instanceStructure,
+			@Constant(value = "instanceFile") String instanceFile,
+			@Constant(value = "wtpLayout") SPLProblemDescription.Customer.Layout wtpLayout) {
 
 		switch (problemSelection) {
 		case RANDOM:
 			initProblem(nrOfSegments, nrOfProducts, nrOfAssets, priceLevel,
-					priceStep);
+					priceStep, instanceSeed, instanceStructure);
+			break;
+		case FILE:
+			initProblem(new File(instanceFile));
 			break;
 		case SMALL:
 			initProblem();
@@ -56,12 +85,48 @@ public class SPLProblem {
 			initProblem();
 		}
 
+		problemDescription.setLayout(wtpLayout);
+
+	}
+
+	/**
+	 * Creates a problem for an already initialized problem description, e.g.
+	 * to share one instance between several optimization runs.
+	 * 
+	 * @param problemDescription
+	 *            the problem description
+	 */
+	public SPLProblem(SPLProblemDescription problemDescription) {
+		this.problemDescription = problemDescription;
 	}
 
 	public SPLProblemDescription getSPLProblemDescription() {
 		return problemDescription;
 	}
 
+	/**
+	 * @return the price grid of the problem, created at the first call
+	 */
+	public SPLPriceGrid getPriceGrid() {
+		SPLPriceGrid grid = priceGrid;
+		if (grid == null) {
+			synchronized (this) {
+				if (priceGrid == null)
+					priceGrid = new SPLPriceGrid(problemDescription);
+				grid = priceGrid;
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Drops the price grid, e.g. after the market data has changed. The next
+	 * call of {@link #getPriceGrid()} creates a new one.
+	 */
+	public void resetPriceGrid() {
+		priceGrid = null;
+	}
+
 	private void initPaperExampleProblem() {
 
 		int[] q = { 23, 60 };
@@ -138,64 +203,40 @@ public class SPLProblem {
 
 	}
 
+	/**
+	 * Generates a random problem.
+	 * 
+	 * @param seed
+	 *            the seed of the instance, 0 for a different instance each
+	 *            time
+	 */
 	private void initProblem(int nrOfSegments, int nrOfProducts,
-			int nrOfAssets, double priceLevel, int priceStep) {
-
-		double fixCostLevel = 100 * priceLevel;
-		double varCostLevel = priceLevel / 10;
-		double assetCostLevel = fixCostLevel / 10;
-
-		Random random = new Random();
-
-		int[] q = new int[nrOfSegments];
-		for (int i = 0; i < nrOfSegments; i++) {
-			q[i] = random.nextInt(1000) + 1; // at least one product is sold in
-												// a segment
-		}
-
-		double[][] wtp = new double[nrOfSegments][nrOfProducts];
-		for (int i = 0; i < nrOfSegments; i++) {
-			for (int j = 0; j < nrOfProducts; j++) {
-				wtp[i][j] = j == 0 ? 0.0d : priceLevel * random.nextDouble();
-			}
+			int nrOfAssets, double priceLevel, int priceStep, long seed,
+			SPLInstanceGenerator.Structure structure) {
+
+		SPLInstanceGenerator generator = new SPLInstanceGenerator(
+				nrOfSegments, nrOfProducts, nrOfAssets, priceLevel, priceStep,
+				seed != 0L ? seed : new Random().nextLong());
+		generator.setStructure(structure);
+		try {
+			problemDescription = generator.generate();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while generating the problem.", e);
 		}
-		SPLProblemDescription.Customer customer = new SPLProblemDescription.Customer(
-				q, wtp);
-
-		double[] w = new double[nrOfSegments];
-		for (int i = 0; i < nrOfSegments; i++) {
-			w[i] = i == 0 ? 0.0d : priceLevel * random.nextDouble();
-		}
-		SPLProblemDescription.Competition competition = new SPLProblemDescription.Competition(
-				w);
-
-		double[] cv = new double[nrOfProducts];
-		double[] cf = new double[nrOfProducts];
-		for (int j = 0; j < nrOfProducts; j++) {
-			cv[j] = j == 0 ? 0.0d : random.nextDouble() * varCostLevel;
-			cf[j] = j == 0 ? 0.0d : random.nextDouble() * fixCostLevel;
-		}
-
-		// Products/Assets
-		boolean[][] a = new boolean[nrOfProducts][nrOfAssets];
-
-		// Cost per asset
-		double[] ca = new double[nrOfAssets];
+	}
 
-		for (int j = 0; j < nrOfProducts; j++) {
-			for (int k = 0; k < nrOfAssets; k++) {
-				a[j][k] = random.nextBoolean();
-			}
-		}
-		for (int k = 0; k < nrOfAssets; k++) {
-			ca[k] = assetCostLevel * random.nextDouble();
+	/**
+	 * Reads a problem of the {@link SPLInstanceFormat}.
+	 */
+	private void initProblem(File file) {
+		try {
+			problemDescription = SPLInstanceFormat.read(file);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read the problem from "
+					+ file, e);
 		}
-
-		SPLProblemDescription.Firm firm = new SPLProblemDescription.Firm(cv,
-				cf, ca, a);
-
-		problemDescription = new SPLProblemDescription(customer, firm,
-				competition, priceStep);
 	}
 }
 // EOF
\ No newline at end of file
@@ -15,6 +15,8 @@
  */
 package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
 
+import java.util.Arrays;
+
 /**
  * Contains the values that describe the SPL Optimization problem.
  * 
@@ -40,18 +42,106 @@ public class SPLProblemDescription {
 			return w[i];
 		}
 
+		/**
+		 * Changes the surplus the competitor offers segment i. Must not be
+		 * called while the problem is optimized.
+		 */
+		public void setW(int i, double w) {
+			this.w[i] = w;
+		}
+
 	}
 
 	public static class Customer {
 
+		/**
+		 * The memory layout of the willingness to pay. Loops over the
+		 * products of a segment are fastest with a segment-major layout,
+		 * loops over the segments of a product with a product-major layout.
+		 */
+		public enum Layout {
+			/**
+			 * an array per segment, shared with the creator of the customer
+			 */
+			ROWS,
+			/**
+			 * a flat array, the products of a segment are adjacent
+			 */
+			SEGMENT_MAJOR,
+			/**
+			 * a flat array, the segments of a product are adjacent
+			 */
+			PRODUCT_MAJOR,
+			/**
+			 * both flat arrays
+			 */
+			BOTH;
+		}
+
 		private int[] q;
 
-		// willingness to pay of segment i for product j
+		private final Layout layout;
+		private final int nrOfSegments;
+		private final int nrOfProducts;
+
+		// willingness to pay of segment i for product j, at wtp[i][j] for
+		// ROWS, at bySegment[i * nrOfProducts + j] and byProduct[j *
+		// nrOfSegments + i] for the flat layouts
 		private double[][] wtp;
+		private double[] bySegment;
+		private double[] byProduct;
+
+		// the highest willingness to pay for each product, computed at the
+		// first request
+		private volatile double[] maxWTP;
 
 		public Customer(int[] q, double[][] wtp) {
 			this.q = q;
 			this.wtp = wtp;
+			this.layout = Layout.ROWS;
+			this.nrOfSegments = wtp.length;
+			this.nrOfProducts = wtp.length > 0 ? wtp[0].length : 0;
+		}
+
+		/**
+		 * Copies a customer into another layout.
+		 * 
+		 * @param customer
+		 *            the customer to copy
+		 * @param layout
+		 *            the layout of the copy
+		 */
+		public Customer(Customer customer, Layout layout) {
+			this.q = customer.q.clone();
+			this.layout = layout;
+			this.nrOfSegments = customer.nrOfSegments;
+			this.nrOfProducts = customer.nrOfProducts;
+
+			if (layout == Layout.ROWS) {
+				wtp = new double[nrOfSegments][nrOfProducts];
+				for (int i = 0; i < nrOfSegments; i++) {
+					for (int j = 0; j < nrOfProducts; j++)
+						wtp[i][j] = customer.getWTP(i, j);
+				}
+			}
+			if (layout == Layout.SEGMENT_MAJOR || layout == Layout.BOTH) {
+				bySegment = new double[nrOfSegments * nrOfProducts];
+				for (int i = 0; i < nrOfSegments; i++) {
+					for (int j = 0; j < nrOfProducts; j++)
+						bySegment[i * nrOfProducts + j] = customer.getWTP(i, j);
+				}
+			}
+			if (layout == Layout.PRODUCT_MAJOR || layout == Layout.BOTH) {
+				byProduct = new double[nrOfSegments * nrOfProducts];
+				for (int j = 0; j < nrOfProducts; j++) {
+					for (int i = 0; i < nrOfSegments; i++)
+						byProduct[j * nrOfSegments + i] = customer.getWTP(i, j);
+				}
+			}
+		}
+
+		public Layout getLayout() {
+			return layout;
 		}
 
 		public int getQ(int i) {
@@ -59,11 +149,87 @@ public class SPLProblemDescription {
 		}
 
 		public double getWTP(int i, int j) {
+			if (bySegment != null)
+				return bySegment[i * nrOfProducts + j];
+			if (byProduct != null)
+				return byProduct[j * nrOfSegments + i];
 			return wtp[i][j];
 		}
 
+		/**
+		 * Same as {@link #getWTP(int, int)}, but prefers the product-major
+		 * array. Meant for loops over the segments of a product.
+		 */
+		public double getWTPOfProduct(int j, int i) {
+			if (byProduct != null)
+				return byProduct[j * nrOfSegments + i];
+			return getWTP(i, j);
+		}
+
+		/**
+		 * @return the highest willingness to pay of all segments for product
+		 *         j
+		 */
+		public double getMaxWTP(int j) {
+			double[] max = maxWTP;
+			if (max == null) {
+				max = new double[nrOfProducts];
+				Arrays.fill(max, Double.NEGATIVE_INFINITY);
+				if (byProduct != null) {
+					for (int k = 0; k < nrOfProducts; k++) {
+						for (int i = 0; i < nrOfSegments; i++)
+							max[k] = Math.max(max[k], byProduct[k
+									* nrOfSegments + i]);
+					}
+				} else {
+					for (int i = 0; i < nrOfSegments; i++) {
+						for (int k = 0; k < nrOfProducts; k++)
+							max[k] = Math.max(max[k], getWTP(i, k));
+					}
+				}
+				maxWTP = max;
+			}
+			return max[j];
+		}
+
 		public int numberOfSegments() {
-			return wtp.length;
+			return nrOfSegments;
+		}
+
+		/**
+		 * Changes the size of segment i. Must not be called while the problem
+		 * is optimized.
+		 */
+		public void setQ(int i, int q) {
+			this.q[i] = q;
+		}
+
+		/**
+		 * Changes the willingness to pay of segment i. Must not be called
+		 * while the problem is optimized. In the ROWS layout the row is
+		 * replaced, not overwritten, because rows may be shared with the
+		 * snapshots of a {@link SPLSurveyAggregator}.
+		 * 
+		 * @param i
+		 *            the segment
+		 * @param wtp
+		 *            the willingness to pay for each product
+		 */
+		public void setWTP(int i, double[] wtp) {
+			if (wtp.length != nrOfProducts)
+				throw new IllegalArgumentException("Expected "
+						+ nrOfProducts + " products, got " + wtp.length
+						+ ".");
+			if (this.wtp != null)
+				this.wtp[i] = wtp.clone();
+			if (bySegment != null)
+				System.arraycopy(wtp, 0, bySegment, i * nrOfProducts,
+						wtp.length);
+			if (byProduct != null) {
+				for (int j = 0; j < nrOfProducts; j++)
+					byProduct[j * nrOfSegments + i] = wtp[j];
+			}
+			maxWTP = null;
 		}
 	}
 
@@ -74,7 +240,17 @@ public class SPLProblemDescription {
 
 		private double[] ca;
 
-		private boolean[][] a;
+		// product->asset requirements in compressed sparse row format: the
+		// assets required by product j are assetIndex[assetStart[j]] to
+		// assetIndex[assetStart[j + 1] - 1] in ascending order
+		private int[] assetStart;
+
+		private int[] assetIndex;
+
+		// the transposed index: the products requiring asset k
+		private int[] productStart;
+
+		private int[] productIndex;
 
 		public Firm(double[] cv, double[] cf, double[] ca, boolean[][] a) {
 			if (cv.length != cf.length)
@@ -90,11 +266,162 @@ public class SPLProblemDescription {
 			this.cv = cv;
 			this.ca = ca;
 			this.cf = cf;
-			this.a = a;
+
+			int nnz = 0;
+			for (int j = 0; j < a.length; j++) {
+				for (int k = 0; k < a[j].length; k++) {
+					if (a[j][k])
+						nnz++;
+				}
+			}
+
+			this.assetStart = new int[a.length + 1];
+			this.assetIndex = new int[nnz];
+			int n = 0;
+			for (int j = 0; j < a.length; j++) {
+				assetStart[j] = n;
+				for (int k = 0; k < a[j].length; k++) {
+					if (a[j][k])
+						assetIndex[n++] = k;
+				}
+			}
+			assetStart[a.length] = n;
+
+			buildProductIndex();
+		}
+
+		/**
+		 * Creates a firm whose product-asset requirements are given in
+		 * compressed sparse row format. Use this constructor for large asset
+		 * catalogs where every product requires only a few assets.
+		 * 
+		 * @param cv
+		 *            the variable cost per product
+		 * @param cf
+		 *            the fixed cost per product
+		 * @param ca
+		 *            the cost per asset
+		 * @param assetStart
+		 *            for each product j the offset of its first required asset
+		 *            in assetIndex, followed by the total number of
+		 *            requirements
+		 * @param assetIndex
+		 *            the required assets of all products, product by product
+		 *            and in ascending order per product
+		 */
+		public Firm(double[] cv, double[] cf, double[] ca, int[] assetStart,
+				int[] assetIndex) {
+			if (cv.length != cf.length)
+				throw new IllegalArgumentException(
+						"Variable and fixed cost not equal. Must be equal because each product owns its cv and cf.");
+			if (assetStart.length != cf.length + 1)
+				throw new IllegalArgumentException(
+						"The number of products in assetStart is unequal to the number in cf.");
+			if (assetStart[0] != 0
+					|| assetStart[cf.length] != assetIndex.length)
+				throw new IllegalArgumentException(
+						"assetStart does not cover exactly the entries of assetIndex.");
+
+			for (int j = 0; j < cf.length; j++) {
+				if (assetStart[j] > assetStart[j + 1])
+					throw new IllegalArgumentException(
+							"assetStart has to be non decreasing.");
+				for (int n = assetStart[j]; n < assetStart[j + 1]; n++) {
+					if (assetIndex[n] < 0 || assetIndex[n] >= ca.length)
+						throw new IllegalArgumentException("Asset "
+								+ assetIndex[n] + " of product " + j
+								+ " is not within the asset cost array.");
+					if (n > assetStart[j] && assetIndex[n - 1] >= assetIndex[n])
+						throw new IllegalArgumentException("The assets of product "
+								+ j + " have to be given in ascending order.");
+				}
+			}
+
+			this.cv = cv;
+			this.ca = ca;
+			this.cf = cf;
+			this.assetStart = assetStart;
+			this.assetIndex = assetIndex;
+
+			buildProductIndex();
+		}
+
+		/**
+		 * Creates a firm with other costs but the same product-asset
+		 * requirements as the given firm. The requirement index is shared, not
+		 * copied, thus many cost variants of a large firm are cheap.
+		 * 
+		 * @param firm
+		 *            the firm whose requirements are used
+		 * @param cv
+		 *            the variable cost per product
+		 * @param cf
+		 *            the fixed cost per product
+		 * @param ca
+		 *            the cost per asset
+		 */
+		public Firm(Firm firm, double[] cv, double[] cf, double[] ca) {
+			if (cv.length != firm.cv.length || cf.length != firm.cf.length)
+				throw new IllegalArgumentException(
+						"The number of products in cv or cf is unequal to the number of the firm.");
+			if (ca.length != firm.ca.length)
+				throw new IllegalArgumentException(
+						"The number of assets in ca is unequal to the number of the firm.");
+
+			this.cv = cv;
+			this.ca = ca;
+			this.cf = cf;
+			this.assetStart = firm.assetStart;
+			this.assetIndex = firm.assetIndex;
+			this.productStart = firm.productStart;
+			this.productIndex = firm.productIndex;
+		}
+
+		/**
+		 * derives the asset->product index from the product->asset index.
+		 */
+		private void buildProductIndex() {
+			productStart = new int[ca.length + 1];
+			productIndex = new int[assetIndex.length];
+
+			for (int n = 0; n < assetIndex.length; n++) {
+				productStart[assetIndex[n] + 1]++;
+			}
+			for (int k = 0; k < ca.length; k++) {
+				productStart[k + 1] += productStart[k];
+			}
+
+			// products are visited in ascending order, thus each row of the
+			// transposed index is sorted as well
+			int[] next = new int[ca.length];
+			System.arraycopy(productStart, 0, next, 0, ca.length);
+			for (int j = 0; j < cf.length; j++) {
+				for (int n = assetStart[j]; n < assetStart[j + 1]; n++) {
+					productIndex[next[assetIndex[n]]++] = j;
+				}
+			}
 		}
 
 		public boolean getA(int j, int k) {
-			return a[j][k];
+			int low = assetStart[j];
+			int high = assetStart[j + 1] - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (assetIndex[mid] < k)
+					low = mid + 1;
+				else if (assetIndex[mid] > k)
+					high = mid - 1;
+				else
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * @return the n-th asset required by product j
+		 */
+		public int getAssetOf(int j, int n) {
+			return assetIndex[assetStart[j] + n];
 		}
 
 		public double getCa(int i) {
@@ -109,13 +436,66 @@ public class SPLProblemDescription {
 			return cv[i];
 		}
 
+		/**
+		 * @return the n-th product requiring asset k
+		 */
+		public int getProductUsing(int k, int n) {
+			return productIndex[productStart[k] + n];
+		}
+
 		public int NumberOfAssets() {
-			return a[0].length;
+			return ca.length;
+		}
+
+		/**
+		 * @return the number of assets required by product j
+		 */
+		public int numberOfAssetsOf(int j) {
+			return assetStart[j + 1] - assetStart[j];
 		}
 
 		public int NumberOfProducts() {
 			return cv.length;
 		}
+
+		/**
+		 * Changes the cost of asset k. Must not be called while the problem
+		 * is optimized.
+		 */
+		public void setCa(int k, double ca) {
+			this.ca[k] = ca;
+		}
+
+		/**
+		 * Changes the fixed cost of product j. Must not be called while the
+		 * problem is optimized.
+		 */
+		public void setCf(int j, double cf) {
+			this.cf[j] = cf;
+		}
+
+		/**
+		 * Changes the variable cost of product j. Must not be called while
+		 * the problem is optimized.
+		 */
+		public void setCv(int j, double cv) {
+			this.cv[j] = cv;
+		}
+
+		/**
+		 * @return the number of products requiring asset k
+		 */
+		public int numberOfProductsUsing(int k) {
+			return productStart[k + 1] - productStart[k];
+		}
+
+		/**
+		 * @return the number of product-asset requirements, i.e. the non zero
+		 *         entries of the product-asset matrix
+		 */
+		public int numberOfRequirements() {
+			return assetIndex.length;
+		}
 	}
 
 	private Competition competition;
@@ -152,6 +532,14 @@ public class SPLProblemDescription {
 		return firm;
 	}
 
+	/**
+	 * @return the number of steps the price range of a product is divided
+	 *         into
+	 */
+	public int getPriceSteps() {
+		return price_steps;
+	}
+
 	public double lowerPriceBound(int j) {
 		return firm.getCv(j);
 
@@ -172,13 +560,19 @@ public class SPLProblemDescription {
 			throw new IllegalArgumentException(
 					"To calculate a upper bound for the price at least one customer segment has to be specified! ");
 
-		double max = customer.getWTP(0, j);
-
-		for (int i = 1; i < customer.numberOfSegments(); i++) {
-			max = max < customer.getWTP(i, j) ? customer.getWTP(i, j) : max;
-		}
+		return customer.getMaxWTP(j);
+	}
 
-		return max;
+	/**
+	 * Copies the customer into another memory layout of the willingness to
+	 * pay. Must not be called while the problem is optimized.
+	 * 
+	 * @param layout
+	 *            the layout
+	 */
+	public void setLayout(Customer.Layout layout) {
+		if (customer.getLayout() != layout)
+			customer = new Customer(customer, layout);
 	}
 
 }
@@ -20,13 +20,22 @@ import java.awt.Component;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.List;
 
+import javax.swing.JButton;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
 
 import org.opt4j.core.Individual;
 import org.opt4j.viewer.IndividualMouseListener;
@@ -82,64 +91,184 @@ public class SPLProblemVisualization implements IndividualMouseListener {
 		viewport.addWidget(widget);
 	}
 
+	/**
+	 * Shows the segment assignment, the product line and the prices of a
+	 * solution. The cells are read from the assignment of the solution when
+	 * they are painted, thus the table does not build the assignment matrix
+	 * unless a segment has no or several products.
+	 */
+	static class ResultTableModel extends AbstractTableModel {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Solution solution;
+		private final int[] a;
+		private final boolean[] y;
+		private final double[] p;
+
+		ResultTableModel(Solution solution) {
+			this.solution = solution;
+			this.a = solution.getAssignment();
+			this.y = solution.determineY();
+			this.p = solution.getP();
+		}
+
+		@Override
+		public int getRowCount() {
+			return a.length + 2;
+		}
+
+		@Override
+		public int getColumnCount() {
+			return p.length + 1;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return column == 0 ? "Name" : "P" + column;
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			if (row < a.length) {
+				if (column == 0)
+					return "Seg" + row;
+				return Boolean.valueOf(a[row] >= 0 ? a[row] == column - 1
+						: solution.getX()[row][column - 1]);
+			} else if (row == a.length) {
+				return column == 0 ? "Produced:" : Boolean
+						.valueOf(y[column - 1]);
+			} else {
+				return column == 0 ? "Price:" : Double.valueOf(p[column - 1]);
+			}
+		}
+	}
+
+	/**
+	 * Shows the assets ordered by their importance, empty until the
+	 * importance has been calculated.
+	 */
+	static class AssetTableModel extends AbstractTableModel {
+
+		private static final long serialVersionUID = 1L;
+
+		private List<Solution.AssetContainer> assets = new ArrayList<Solution.AssetContainer>();
+
+		void setAssets(List<Solution.AssetContainer> assets) {
+			this.assets = assets;
+			fireTableDataChanged();
+		}
+
+		@Override
+		public int getRowCount() {
+			return assets.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return 2;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return column == 0 ? "Asset" : "Profit";
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return column == 0 ? Integer.class : Double.class;
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			Solution.AssetContainer asset = assets.get(row);
+			return column == 0 ? Integer.valueOf(asset.asset) : Double
+					.valueOf(asset.delta_profit);
+		}
+	}
+
 	// Use a custom widget
 	@WidgetParameters(title = "SPL Solution", resizable = true, maximizable = false)
 	protected class SPLWidget implements Widget {
 
 		final Individual individual;
 		Solution solution;
+		SwingWorker<ArrayList<Solution.AssetContainer>, Void> worker;
 
 		public SPLWidget(Individual individual) {
 			this.individual = individual;
 			solution = (Solution) individual.getPhenotype();
 		}
 
-		private JScrollPane createAssetTable() {
-			ArrayList<Solution.AssetContainer> list = solution
-					.calculateAssetImportance();
-
-			Object[][] data = new Object[list.size()][2];
-			for (int i = 0; i < list.size(); i++) {
-				data[i][0] = list.get(i).asset;
-				data[i][1] = list.get(i).delta_profit;
-			}
-
-			JTable table = new JTable(data, new String[] { "Asset", "Profit" });
+		private JPanel createAssetTable() {
+			final AssetTableModel model = new AssetTableModel();
+			JTable table = new JTable(model);
 			// table.setPreferredScrollableViewportSize(new Dimension(500,
 			// 200));
 			table.setFillsViewportHeight(true);
 
-			// Create the scroll pane and add the table to it.
-			JScrollPane scrollPane = new JScrollPane(table);
-
-			return scrollPane;
-		}
+			final JProgressBar progress = new JProgressBar(0, 100);
+			progress.setStringPainted(true);
+			progress.setString("calculating asset importance");
+			final JButton cancel = new JButton("cancel");
+
+			// the importance is calculated in the background, the GUI stays
+			// responsive for large problems
+			worker = new SwingWorker<ArrayList<Solution.AssetContainer>, Void>() {
+				@Override
+				protected ArrayList<Solution.AssetContainer> doInBackground() {
+					return solution
+							.calculateAssetImportance(new Solution.Progress() {
+								@Override
+								public boolean update(int done, int total) {
+									setProgress(100 * done / total);
+									return !isCancelled();
+								}
+							});
+				}
 
-		private JScrollPane createResultTable() {
-			Object[][] data = new Object[solution.getX().length + 2][solution
-					.getX()[0].length + 1];
-			String[] columnNames = new String[solution.getP().length + 1];
+				@Override
+				protected void done() {
+					cancel.setEnabled(false);
+					if (isCancelled()) {
+						progress.setString("cancelled");
+						return;
+					}
+					try {
+						model.setAssets(get());
+						progress.setString("done");
+					} catch (Exception e) {
+						progress.setString("failed: " + e.getMessage());
+					}
+				}
+			};
+			worker.addPropertyChangeListener(new PropertyChangeListener() {
+				@Override
+				public void propertyChange(PropertyChangeEvent evt) {
+					if ("progress".equals(evt.getPropertyName()))
+						progress.setValue((Integer) evt.getNewValue());
+				}
+			});
+			cancel.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					worker.cancel(false);
+				}
+			});
 
-			columnNames[0] = "Name";
+			JPanel status = new JPanel(new BorderLayout());
+			status.add(progress, BorderLayout.CENTER);
+			status.add(cancel, BorderLayout.EAST);
 
-			for (int i = 0; i < solution.getX().length; i++) {
-				data[i][0] = "Seg" + String.valueOf(i);
-				for (int j = 1; j <= solution.getX()[0].length; j++) {
-					data[i][j] = solution.getX()[i][j - 1];
-				}
-			}
-			data[solution.getX().length][0] = "Produced:";
-			for (int j = 1; j <= solution.determineY().length; j++) {
-				data[solution.getX().length][j] = solution.determineY()[j - 1];
-				columnNames[j] = "P" + String.valueOf(j);
-			}
+			// Create the scroll pane and add the table to it.
+			JPanel panel = new JPanel(new BorderLayout());
+			panel.add(new JScrollPane(table), BorderLayout.CENTER);
+			panel.add(status, BorderLayout.SOUTH);
 
-			data[solution.getX().length + 1][0] = "Price:";
-			for (int j = 1; j <= solution.determineY().length; j++) {
-				data[solution.getX().length + 1][j] = solution.getP()[j - 1];
-			}
+			return panel;
+		}
 
-			JTable table = new JTable(data, columnNames);
+		private JScrollPane createResultTable() {
+			JTable table = new JTable(new ResultTableModel(solution));
 			// table.setPreferredScrollableViewportSize(new Dimension(500,
 			// 200));
 			table.setFillsViewportHeight(true);
@@ -152,10 +281,21 @@ public class SPLProblemVisualization implements IndividualMouseListener {
 
 		@Override
 		public JPanel getPanel() {
-			JPanel panel = new JPanel();
+			final JPanel panel = new JPanel();
 			panel.add(createResultTable(), BorderLayout.NORTH);
 			panel.add(createAssetTable(), BorderLayout.SOUTH);
 			panel.setSize(400, 300);
+
+			// stop the calculation if the widget is closed
+			panel.addHierarchyListener(new HierarchyListener() {
+				@Override
+				public void hierarchyChanged(HierarchyEvent e) {
+					if ((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0
+							&& !panel.isDisplayable())
+						worker.cancel(false);
+				}
+			});
+			worker.execute();
 			return panel;
 		}
 
@@ -0,0 +1,37 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Publishes the improvements of the {@link SPLSimulatedAnnealing} to
+ * subscribers of the {@link SPLImprovementPublisher}. A service that embeds
+ * the optimizer gets the publisher from the injector, e.g. with
+ * {@code task.getInstance(SPLImprovementPublisher.class)}, and subscribes
+ * before the optimization is started.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLPublisherModule extends Opt4JModule {
+
+	@Override
+	public void config() {
+		bind(SPLImprovementSink.class).to(SPLImprovementPublisher.class);
+	}
+}
+// EOF
@@ -0,0 +1,118 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.common.random.Rand;
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+
+/**
+ * A random number generator whose complete state is a single long value
+ * (SplitMix64). In contrast to the generators of opt4j the state can be read
+ * and restored, which allows to continue an optimization exactly from a
+ * checkpoint.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLRandom extends Rand {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long state;
+
+	@Inject
+	public SPLRandom(@Constant(value = "seed") long seed) {
+		this.state = seed;
+	}
+
+	/**
+	 * @return the state of the generator
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * Restores a state returned by {@link #getState()}.
+	 * 
+	 * @param state
+	 *            the state
+	 */
+	public void setState(long state) {
+		this.state = state;
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		// also called by the constructor of Random
+		this.state = seed;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		return mix(state += GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Other than {@link java.util.Random#nextGaussian()} this implementation
+	 * does not keep the second value of a pair, thus the generator has no
+	 * hidden state.
+	 */
+	@Override
+	public double nextGaussian() {
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		return v1 * StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+	}
+
+	/**
+	 * Creates one of several independent generators derived from a single
+	 * seed. The same seed and stream always give the same sequence, no matter
+	 * in which order or thread the streams are used.
+	 * 
+	 * @param seed
+	 *            the common seed
+	 * @param stream
+	 *            the number of the stream
+	 * @return the generator of the stream
+	 */
+	public static SPLRandom stream(long seed, long stream) {
+		return new SPLRandom(mix(seed ^ mix((stream + 1) * GOLDEN_GAMMA)));
+	}
+
+	/**
+	 * The SplitMix64 finalizer.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
+// EOF
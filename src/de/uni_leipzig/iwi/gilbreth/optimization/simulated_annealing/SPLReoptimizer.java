@@ -0,0 +1,225 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opt4j.common.random.RandomModule;
+import org.opt4j.core.Archive;
+import org.opt4j.core.Individual;
+import org.opt4j.optimizer.sa.CoolingSchedulesModule;
+import org.opt4j.start.Opt4JModule;
+import org.opt4j.start.Opt4JTask;
+
+import com.google.inject.Module;
+
+/**
+ * Keeps the best solution of a problem whose market data changes over time.
+ * After a first full optimization, each {@link SPLMarketUpdate} is applied to
+ * the problem and the optimizer continues from the previous best solution
+ * with a low temperature for a number of iterations that is proportional to
+ * the size of the update. The evaluator is shared by all runs, it rebuilds
+ * its cached state only for the segments the update has changed.
+ * 
+ * <p>
+ * The problem description is changed in place, thus updates and runs are
+ * serialized and the description must not be optimized by anyone else at
+ * the same time.
+ * </p>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLReoptimizer {
+
+	private final SPLProblem problem;
+	private final SPLEvaluator evaluator;
+
+	private int iterations = 100000;
+	private int iterationsPerChange = 1000;
+	private int minIterations = 1000;
+	private double temperature = 1.0d;
+	private long seed = 0L;
+
+	private SPLGenotype best = null;
+	private double bestFitness = Double.NEGATIVE_INFINITY;
+
+	public SPLReoptimizer(SPLProblem problem) {
+		this.problem = problem;
+		this.evaluator = new SPLEvaluator(problem);
+	}
+
+	/**
+	 * Optimizes the problem from scratch.
+	 * 
+	 * @return the best genotype
+	 * @throws Exception
+	 *             if the optimization fails
+	 */
+	public synchronized SPLGenotype optimize() throws Exception {
+		return run(null, iterations, null);
+	}
+
+	/**
+	 * Applies an update to the problem and re-optimizes from the previous
+	 * best solution, or from scratch if there is none.
+	 * 
+	 * @param update
+	 *            the changes of the market data
+	 * @return the best genotype for the changed problem
+	 * @throws Exception
+	 *             if the optimization fails
+	 */
+	public synchronized SPLGenotype update(SPLMarketUpdate update)
+			throws Exception {
+		SPLProblemDescription description = problem.getSPLProblemDescription();
+		int[] segments = update.apply(description);
+		evaluator.segmentsChanged(segments);
+		problem.resetPriceGrid();
+
+		if (best == null)
+			return optimize();
+
+		// the price bounds depend on the willingness to pay and the cost
+		SPLGenotypeCodec codec = new SPLGenotypeCodec(description);
+		SPLGenotype start = codec.fromBytes(codec.toBytes(best));
+
+		int n = Math.max(minIterations, iterationsPerChange * update.size());
+		return run(start, Math.min(n, iterations), temperature);
+	}
+
+	public SPLGenotype getBest() {
+		return best;
+	}
+
+	/**
+	 * @return the fitness of the best genotype for the current market data
+	 */
+	public double getBestFitness() {
+		return bestFitness;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public int getIterationsPerChange() {
+		return iterationsPerChange;
+	}
+
+	public int getMinIterations() {
+		return minIterations;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public double getTemperature() {
+		return temperature;
+	}
+
+	/**
+	 * @param iterations
+	 *            the iterations of a full optimization, also the limit of a
+	 *            re-optimization
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @param iterationsPerChange
+	 *            the iterations of a re-optimization per changed segment,
+	 *            product or asset
+	 */
+	public void setIterationsPerChange(int iterationsPerChange) {
+		this.iterationsPerChange = iterationsPerChange;
+	}
+
+	public void setMinIterations(int minIterations) {
+		this.minIterations = minIterations;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @param temperature
+	 *            the initial temperature of a re-optimization
+	 */
+	public void setTemperature(double temperature) {
+		this.temperature = temperature;
+	}
+
+	private SPLGenotype run(final SPLGenotype start, final int iterations,
+			Double temperature) throws Exception {
+		final SPLSimulatedAnnealingModule sa = new SPLSimulatedAnnealingModule();
+		sa.setIterations(iterations);
+
+		CoolingSchedulesModule cooling = new CoolingSchedulesModule();
+		if (temperature != null)
+			cooling.setInitialTemperature(temperature);
+
+		RandomModule random = new RandomModule();
+		random.setSeed(seed);
+
+		List<Module> modules = new ArrayList<Module>();
+		modules.add(new SPLBatchRunner.HeadlessSPLModule(problem) {
+			@Override
+			protected void config() {
+				super.config();
+				bind(SPLEvaluator.class).toInstance(evaluator);
+			}
+		});
+		modules.add(sa);
+		modules.add(cooling);
+		modules.add(random);
+		if (start != null) {
+			modules.add(new Opt4JModule() {
+				@Override
+				protected void config() {
+					bind(SPLCheckpointer.class).toInstance(
+							new SPLWarmStart(start, iterations, sa
+									.getChangeIterations()));
+				}
+			});
+		}
+
+		Opt4JTask task = new Opt4JTask(false);
+		task.init(modules);
+		try {
+			task.execute();
+
+			best = null;
+			bestFitness = Double.NEGATIVE_INFINITY;
+			for (Individual individual : task.getInstance(Archive.class)) {
+				double f = evaluator.fitness((Solution) individual
+						.getPhenotype());
+				if (f > bestFitness) {
+					bestFitness = f;
+					best = (SPLGenotype) individual.getGenotype();
+				}
+			}
+			return best;
+		} finally {
+			task.close();
+		}
+	}
+}
+// EOF
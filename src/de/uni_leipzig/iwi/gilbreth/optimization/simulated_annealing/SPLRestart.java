@@ -0,0 +1,80 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * Decides whether the {@link SPLSimulatedAnnealing} restarts instead of
+ * stopping when the change criterion ends a period without significant
+ * improvement, and how it restarts. The total number of iterations stays the
+ * evaluation budget of the whole run, including all restarts.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public interface SPLRestart {
+
+	/**
+	 * Called when the change criterion is met.
+	 * 
+	 * @param iteration
+	 *            the iteration
+	 * @param millis
+	 *            the milliseconds since the optimization has started
+	 * @return true if the optimization restarts, false if it stops
+	 */
+	public boolean restart(int iteration, long millis);
+
+	/**
+	 * Called every few iterations.
+	 * 
+	 * @param millis
+	 *            the milliseconds since the optimization has started
+	 * @return true if the time budget is used up and the optimization stops
+	 */
+	public boolean exhausted(long millis);
+
+	/**
+	 * @return the individual the optimization continues with
+	 */
+	public SPLRestartModule.Strategy getStrategy();
+
+	/**
+	 * @return the fraction of the temperature of the cooling schedule the
+	 *         optimization continues with
+	 */
+	public double getReheat();
+
+	/**
+	 * @return the number of neighbor moves applied to the best individual,
+	 *         used by {@link SPLRestartModule.Strategy#BEST}
+	 */
+	public int getPerturbation();
+
+	/**
+	 * @return the number of restarts so far, stored in the checkpoints
+	 */
+	public int getRestarts();
+
+	/**
+	 * Sets the number of restarts so far, e.g. 0 at the start of an
+	 * optimization or the number of a restored checkpoint.
+	 * 
+	 * @param restarts
+	 *            the number of restarts
+	 */
+	public void setRestarts(int restarts);
+}
+// EOF
@@ -0,0 +1,110 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Constant;
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Lets the {@link SPLSimulatedAnnealing} restart instead of stopping when the
+ * change criterion (delta and change) is met. Every restart raises the
+ * temperature to a fraction of the start temperature and cools down again
+ * until the last iteration. The iterations remain the budget of the whole
+ * run; in addition the run stops when the time budget is used up. Restarts
+ * are not recorded in checkpoints, a resumed run continues with the
+ * temperature of the cooling schedule.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLRestartModule extends Opt4JModule {
+
+	public enum Strategy {
+		/**
+		 * continue with the current individual
+		 */
+		REHEAT,
+		/**
+		 * continue with a perturbed copy of the best individual
+		 */
+		BEST,
+		/**
+		 * continue with a new individual of the creator
+		 */
+		FRESH;
+	}
+
+	@Constant(value = "restartStrategy")
+	protected Strategy restartStrategy = Strategy.BEST;
+
+	@Constant(value = "reheat")
+	protected double reheat = 0.5d;
+
+	@Constant(value = "restartPerturbation")
+	protected int restartPerturbation = 10;
+
+	@Constant(value = "maxRestarts")
+	protected int maxRestarts = 100;
+
+	@Constant(value = "timeBudget")
+	protected double timeBudget = 0.0d;
+
+	@Override
+	public void config() {
+		bind(SPLRestart.class).to(SPLBudgetedRestart.class);
+	}
+
+	public int getMaxRestarts() {
+		return maxRestarts;
+	}
+
+	public double getReheat() {
+		return reheat;
+	}
+
+	public int getRestartPerturbation() {
+		return restartPerturbation;
+	}
+
+	public Strategy getRestartStrategy() {
+		return restartStrategy;
+	}
+
+	public double getTimeBudget() {
+		return timeBudget;
+	}
+
+	public void setMaxRestarts(int maxRestarts) {
+		this.maxRestarts = maxRestarts;
+	}
+
+	public void setReheat(double reheat) {
+		this.reheat = reheat;
+	}
+
+	public void setRestartPerturbation(int restartPerturbation) {
+		this.restartPerturbation = restartPerturbation;
+	}
+
+	public void setRestartStrategy(Strategy restartStrategy) {
+		this.restartStrategy = restartStrategy;
+	}
+
+	public void setTimeBudget(double timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+}
+// EOF
@@ -0,0 +1,565 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates what-if scenarios for a fixed solution: how do the profit and the
+ * penalized profit of the {@link SPLEvaluator} change if some prices, product
+ * or asset costs or competitor surpluses change. The segment assignment of the
+ * solution is kept.
+ * 
+ * <p>
+ * The demand of every product, the produced products and assets and the
+ * surplus and constraint violations of every segment are computed once. A
+ * scenario then only touches what it changes: a cost change is a single
+ * product of the profit, a price change re-evaluates the segments buying the
+ * product and compares the new surplus of the product with the surplus of all
+ * other segments. The scenarios of a batch are evaluated in parallel.
+ * </p>
+ * 
+ * <pre>
+ * java SPLSensitivity PAPER|SMALL [threads] [seconds]
+ * java SPLSensitivity FILE &lt;file&gt; [threads] [seconds]
+ * </pre>
+ * 
+ * The command line solves the problem with the {@link SPLExactSolver} and
+ * reports the effect of changing every price by &plusmn;5, 10 and 20% and of
+ * doubling the cost of every asset.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLSensitivity {
+
+	/**
+	 * A set of changes of prices, costs and competitor surpluses. Changes not
+	 * set keep the value of the solution and problem.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public static class Scenario {
+
+		private final String name;
+		private final Map<Integer, Double> p = new LinkedHashMap<Integer, Double>();
+		private final Map<Integer, Double> cv = new LinkedHashMap<Integer, Double>();
+		private final Map<Integer, Double> cf = new LinkedHashMap<Integer, Double>();
+		private final Map<Integer, Double> ca = new LinkedHashMap<Integer, Double>();
+		private final Map<Integer, Double> w = new LinkedHashMap<Integer, Double>();
+
+		public Scenario(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Scenario setP(int j, double p) {
+			this.p.put(j, p);
+			return this;
+		}
+
+		public Scenario setCv(int j, double cv) {
+			this.cv.put(j, cv);
+			return this;
+		}
+
+		public Scenario setCf(int j, double cf) {
+			this.cf.put(j, cf);
+			return this;
+		}
+
+		public Scenario setCa(int k, double ca) {
+			this.ca.put(k, ca);
+			return this;
+		}
+
+		public Scenario setW(int i, double w) {
+			this.w.put(i, w);
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * The effect of a scenario.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public static class Result {
+		public final Scenario scenario;
+		/**
+		 * the profit under the scenario
+		 */
+		public final double profit;
+		public final double profitDelta;
+		/**
+		 * the profit penalized like by the {@link SPLEvaluator}
+		 */
+		public final double fitness;
+		public final double fitnessDelta;
+		/**
+		 * the number of violations of the competitor and self selection
+		 * constraints under the scenario
+		 */
+		public final int violations;
+
+		Result(Scenario scenario, double profit, double profitDelta,
+				double fitness, double fitnessDelta, int violations) {
+			this.scenario = scenario;
+			this.profit = profit;
+			this.profitDelta = profitDelta;
+			this.fitness = fitness;
+			this.fitnessDelta = fitnessDelta;
+			this.violations = violations;
+		}
+
+		@Override
+		public String toString() {
+			return scenario + "\t" + profitDelta + "\t" + fitnessDelta + "\t"
+					+ violations;
+		}
+	}
+
+	// the scenarios a task evaluates at once
+	private static final int CHUNK = 64;
+
+	private final SPLProblemDescription.Customer customer;
+	private final SPLProblemDescription.Firm firm;
+	private final SPLProblemDescription.Competition competition;
+	private final int nrOfSegments;
+	private final int nrOfProducts;
+	private final int threads;
+
+	private final boolean[][] x;
+	private final double[] p;
+	private final boolean[] y;
+	private final boolean[] r;
+
+	// the products assigned to each segment and the segments assigned to
+	// each product
+	private final int[][] productsOf;
+	private final int[][] segmentsOf;
+
+	// the demand of each product
+	private final double[] demand;
+
+	// the surplus of each segment compared with the competitor (sum over the
+	// assigned products) and with the other products (last assigned product)
+	private final double[] value;
+	private final double[] welfare;
+
+	// the constraint violations of each segment
+	private final boolean[] beaten;
+	private final int[] better;
+
+	private final double profit;
+	private final int violations;
+	private final double fitness;
+
+	/**
+	 * Prepares the evaluation of scenarios for a solution.
+	 * 
+	 * @param solution
+	 *            the solution
+	 * @param problemDescription
+	 *            the problem of the solution
+	 * @param threads
+	 *            the number of threads
+	 */
+	public SPLSensitivity(Solution solution,
+			SPLProblemDescription problemDescription, int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException(
+					"The number of threads has to be positive.");
+		this.customer = problemDescription.getCustomer();
+		this.firm = problemDescription.getFirm();
+		this.competition = problemDescription.getCompetition();
+		this.nrOfSegments = customer.numberOfSegments();
+		this.nrOfProducts = firm.NumberOfProducts();
+		this.threads = threads;
+
+		this.x = solution.getX();
+		this.p = solution.getP().clone();
+		this.y = solution.determineY();
+		this.r = solution.determineRk();
+
+		this.productsOf = new int[nrOfSegments][];
+		int[] count = new int[nrOfProducts];
+		for (int i = 0; i < nrOfSegments; i++) {
+			int n = 0;
+			for (int j = 0; j < nrOfProducts; j++) {
+				if (x[i][j]) {
+					n++;
+					count[j]++;
+				}
+			}
+			productsOf[i] = new int[n];
+			n = 0;
+			for (int j = 0; j < nrOfProducts; j++) {
+				if (x[i][j])
+					productsOf[i][n++] = j;
+			}
+		}
+		this.segmentsOf = new int[nrOfProducts][];
+		for (int j = 0; j < nrOfProducts; j++) {
+			segmentsOf[j] = new int[count[j]];
+			count[j] = 0;
+		}
+		this.demand = new double[nrOfProducts];
+		for (int i = 0; i < nrOfSegments; i++) {
+			for (int j : productsOf[i]) {
+				segmentsOf[j][count[j]++] = i;
+				demand[j] += customer.getQ(i);
+			}
+		}
+
+		this.value = new double[nrOfSegments];
+		this.welfare = new double[nrOfSegments];
+		this.beaten = new boolean[nrOfSegments];
+		this.better = new int[nrOfSegments];
+		int v = 0;
+		for (int i = 0; i < nrOfSegments; i++) {
+			for (int j : productsOf[i]) {
+				value[i] += customer.getWTP(i, j) - p[j];
+				welfare[i] = customer.getWTP(i, j) - p[j];
+			}
+			beaten[i] = value[i] < competition.getW(i);
+			better[i] = countBetter(i, welfare[i], p);
+			v += (beaten[i] ? 1 : 0) + better[i];
+		}
+
+		this.profit = solution.profit();
+		this.violations = v;
+		this.fitness = SPLEvaluator.penalize(profit, violations);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err
+					.println("usage: SPLSensitivity PAPER|SMALL [threads] [seconds]\n"
+							+ "       SPLSensitivity FILE <file> [threads] [seconds]");
+			System.exit(1);
+		}
+
+		SPLModule.ProblemSelection selection = SPLModule.ProblemSelection
+				.valueOf(args[0]);
+		int n = 1;
+		SPLProblem problem;
+		if (selection == SPLModule.ProblemSelection.FILE) {
+			problem = new SPLProblem(0, 0, 0, 0.0d, 0, selection, 0L,
+					SPLInstanceGenerator.Structure.UNIFORM, args[1]);
+			n = 2;
+		} else {
+			problem = new SPLProblem(0, 0, 0, 0.0d, 0, selection);
+		}
+		int threads = args.length > n ? Integer.parseInt(args[n]) : Runtime
+				.getRuntime().availableProcessors();
+		long seconds = args.length > n + 1 ? Long.parseLong(args[n + 1]) : 0L;
+
+		SPLProblemDescription description = problem
+				.getSPLProblemDescription();
+		SPLExactSolver.Result solved = new SPLExactSolver(description,
+				threads, seconds * 1000L).solve();
+		if (solved.solution == null) {
+			System.err.println("No solution found.");
+			System.exit(1);
+		}
+
+		List<Scenario> scenarios = priceChanges(description,
+				solved.solution.getP(), -0.2d, -0.1d, -0.05d, 0.05d, 0.1d,
+				0.2d);
+		scenarios.addAll(assetCostChanges(description, 2.0d));
+
+		SPLSensitivity sensitivity = new SPLSensitivity(solved.solution,
+				description, threads);
+		long start = System.currentTimeMillis();
+		Result[] results = sensitivity.evaluate(scenarios);
+		long millis = System.currentTimeMillis() - start;
+
+		System.out.println("profit\t" + sensitivity.getProfit());
+		System.out.println("scenario\tprofit delta\tfitness delta\tviolations");
+		for (Result result : results)
+			System.out.println(result);
+		System.out.println(results.length + " scenarios in " + millis + " ms");
+	}
+
+	/**
+	 * Creates a scenario for every relative change of the price of every
+	 * product except product 0.
+	 * 
+	 * @param problemDescription
+	 *            the problem
+	 * @param p
+	 *            the prices of the solution
+	 * @param changes
+	 *            the relative changes, e.g. 0.1 for +10%
+	 * @return the scenarios
+	 */
+	public static List<Scenario> priceChanges(
+			SPLProblemDescription problemDescription, double[] p,
+			double... changes) {
+		List<Scenario> scenarios = new ArrayList<Scenario>();
+		for (int j = 1; j < problemDescription.getFirm().NumberOfProducts(); j++) {
+			for (double change : changes) {
+				scenarios.add(new Scenario(String.format("p%d %+.0f%%", j,
+						100.0d * change)).setP(j, p[j] * (1.0d + change)));
+			}
+		}
+		return scenarios;
+	}
+
+	/**
+	 * Creates a scenario for every asset whose cost is multiplied by a
+	 * factor.
+	 * 
+	 * @param problemDescription
+	 *            the problem
+	 * @param factor
+	 *            the factor
+	 * @return the scenarios
+	 */
+	public static List<Scenario> assetCostChanges(
+			SPLProblemDescription problemDescription, double factor) {
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		List<Scenario> scenarios = new ArrayList<Scenario>();
+		for (int k = 0; k < f.NumberOfAssets(); k++) {
+			scenarios.add(new Scenario("ca" + k + " x" + factor).setCa(k,
+					f.getCa(k) * factor));
+		}
+		return scenarios;
+	}
+
+	/**
+	 * @return the profit of the solution
+	 */
+	public double getProfit() {
+		return profit;
+	}
+
+	/**
+	 * @return the penalized profit of the solution
+	 */
+	public double getFitness() {
+		return fitness;
+	}
+
+	/**
+	 * @return the constraint violations of the solution
+	 */
+	public int getViolations() {
+		return violations;
+	}
+
+	/**
+	 * Evaluates a single scenario in the calling thread.
+	 * 
+	 * @param scenario
+	 *            the scenario
+	 * @return the effect of the scenario
+	 */
+	public Result evaluate(Scenario scenario) {
+		check(scenario);
+		return new Evaluation().evaluate(scenario);
+	}
+
+	/**
+	 * Evaluates a batch of scenarios in parallel.
+	 * 
+	 * @param scenarios
+	 *            the scenarios
+	 * @return the effect of each scenario, in the order of the scenarios
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the threads
+	 */
+	public Result[] evaluate(final List<Scenario> scenarios)
+			throws InterruptedException {
+		for (Scenario scenario : scenarios)
+			check(scenario);
+
+		final Result[] results = new Result[scenarios.size()];
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int from = 0; from < results.length; from += CHUNK) {
+			final int begin = from;
+			final int end = Math.min(from + CHUNK, results.length);
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					Evaluation evaluation = new Evaluation();
+					for (int n = begin; n < end; n++)
+						results[n] = evaluation.evaluate(scenarios.get(n));
+					return null;
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Object> future : executor.invokeAll(tasks)) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return results;
+	}
+
+	/**
+	 * The scratch state of a thread, the prices of the scenario and the
+	 * segments it re-evaluates.
+	 */
+	private class Evaluation {
+
+		private final double[] price = p.clone();
+		private final int[] mark = new int[nrOfSegments];
+		private int stamp = 0;
+
+		Result evaluate(Scenario scenario) {
+			stamp++;
+
+			double delta = 0.0d;
+			for (Map.Entry<Integer, Double> e : scenario.p.entrySet()) {
+				int j = e.getKey();
+				price[j] = e.getValue();
+				delta += demand[j] * (price[j] - p[j]);
+			}
+			for (Map.Entry<Integer, Double> e : scenario.cv.entrySet()) {
+				int j = e.getKey();
+				delta -= demand[j] * (e.getValue() - firm.getCv(j));
+			}
+			for (Map.Entry<Integer, Double> e : scenario.cf.entrySet()) {
+				int j = e.getKey();
+				if (y[j])
+					delta -= e.getValue() - firm.getCf(j);
+			}
+			for (Map.Entry<Integer, Double> e : scenario.ca.entrySet()) {
+				int k = e.getKey();
+				if (r[k])
+					delta -= e.getValue() - firm.getCa(k);
+			}
+
+			int v = violations;
+
+			// the segments buying a product with a new price get a new
+			// surplus and are compared with every product again
+			Set<Integer> changed = scenario.p.keySet();
+			for (int j : changed) {
+				for (int i : segmentsOf[j]) {
+					if (mark[i] == stamp)
+						continue;
+					mark[i] = stamp;
+
+					double val = 0.0d;
+					double wel = 0.0d;
+					for (int l : productsOf[i]) {
+						val += customer.getWTP(i, l) - price[l];
+						wel = customer.getWTP(i, l) - price[l];
+					}
+					v -= (beaten[i] ? 1 : 0) + better[i];
+					v += (val < w(scenario, i) ? 1 : 0)
+							+ countBetter(i, wel, price);
+				}
+			}
+
+			// the other segments keep their surplus, but a produced product
+			// with a new price may now beat it or no longer
+			for (int j : changed) {
+				if (!y[j])
+					continue;
+				for (int i = 0; i < nrOfSegments; i++) {
+					if (mark[i] == stamp)
+						continue;
+					double wtp = customer.getWTPOfProduct(j, i);
+					if (wtp - price[j] > welfare[i])
+						v++;
+					if (wtp - p[j] > welfare[i])
+						v--;
+				}
+			}
+
+			for (Map.Entry<Integer, Double> e : scenario.w.entrySet()) {
+				int i = e.getKey();
+				if (mark[i] == stamp)
+					continue;
+				v -= beaten[i] ? 1 : 0;
+				v += value[i] < e.getValue() ? 1 : 0;
+			}
+
+			for (int j : changed)
+				price[j] = p[j];
+
+			double pr = profit + delta;
+			double fit = SPLEvaluator.penalize(pr, v);
+			return new Result(scenario, pr, delta, fit, fit - fitness, v);
+		}
+	}
+
+	/**
+	 * @return the number of produced products that give segment i more
+	 *         surplus than the given one
+	 */
+	private int countBetter(int i, double surplus, double[] price) {
+		int count = 0;
+		for (int j = 0; j < nrOfProducts; j++) {
+			if (y[j] && customer.getWTP(i, j) - price[j] > surplus)
+				count++;
+		}
+		return count;
+	}
+
+	private double w(Scenario scenario, int i) {
+		Double w = scenario.w.get(i);
+		return w != null ? w : competition.getW(i);
+	}
+
+	private void check(Scenario scenario) {
+		check(scenario.p.keySet(), nrOfProducts, "Product");
+		check(scenario.cv.keySet(), nrOfProducts, "Product");
+		check(scenario.cf.keySet(), nrOfProducts, "Product");
+		check(scenario.ca.keySet(), firm.NumberOfAssets(), "Asset");
+		check(scenario.w.keySet(), nrOfSegments, "Segment");
+	}
+
+	private static void check(Set<Integer> indices, int size, String name) {
+		for (int index : indices) {
+			if (index < 0 || index >= size)
+				throw new IllegalArgumentException(name + " " + index
+						+ " does not exist.");
+		}
+	}
+}
+// EOF
@@ -15,6 +15,8 @@
  */
 package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
 
+import java.util.Random;
+
 import org.opt4j.common.random.Rand;
 import org.opt4j.core.Archive;
 import org.opt4j.core.Individual;
@@ -33,6 +35,7 @@ import org.opt4j.optimizer.sa.SimulatedAnnealing;
 import org.opt4j.start.Constant;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 
 /**
  * A special implementation of the opt4j simulated annealing algorithm. Contains
@@ -42,11 +45,64 @@ import com.google.inject.Inject;
  * @author Johannes Müller
  * 
  */
+@Singleton
 public class SPLSimulatedAnnealing extends SimulatedAnnealing {
 
+	/**
+	 * The reason why the optimization has stopped.
+	 */
+	public enum Termination {
+		/**
+		 * all iterations have been performed
+		 */
+		ITERATIONS,
+		/**
+		 * the change criterion has been met
+		 */
+		CONVERGED,
+		/**
+		 * the best individual is within the gap of the bound
+		 */
+		BOUND,
+		/**
+		 * the time budget of the restarts is exhausted
+		 */
+		BUDGET;
+	}
+
+	// the number of iterations between two checks of the time budget
+	private static final int RESTART_CHECK_INTERVAL = 1 << 10;
+
 	protected double delta = 0.0d;
 	protected int changeIterations = 0;
-	private int changecounter = changeIterations;
+
+	// the random streams, acceptance and change counter of the running
+	// optimization
+	private SPLAnnealingStep step = null;
+
+	protected SPLMigration migration = null;
+
+	protected SPLCheckpointer checkpointer = null;
+
+	protected SPLTrajectorySink trajectory = null;
+
+	protected SPLMoveSelection moveSelection = null;
+
+	protected SPLSpeculation speculation = null;
+
+	protected SPLImprovementSink improvements = null;
+
+	protected SPLBound bound = null;
+
+	protected SPLRestart restart = null;
+
+	protected SPLCreator creator = null;
+
+	// the iteration of the last restart, -1 before the first one
+	private int restartIteration = -1;
+
+	// null while running or if the optimization has been stopped
+	private volatile Termination termination = null;
 
 	/**
 	 * Constructs a new {@code SimulatedAnnealing}.
@@ -83,7 +139,123 @@ public class SPLSimulatedAnnealing extends SimulatedAnnealing {
 		super(population, archive, individualBuilder, completer, control,
 				random, neighbor, copy, iterations, coolingSchedule);
 		this.delta = delta;
-		this.changecounter = this.changeIterations = changeIterations;
+		this.changeIterations = changeIterations;
+	}
+
+	/**
+	 * Sets the migration that connects this optimizer with other islands. Is
+	 * only injected if a migration is bound, e.g. by the
+	 * {@link SPLIslandModule}.
+	 * 
+	 * @param migration
+	 *            the migration
+	 */
+	@Inject(optional = true)
+	public void setMigration(SPLMigration migration) {
+		this.migration = migration;
+	}
+
+	/**
+	 * Sets the checkpointer that saves the state of the optimization
+	 * periodically and restores it on start. Is only injected if a
+	 * checkpointer is bound, e.g. by the {@link SPLCheckpointModule}.
+	 * 
+	 * @param checkpointer
+	 *            the checkpointer
+	 */
+	@Inject(optional = true)
+	public void setCheckpointer(SPLCheckpointer checkpointer) {
+		this.checkpointer = checkpointer;
+	}
+
+	/**
+	 * Sets the sink that receives a record of every iteration. Is only
+	 * injected if a sink is bound, e.g. by the {@link SPLTrajectoryModule}.
+	 * 
+	 * @param trajectory
+	 *            the trajectory sink
+	 */
+	@Inject(optional = true)
+	public void setTrajectory(SPLTrajectorySink trajectory) {
+		this.trajectory = trajectory;
+	}
+
+	/**
+	 * Sets the move selection that learns from the outcome of every
+	 * iteration. Is only injected if a selection is bound, e.g. by the
+	 * {@link SPLMoveSelectionModule}.
+	 * 
+	 * @param moveSelection
+	 *            the move selection
+	 */
+	@Inject(optional = true)
+	public void setMoveSelection(SPLMoveSelection moveSelection) {
+		this.moveSelection = moveSelection;
+	}
+
+	/**
+	 * Sets the bound that stops the optimization as soon as the best
+	 * individual is close enough to it. Is only injected if a bound is
+	 * configured, e.g. by the {@link SPLBoundModule}.
+	 * 
+	 * @param bound
+	 *            the upper bound
+	 */
+	@Inject(optional = true)
+	public void setBound(SPLBound bound) {
+		this.bound = bound;
+	}
+
+	/**
+	 * Sets the policy that restarts the optimization instead of stopping it
+	 * when the change criterion is met. Is only injected if a policy is
+	 * configured, e.g. by the {@link SPLRestartModule}.
+	 * 
+	 * @param restart
+	 *            the restart policy
+	 */
+	@Inject(optional = true)
+	public void setRestart(SPLRestart restart) {
+		this.restart = restart;
+	}
+
+	/**
+	 * Sets the creator of the fresh individuals of restarts. Is only injected
+	 * if a problem is bound, e.g. by the {@link SPLModule}, otherwise fresh
+	 * individuals are drawn from the shared random number generator.
+	 * 
+	 * @param creator
+	 *            the creator
+	 */
+	@Inject(optional = true)
+	public void setCreator(SPLCreator creator) {
+		this.creator = creator;
+	}
+
+	/**
+	 * Sets the sink that receives every improvement of the best individual.
+	 * Is only injected if a sink is bound, e.g. by the
+	 * {@link SPLPublisherModule}.
+	 * 
+	 * @param improvements
+	 *            the improvement sink
+	 */
+	@Inject(optional = true)
+	public void setImprovements(SPLImprovementSink improvements) {
+		this.improvements = improvements;
+	}
+
+	/**
+	 * Sets the speculation that evaluates the proposals of the next
+	 * iterations in parallel. Is only injected if a speculation is bound,
+	 * e.g. by the {@link SPLSpeculationModule}.
+	 * 
+	 * @param speculation
+	 *            the speculation
+	 */
+	@Inject(optional = true)
+	public void setSpeculation(SPLSpeculation speculation) {
+		this.speculation = speculation;
 	}
 
 	/*
@@ -92,71 +264,351 @@ public class SPLSimulatedAnnealing extends SimulatedAnnealing {
 	 * @see org.opt4j.core.optimizer.Optimizer#optimize()
 	 */
 	public void optimize() throws TerminationException, StopException {
+		termination = null;
+		restartIteration = -1;
+
+		if (speculation != null && moveSelection != null)
+			throw new IllegalStateException(
+					"The speculation cannot be combined with a move selection.");
+
+		SPLCheckpoint checkpoint = checkpointer != null ? checkpointer
+				.restore() : null;
 
-		Individual x = individualBuilder.build();
+		Individual x;
 		Individual y = null;
 
-		population.add(x);
-		completer.complete(population);
-		archive.update(x);
+		// the best individual found so far, sent to the other islands
+		Individual best;
+
+		// the first iteration to perform
+		int first = 1;
+		int changecounter = changeIterations;
+
+		if (checkpoint == null) {
+			x = individualBuilder.build();
+			population.add(x);
+			completer.complete(population);
+			archive.update(x);
+			best = x;
+			if (restart != null)
+				restart.setRestarts(0);
+		} else {
+			if (checkpoint.getIterations() != iterations)
+				throw new IllegalStateException("The checkpoint was taken for "
+						+ checkpoint.getIterations()
+						+ " iterations, but the optimizer is configured for "
+						+ iterations + " iterations.");
+
+			x = individualBuilder.build(checkpoint.getCurrent());
+			population.add(x);
+			best = individualBuilder.build(checkpoint.getBest());
+			completer.complete(x, best);
+			archive.update(x);
+			archive.update(best);
+
+			first = checkpoint.getIteration() + 1;
+			changecounter = checkpoint.getChangecounter();
+			restartIteration = checkpoint.getRestartIteration();
+			if (restart != null)
+				restart.setRestarts(checkpoint.getRestarts());
+			if (checkpoint.hasRandomState() && random instanceof SPLRandom)
+				((SPLRandom) random).setState(checkpoint.getRandomState());
+		}
 		nextIteration();
 
 		double fx = f(x);
 		double fy;
+		double fbest = f(best);
 
 		long starttime = System.currentTimeMillis();
 
-		for (int i = 1; i < iterations && changecounter > 0; i++) {
+		improved(first - 1, best);
 
-			Genotype g = copy.copy(x.getGenotype());
-			neighbor.neighbor(g);
+		// true as soon as the best individual is within the gap of the bound
+		boolean close = closeToBound(fbest);
 
-			y = individualBuilder.build(g);
+		if (migration != null)
+			migration.start();
 
-			completer.complete(y);
-			archive.update(y);
+		// iteration i draws its neighbor and acceptance from the random
+		// stream i, thus the speculation does not change the search and a
+		// restored checkpoint continues with the same streams
+		long seed = random instanceof SPLRandom ? ((SPLRandom) random)
+				.getState() : random.nextLong();
+		step = new SPLAnnealingStep(seed, delta, changeIterations);
+		step.setChangecounter(changecounter);
+
+		if (speculation != null) {
+			speculation.start(seed, iterations);
+			speculation.restart(first, x.getGenotype());
+		}
 
-			fy = f(y);
+		try {
+			for (int i = first; i < iterations && !step.isConverged()
+					&& !close; i++) {
 
-			// boolean value that indicates a switch of the individuals
-			boolean sw = false;
+				// the applied move and the random number that decides on the
+				// acceptance of a worse neighbor
+				NeighborSPLGenotype.Move move;
+				double u;
 
-			if (fy <= fx) {
-				sw = true;
-				calculateBreakCriteria(fx, fy);
-			} else {
-				double a = (fx - fy)
-						/ coolingSchedule.getTemperature(i, iterations);
-				double e = Math.exp(a);
-				if (random.nextDouble() < e) {
-					sw = true;
+				if (speculation == null) {
+					SPLRandom r = step.stream(i);
+					Genotype g = copy.copy(x.getGenotype());
+					move = neighbor(g, r);
+					u = r.nextDouble();
+
+					y = individualBuilder.build(g);
+				} else {
+					SPLSpeculation.Proposal proposal = takeProposal(i);
+					y = individualBuilder.build(proposal.genotype);
+					y.setPhenotype(proposal.phenotype);
+					y.setObjectives(proposal.objectives);
+					move = proposal.move;
+					u = proposal.random;
 				}
-			}
 
-			if (sw) {
-				population.remove(x);
-				population.add(y);
-				fx = fy;
-				x = y;
-			}
+				completer.complete(y);
+				archive.update(y);
+
+				fy = f(y);
+
+				// boolean value that indicates a switch of the individuals
+				boolean sw = step.accept(fx, fy, temperature(i), u);
+
+				if (moveSelection != null) {
+					moveSelection.feedback(move, fx, fy, sw);
+				}
+
+				if (trajectory != null) {
+					trajectory.record(i, fx, fy, sw, temperature(i), move);
+				}
+
+				if (sw) {
+					population.remove(x);
+					population.add(y);
+					fx = fy;
+					x = y;
+					if (speculation != null)
+						speculation.restart(i + 1, x.getGenotype());
+				}
+
+				if (fx < fbest) {
+					best = x;
+					fbest = fx;
+					improved(i, best);
+					close = closeToBound(fbest);
+				}
 
-			nextIteration();
+				if (migration != null && i % migration.getInterval() == 0) {
+					migration.emigrate((SPLGenotype) best.getGenotype());
+
+					// an immigrant replaces the current individual if it is
+					// better and starts a new period of change
+					Individual m = immigrate();
+					if (m != null && f(m) < fx) {
+						population.remove(x);
+						population.add(m);
+						fx = f(m);
+						x = m;
+						step.resetChangecounter();
+						if (speculation != null)
+							speculation.restart(i + 1, x.getGenotype());
+					}
+					if (fx < fbest) {
+						best = x;
+						fbest = fx;
+						improved(i, best);
+						close = closeToBound(fbest);
+					}
+				}
+
+				if (checkpointer != null && i % checkpointer.getInterval() == 0) {
+					checkpointer.save(checkpoint(i, x, best));
+				}
+
+				if (restart != null) {
+					if (i % RESTART_CHECK_INTERVAL == 0
+							&& restart.exhausted(System.currentTimeMillis()
+									- starttime)) {
+						termination = Termination.BUDGET;
+						nextIteration();
+						break;
+					}
+					if (step.isConverged()
+							&& restart.restart(i, System.currentTimeMillis()
+									- starttime)) {
+						x = restart(i, x, best);
+						fx = f(x);
+						step.resetChangecounter();
+						if (fx < fbest) {
+							best = x;
+							fbest = fx;
+							improved(i, best);
+							close = closeToBound(fbest);
+						}
+						if (speculation != null)
+							speculation.restart(i + 1, x.getGenotype());
+					}
+				}
+
+				nextIteration();
+			}
+		} finally {
+			if (speculation != null)
+				speculation.stop();
+			if (migration != null)
+				migration.stop();
+			if (checkpointer != null)
+				checkpointer.close();
+			if (trajectory != null)
+				trajectory.close();
+			if (improvements != null)
+				improvements.close();
 		}
+		if (termination == null)
+			termination = close ? Termination.BOUND
+					: step.isConverged() ? Termination.CONVERGED
+							: Termination.ITERATIONS;
 		System.out.println((System.currentTimeMillis() - starttime) / 1000
 				+ "s");
 
 	}
 
-	private void calculateBreakCriteria(double fx, double fy) {
-		double epsilon = fx != 0.0d ? (fx - fy) / Math.abs(fx) : 1.0d;
-		// System.out.println("Fx: " + fx + "Fy: " + fy + " fx - fy: " + (fx -
-		// fy) + "absx" +(Math.abs(fx))+ " /fx: " +((fx - fy)/Math.abs(fx))+
-		// "epsilon: " + epsilon);
-		if (epsilon < delta) {
-			changecounter--;
-		} else {
-			changecounter = changeIterations;
+	/**
+	 * Returns the reason why the last optimization has stopped. The optimizer
+	 * is a singleton, thus the reason can be queried with
+	 * {@code task.getInstance(SPLSimulatedAnnealing.class)}.
+	 * 
+	 * @return the reason, null while the optimization runs or if it has been
+	 *         stopped by the control
+	 */
+	public Termination getTermination() {
+		return termination;
+	}
+
+	/**
+	 * @return the speculative proposal of iteration i
+	 */
+	private SPLSpeculation.Proposal takeProposal(int i)
+			throws StopException {
+		try {
+			return speculation.take(i);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StopException();
+		}
+	}
+
+	/**
+	 * Creates a neighbor of the genotype with the random numbers of the given
+	 * stream.
+	 * 
+	 * @return the applied move, null if the operator does not report its
+	 *         moves
+	 */
+	private NeighborSPLGenotype.Move neighbor(Genotype g, Random r) {
+		if (neighbor instanceof NeighborSPLGenotype)
+			return ((NeighborSPLGenotype) neighbor).neighbor(g, r);
+		neighbor.neighbor(g);
+		return null;
+	}
+
+	/**
+	 * @return the temperature of iteration i, the cooling schedule starts
+	 *         again at the last restart
+	 */
+	private double temperature(int i) {
+		if (restartIteration < 0)
+			return coolingSchedule.getTemperature(i, iterations);
+		return restart.getReheat()
+				* coolingSchedule.getTemperature(i - restartIteration,
+						iterations - restartIteration);
+	}
+
+	/**
+	 * Restarts the optimization after iteration i. The restart draws from the
+	 * restart stream of i, which no iteration uses, thus it does not depend on
+	 * the speculation either.
+	 * 
+	 * @return the individual to continue with
+	 */
+	private Individual restart(int i, Individual x, Individual best)
+			throws TerminationException {
+		restartIteration = i;
+
+		SPLRandom r = step.restartStream(i);
+		Individual y;
+		switch (restart.getStrategy()) {
+		case BEST:
+			Genotype g = copy.copy(best.getGenotype());
+			for (int n = 0; n < restart.getPerturbation(); n++)
+				neighbor(g, r);
+			y = individualBuilder.build(g);
+			break;
+		case FRESH:
+			y = creator != null ? individualBuilder.build(creator.create(r))
+					: individualBuilder.build();
+			break;
+		default:
+			return x;
+		}
+		completer.complete(y);
+		archive.update(y);
+		population.remove(x);
+		population.add(y);
+		return y;
+	}
+
+	/**
+	 * @return true if the objective value f of the best individual is within
+	 *         the gap of the bound
+	 */
+	private boolean closeToBound(double f) {
+		if (bound == null)
+			return false;
+		double fitness = -f;
+		return (bound.getBound() - fitness)
+				/ Math.max(Math.abs(fitness), 1.0d) <= bound.getGap();
+	}
+
+	/**
+	 * Passes an improved best individual to the improvement sink.
+	 */
+	private void improved(int i, Individual best) {
+		if (improvements != null)
+			improvements.improved(i, (Solution) best.getPhenotype(), -f(best));
+	}
+
+	/**
+	 * Creates a checkpoint at the end of iteration i.
+	 */
+	private SPLCheckpoint checkpoint(int i, Individual x, Individual best) {
+		boolean hasRandomState = random instanceof SPLRandom;
+		long randomState = hasRandomState ? ((SPLRandom) random).getState()
+				: 0L;
+		return new SPLCheckpoint(i, iterations, step.getChangecounter(),
+				hasRandomState, randomState, (SPLGenotype) x.getGenotype(),
+				(SPLGenotype) best.getGenotype(), restartIteration,
+				restart != null ? restart.getRestarts() : 0);
+	}
+
+	/**
+	 * Evaluates the genotypes received from other islands.
+	 * 
+	 * @return the best received individual or null if nothing has been
+	 *         received
+	 */
+	private Individual immigrate() throws TerminationException {
+		Individual best = null;
+		for (SPLGenotype g : migration.immigrate()) {
+			Individual m = individualBuilder.build(g);
+			completer.complete(m);
+			archive.update(m);
+			if (best == null || f(m) < f(best))
+				best = m;
 		}
+		return best;
 	}
 
 }
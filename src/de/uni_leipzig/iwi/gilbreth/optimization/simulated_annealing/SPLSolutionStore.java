@@ -0,0 +1,534 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opt4j.genotype.DoubleGenotype;
+
+/**
+ * A file that keeps the best known genotype of every problem instance it has
+ * seen, to start later optimizations of the same or a similar instance from.
+ * An instance is identified by a hash of its {@link SPLInstanceFormat}
+ * encoding. If an instance is not known, the latest genotype of an instance
+ * with the same number of segments and products is offered as a near match.
+ * <p>
+ * The file is append-only: a better genotype is appended as a new record and
+ * the index in memory points to the best record of each instance. The file is
+ * read through a memory mapping, records appended by other processes are
+ * picked up at the next lookup. Appending and compaction, which rewrites the
+ * file with the best records only, hold a lock on the file
+ * &lt;store&gt;.lock, thus several processes can share a store. A record that
+ * is incomplete because its writer died is ignored and overwritten by the
+ * next append.
+ * <p>
+ * The records are kept in generation files &lt;store&gt;.1, &lt;store&gt;.2
+ * and so on, the store file itself only names the current generation. A
+ * compaction writes the next generation and switches the store file to it,
+ * no file is renamed, truncated or replaced while it is open, which only
+ * works on POSIX systems. A superseded generation is deleted right away on
+ * POSIX systems; on Windows a file that is still open or mapped by a process
+ * cannot be deleted, it is deleted by a later compaction. A store of the
+ * first version keeps its records in the store file itself, they move into
+ * a generation file at the first compaction.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLSolutionStore {
+
+	/**
+	 * A stored genotype.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public static class Match {
+		public final SPLGenotype genotype;
+		public final double fitness;
+		/**
+		 * true if the genotype has been found for the same instance, false
+		 * for a near match
+		 */
+		public final boolean exact;
+
+		Match(SPLGenotype genotype, double fitness, boolean exact) {
+			this.genotype = genotype;
+			this.fitness = fitness;
+			this.exact = exact;
+		}
+	}
+
+	private static class Entry {
+		final long offset;
+		final int length;
+		final long hash;
+		final int segments;
+		final int products;
+		final double fitness;
+
+		Entry(long offset, int length, long hash, int segments,
+				int products, double fitness) {
+			this.offset = offset;
+			this.length = length;
+			this.hash = hash;
+			this.segments = segments;
+			this.products = products;
+			this.fitness = fitness;
+		}
+	}
+
+	private static final int MAGIC = 0x53504c53; // "SPLS"
+	private static final int VERSION = 2;
+	// the records are in the store file itself
+	private static final int VERSION_1 = 1;
+
+	// magic, version, generation of the successor, generation of the file;
+	// the successor of the store file is the current generation
+	private static final int HEADER = 16;
+	private static final int SUPERSEDED = 8;
+
+	// hash, segments, products and fitness in front of the genotype
+	private static final int RECORD = 24;
+
+	// compaction starts when the file has more dead than live records
+	private static final int MIN_DEAD = 16;
+
+	// file locks are held per process, the threads of this process are
+	// serialized before
+	private static final Object PROCESS_LOCK = new Object();
+
+	private final File file;
+	private final File lock;
+
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private MappedByteBuffer header;
+	private MappedByteBuffer map;
+	private int generation;
+
+	// the end of the last complete record that has been read
+	private long scanned;
+	private int records;
+
+	private final Map<Long, Entry> best = new HashMap<Long, Entry>();
+	private final Map<Long, Entry> latest = new HashMap<Long, Entry>();
+
+	/**
+	 * Opens a store, creates it if it does not exist.
+	 * 
+	 * @param file
+	 *            the file of the store
+	 * @throws IOException
+	 *             if the file cannot be opened or is not a store
+	 */
+	public SPLSolutionStore(File file) throws IOException {
+		this.file = file;
+		this.lock = new File(file.getPath() + ".lock");
+		synchronized (PROCESS_LOCK) {
+			RandomAccessFile l = lock();
+			try {
+				open();
+			} finally {
+				l.close();
+			}
+		}
+	}
+
+	/**
+	 * Computes the key of an instance.
+	 * 
+	 * @param problemDescription
+	 *            the instance
+	 * @return the first 64 bits of the SHA-1 hash of its binary encoding
+	 */
+	public static long hash(SPLProblemDescription problemDescription) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		DataOutputStream out = new DataOutputStream(new DigestOutputStream(
+				new OutputStream() {
+					@Override
+					public void write(int b) {
+						// only the digest is needed
+					}
+				}, digest));
+		try {
+			SPLInstanceFormat.write(out, problemDescription);
+			out.flush();
+		} catch (IOException e) {
+			// cannot happen without output
+			throw new IllegalStateException(e);
+		}
+		return ByteBuffer.wrap(digest.digest()).getLong();
+	}
+
+	/**
+	 * Looks up the best known genotype of an instance or, if the instance is
+	 * not known, the latest genotype of an instance with the same dimensions.
+	 * The prices of a near match are moved into the price bounds of the
+	 * instance.
+	 * 
+	 * @param problemDescription
+	 *            the instance
+	 * @return the genotype or null if there is neither an exact nor a near
+	 *         match
+	 * @throws IOException
+	 *             if reading the store fails
+	 */
+	public synchronized Match lookup(SPLProblemDescription problemDescription)
+			throws IOException {
+		refresh();
+
+		Entry entry = best.get(hash(problemDescription));
+		boolean exact = entry != null;
+		if (entry == null)
+			entry = latest.get(dimensions(problemDescription.getCustomer()
+					.numberOfSegments(), problemDescription.getFirm()
+					.NumberOfProducts()));
+		if (entry == null)
+			return null;
+
+		byte[] data = new byte[entry.length - RECORD];
+		ByteBuffer view = map.duplicate();
+		view.position((int) entry.offset + 4 + RECORD);
+		view.get(data);
+		SPLGenotype genotype = new SPLGenotypeCodec(problemDescription)
+				.fromBytes(data);
+
+		if (!exact) {
+			DoubleGenotype p = genotype.getP();
+			for (int j = 1; j < p.size(); j++) {
+				p.set(j, Math.max(problemDescription.lowerPriceBound(j),
+						Math.min(problemDescription.upperPriceBound(j), p
+								.get(j))));
+			}
+		}
+		return new Match(genotype, entry.fitness, exact);
+	}
+
+	/**
+	 * Stores a genotype if it is better than the best known one of the
+	 * instance.
+	 * 
+	 * @param problemDescription
+	 *            the instance
+	 * @param genotype
+	 *            the genotype
+	 * @param fitness
+	 *            the fitness of the genotype, see
+	 *            {@link SPLEvaluator#fitness(Solution)}
+	 * @return true if the genotype has been stored
+	 * @throws IOException
+	 *             if writing the store fails
+	 */
+	public synchronized boolean offer(SPLProblemDescription problemDescription,
+			SPLGenotype genotype, double fitness) throws IOException {
+		long hash = hash(problemDescription);
+		byte[] data = new SPLGenotypeCodec(problemDescription)
+				.toBytes(genotype);
+
+		synchronized (PROCESS_LOCK) {
+			RandomAccessFile l = lock();
+			try {
+				refresh();
+				Entry known = best.get(hash);
+				if (known != null && known.fitness >= fitness)
+					return false;
+
+				// the length is written last, a record without it is
+				// overwritten by the next append; a mapped file cannot be
+				// truncated on every platform
+				ByteBuffer record = ByteBuffer.allocate(RECORD + data.length
+						+ 4);
+				record.putLong(hash);
+				record.putInt(problemDescription.getCustomer()
+						.numberOfSegments());
+				record.putInt(problemDescription.getFirm().NumberOfProducts());
+				record.putDouble(fitness);
+				record.put(data);
+				// ends the records in front of an incomplete one
+				record.putInt(0);
+				record.flip();
+				long position = scanned + 4;
+				while (record.hasRemaining())
+					position += channel.write(record, position);
+				channel.force(false);
+				channel.write(intBuffer(RECORD + data.length), scanned);
+				channel.force(false);
+
+				refresh();
+				if (records - best.size() > Math.max(MIN_DEAD, best.size()))
+					rewrite();
+				return true;
+			} finally {
+				l.close();
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the file with the best record of each instance.
+	 * 
+	 * @throws IOException
+	 *             if writing the store fails
+	 */
+	public synchronized void compact() throws IOException {
+		synchronized (PROCESS_LOCK) {
+			RandomAccessFile l = lock();
+			try {
+				rewrite();
+			} finally {
+				l.close();
+			}
+		}
+	}
+
+	/**
+	 * Compacts the file into the next generation, has to hold the lock.
+	 */
+	private void rewrite() throws IOException {
+		refresh();
+
+		List<Entry> entries = new ArrayList<Entry>(best.values());
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return e1.offset < e2.offset ? -1
+						: (e1.offset == e2.offset ? 0 : 1);
+			}
+		});
+
+		int next = generation + 1;
+		RandomAccessFile out = new RandomAccessFile(generation(next), "rw");
+		try {
+			out.setLength(0);
+			FileChannel target = out.getChannel();
+			target.write(newHeader(next));
+			for (Entry entry : entries) {
+				ByteBuffer record = map.duplicate();
+				record.position((int) entry.offset);
+				record.limit((int) entry.offset + 4 + entry.length);
+				while (record.hasRemaining())
+					target.write(record);
+			}
+			target.force(false);
+		} finally {
+			out.close();
+		}
+
+		// switches the store file to the new generation, then tells the
+		// other processes on the current one to reopen the store
+		RandomAccessFile store = new RandomAccessFile(file, "rw");
+		try {
+			store.getChannel().write(intBuffer(next), SUPERSEDED);
+			store.getChannel().force(false);
+		} finally {
+			store.close();
+		}
+		if (generation != 0) {
+			channel.write(intBuffer(next), SUPERSEDED);
+			channel.force(false);
+		}
+
+		int superseded = generation;
+		close();
+		// fails on Windows for a file that is still mapped, the next
+		// compaction tries again
+		for (int g = 1; g <= superseded; g++)
+			generation(g).delete();
+		open();
+	}
+
+	/**
+	 * @return the number of instances in the store
+	 */
+	public synchronized int size() throws IOException {
+		refresh();
+		return best.size();
+	}
+
+	/**
+	 * Closes the file, the store must not be used afterwards.
+	 */
+	public synchronized void close() throws IOException {
+		header = null;
+		map = null;
+		raf.close();
+	}
+
+	/**
+	 * Locks the store against other processes, the lock is released by
+	 * closing the returned file.
+	 */
+	private RandomAccessFile lock() throws IOException {
+		RandomAccessFile l = new RandomAccessFile(lock, "rw");
+		try {
+			l.getChannel().lock();
+		} catch (IOException e) {
+			l.close();
+			throw e;
+		}
+		return l;
+	}
+
+	/**
+	 * Opens the current generation and reads all records, has to hold the
+	 * lock.
+	 */
+	private void open() throws IOException {
+		generation = current();
+		File data = generation(generation);
+		raf = new RandomAccessFile(data, "rw");
+		channel = raf.getChannel();
+		if (channel.size() < HEADER) {
+			channel.write(newHeader(generation), 0);
+			channel.force(false);
+		}
+		header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+		if (!isStore(header)) {
+			header = null;
+			raf.close();
+			throw new IOException(data + " is not a solution store.");
+		}
+
+		best.clear();
+		latest.clear();
+		records = 0;
+		scanned = HEADER;
+		map = null;
+		refresh();
+	}
+
+	/**
+	 * Reads the generation named by the store file, creates the store if it
+	 * does not exist.
+	 */
+	private int current() throws IOException {
+		RandomAccessFile store = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel c = store.getChannel();
+			ByteBuffer h = ByteBuffer.allocate(HEADER);
+			if (c.size() < HEADER) {
+				h = newHeader(0);
+				h.putInt(SUPERSEDED, 1);
+				c.write(h, 0);
+				c.force(false);
+				return 1;
+			}
+			while (h.hasRemaining())
+				if (c.read(h, h.position()) < 0)
+					break;
+			if (!isStore(h))
+				throw new IOException(file + " is not a solution store.");
+			return h.getInt(SUPERSEDED);
+		} finally {
+			store.close();
+		}
+	}
+
+	/**
+	 * @return the file of a generation, the store file for 0
+	 */
+	private File generation(int generation) {
+		return generation == 0 ? file : new File(file.getPath() + "."
+				+ generation);
+	}
+
+	private static boolean isStore(ByteBuffer header) {
+		int version = header.getInt(4);
+		return header.getInt(0) == MAGIC
+				&& (version == VERSION || version == VERSION_1);
+	}
+
+	/**
+	 * Reads the records appended since the last call and follows a
+	 * compaction by another process.
+	 */
+	private void refresh() throws IOException {
+		if (header.getInt(SUPERSEDED) != 0) {
+			close();
+			open();
+			return;
+		}
+
+		long size = channel.size();
+		if (map == null || size != map.capacity()) {
+			if (size > Integer.MAX_VALUE)
+				throw new IOException(file + " is too large.");
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+
+		while (scanned + 4 <= size) {
+			int length = map.getInt((int) scanned);
+			if (length < RECORD || scanned + 4 + length > size)
+				break;
+			int at = (int) scanned + 4;
+			long hash = map.getLong(at);
+			Entry entry = new Entry(scanned, length, hash,
+					map.getInt(at + 8), map.getInt(at + 12),
+					map.getDouble(at + 16));
+
+			Entry known = best.get(hash);
+			if (known == null || entry.fitness > known.fitness)
+				best.put(hash, entry);
+			latest.put(dimensions(entry.segments, entry.products), entry);
+			records++;
+			scanned += 4 + length;
+		}
+	}
+
+	private static long dimensions(int segments, int products) {
+		return ((long) segments << 32) | products;
+	}
+
+	private static ByteBuffer newHeader(int generation) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(0);
+		header.putInt(generation);
+		header.flip();
+		return header;
+	}
+
+	private static ByteBuffer intBuffer(int value) {
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.putInt(value);
+		buffer.flip();
+		return buffer;
+	}
+}
+// EOF
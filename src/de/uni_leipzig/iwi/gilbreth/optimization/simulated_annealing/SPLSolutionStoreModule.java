@@ -0,0 +1,49 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Constant;
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Starts the {@link SPLSimulatedAnnealing} from the best genotype known for
+ * the problem or a problem of the same size, and keeps the best genotype of
+ * every run in a {@link SPLSolutionStore}. Uses the checkpointer of the
+ * optimizer, thus it must not be combined with the
+ * {@link SPLCheckpointModule}.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLSolutionStoreModule extends Opt4JModule {
+
+	@Constant(value = "storeFile")
+	protected String storeFile = "spl.store";
+
+	@Override
+	public void config() {
+		bind(SPLCheckpointer.class).to(SPLStoreCheckpointer.class);
+	}
+
+	public String getStoreFile() {
+		return storeFile;
+	}
+
+	public void setStoreFile(String storeFile) {
+		this.storeFile = storeFile;
+	}
+}
+// EOF
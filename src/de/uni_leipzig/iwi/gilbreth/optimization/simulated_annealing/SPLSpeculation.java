@@ -0,0 +1,95 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.core.Objectives;
+import org.opt4j.core.problem.Genotype;
+import org.opt4j.core.problem.Phenotype;
+
+/**
+ * Creates and evaluates the proposals of the next iterations of the
+ * {@link SPLSimulatedAnnealing} ahead of time. The proposal of iteration i is
+ * a neighbor of the current genotype created with the random stream i, thus
+ * it does not depend on the proposals before. It remains valid as long as the
+ * current genotype does not change. If bound, the optimizer takes the
+ * proposals in order and restarts the speculation whenever it accepts a
+ * proposal.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public interface SPLSpeculation {
+
+	/**
+	 * An evaluated neighbor of the current genotype, the move that created
+	 * it and the random number that decides on its acceptance.
+	 */
+	public static class Proposal {
+		public final Genotype genotype;
+		public final Phenotype phenotype;
+		public final Objectives objectives;
+		public final NeighborSPLGenotype.Move move;
+		public final double random;
+
+		public Proposal(Genotype genotype, Phenotype phenotype,
+				Objectives objectives, NeighborSPLGenotype.Move move,
+				double random) {
+			this.genotype = genotype;
+			this.phenotype = phenotype;
+			this.objectives = objectives;
+			this.move = move;
+			this.random = random;
+		}
+	}
+
+	/**
+	 * Called once before the optimization starts.
+	 * 
+	 * @param seed
+	 *            the seed of the random streams
+	 * @param iterations
+	 *            the number of iterations of the optimization
+	 */
+	public void start(long seed, int iterations);
+
+	/**
+	 * Called once after the optimization has finished.
+	 */
+	public void stop();
+
+	/**
+	 * Discards all proposals and speculates from the given genotype on.
+	 * 
+	 * @param iteration
+	 *            the next iteration of the optimizer
+	 * @param current
+	 *            the current genotype
+	 */
+	public void restart(int iteration, Genotype current);
+
+	/**
+	 * Returns the proposal of an iteration, waits until it is evaluated.
+	 * 
+	 * @param iteration
+	 *            the iteration, the one after the previous call or the one
+	 *            passed to {@link #restart(int, Genotype)}
+	 * @return the proposal
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public Proposal take(int iteration) throws InterruptedException;
+}
+// EOF
@@ -0,0 +1,62 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Constant;
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Lets the {@link SPLSimulatedAnnealing} evaluate the proposals of the next
+ * iterations in parallel. Each iteration draws its random numbers from its
+ * own stream, thus the search is the same for any number of threads and
+ * depth and the same as without this module. Cannot be combined with the
+ * {@link SPLMoveSelectionModule}, whose choice depends on the outcome of the
+ * previous iteration. Every thread keeps its own surplus index of the
+ * {@link SPLEvaluator}, whose size grows with the number of segments.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLSpeculationModule extends Opt4JModule {
+
+	@Constant(value = "speculationThreads")
+	protected int speculationThreads = 4;
+
+	@Constant(value = "speculationDepth")
+	protected int speculationDepth = 32;
+
+	@Override
+	public void config() {
+		bind(SPLSpeculation.class).to(SPLParallelSpeculation.class);
+	}
+
+	public int getSpeculationDepth() {
+		return speculationDepth;
+	}
+
+	public int getSpeculationThreads() {
+		return speculationThreads;
+	}
+
+	public void setSpeculationDepth(int speculationDepth) {
+		this.speculationDepth = speculationDepth;
+	}
+
+	public void setSpeculationThreads(int speculationThreads) {
+		this.speculationThreads = speculationThreads;
+	}
+}
+// EOF
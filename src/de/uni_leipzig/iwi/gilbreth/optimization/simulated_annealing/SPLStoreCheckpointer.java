@@ -0,0 +1,107 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.opt4j.core.optimizer.Iterations;
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+
+/**
+ * Starts the {@link SPLSimulatedAnnealing} from the best known genotype of a
+ * {@link SPLSolutionStore} and stores the best genotype of the run when the
+ * optimization has finished. Without an exact or near match in the store the
+ * optimization starts as usual.
+ * <p>
+ * The optimizer hands over a checkpoint in every iteration, of which only
+ * the reference to the best genotype is kept. Genotypes are not changed after
+ * their creation, thus nothing is copied.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLStoreCheckpointer implements SPLCheckpointer {
+
+	private final SPLProblem problem;
+	private final SPLDecoder decoder;
+	private final SPLEvaluator evaluator;
+	private final int iterations;
+	private final int changeIterations;
+	private final File file;
+
+	private SPLSolutionStore store = null;
+	private SPLGenotype best = null;
+
+	@Inject
+	public SPLStoreCheckpointer(SPLProblem problem, SPLDecoder decoder,
+			SPLEvaluator evaluator, @Iterations int iterations,
+			@Constant(value = "change") int changeIterations,
+			@Constant(value = "storeFile") String file) {
+		this.problem = problem;
+		this.decoder = decoder;
+		this.evaluator = evaluator;
+		this.iterations = iterations;
+		this.changeIterations = changeIterations;
+		this.file = new File(file);
+	}
+
+	@Override
+	public int getInterval() {
+		return 1;
+	}
+
+	@Override
+	public SPLCheckpoint restore() {
+		try {
+			store = new SPLSolutionStore(file);
+			SPLSolutionStore.Match match = store.lookup(problem
+					.getSPLProblemDescription());
+			if (match == null)
+				return null;
+			return new SPLWarmStart(match.genotype, iterations,
+					changeIterations).restore();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read the solution store "
+					+ file, e);
+		}
+	}
+
+	@Override
+	public void save(SPLCheckpoint checkpoint) {
+		best = checkpoint.getBest();
+	}
+
+	@Override
+	public void close() {
+		if (store == null)
+			return;
+		try {
+			if (best != null) {
+				double fitness = evaluator.fitness(decoder.decode(best));
+				store.offer(problem.getSPLProblemDescription(), best, fitness);
+			}
+			store.close();
+		} catch (IOException e) {
+			System.err.println("The best genotype has not been stored in "
+					+ file + ": " + e.getMessage());
+		}
+		store = null;
+	}
+}
+// EOF
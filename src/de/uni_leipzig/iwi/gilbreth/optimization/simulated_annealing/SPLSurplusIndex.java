@@ -0,0 +1,185 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.util.Arrays;
+
+/**
+ * Maintains for every segment the surplus (WTP minus price) of the produced
+ * products in a tournament tree. A price change or a product that enters or
+ * leaves the product line updates the trees in O(I log J), the best surplus a
+ * segment can get from the product line is available in O(1). The number of
+ * products that give a segment more than a certain surplus is counted by
+ * descending only into subtrees that contain such a product.
+ * 
+ * <p>
+ * The index keeps the prices and the product line it represents. It is
+ * updated by passing the prices and the product line of the next solution,
+ * only the products that differ are updated. Solutions of a local search
+ * differ in few products, thus the index follows them cheaply. The index is
+ * not thread safe.
+ * </p>
+ * 
+ * <p>
+ * The trees take 16 * I * L bytes, where L is the number of products rounded
+ * up to a power of two.
+ * </p>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLSurplusIndex {
+
+	private final SPLProblemDescription.Customer customer;
+	private final int nrOfSegments;
+	private final int nrOfProducts;
+
+	// number of leaves per tree, a power of two
+	private final int leaves;
+
+	// the trees of all segments, segment i occupies [i * 2 * leaves, (i + 1) *
+	// 2 * leaves), node 1 is the root, the children of node n are 2n and 2n+1
+	private final double[] tree;
+
+	// the state represented by the index
+	private final double[] p;
+	private final boolean[] y;
+
+	public SPLSurplusIndex(SPLProblemDescription problemDescription) {
+		this.customer = problemDescription.getCustomer();
+		this.nrOfSegments = customer.numberOfSegments();
+		this.nrOfProducts = problemDescription.getFirm().NumberOfProducts();
+
+		int l = 1;
+		while (l < nrOfProducts)
+			l <<= 1;
+		this.leaves = l;
+
+		if ((long) nrOfSegments * 2 * leaves > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The surplus index of "
+					+ nrOfSegments + " segments and " + nrOfProducts
+					+ " products exceeds the size of an array.");
+		this.tree = new double[nrOfSegments * 2 * leaves];
+		Arrays.fill(tree, Double.NEGATIVE_INFINITY);
+		this.p = new double[nrOfProducts];
+		this.y = new boolean[nrOfProducts];
+	}
+
+	/**
+	 * Brings the index to the given prices and product line.
+	 * 
+	 * @param p
+	 *            the prices
+	 * @param y
+	 *            the produced products
+	 */
+	public void update(double[] p, boolean[] y) {
+		for (int j = 0; j < nrOfProducts; j++) {
+			if (y[j] != this.y[j] || (y[j] && p[j] != this.p[j]))
+				set(j, y[j], p[j]);
+		}
+	}
+
+	/**
+	 * Forgets the represented state, e.g. after the willingness to pay has
+	 * changed. The next update rebuilds the index completely.
+	 */
+	public void clear() {
+		Arrays.fill(tree, Double.NEGATIVE_INFINITY);
+		Arrays.fill(y, false);
+	}
+
+	/**
+	 * Sets price and production of a single product.
+	 * 
+	 * @param j
+	 *            the product
+	 * @param produced
+	 *            true if j is part of the product line
+	 * @param price
+	 *            the price of j
+	 */
+	public void set(int j, boolean produced, double price) {
+		p[j] = price;
+		y[j] = produced;
+
+		for (int i = 0; i < nrOfSegments; i++) {
+			int base = i * 2 * leaves;
+			int node = leaves + j;
+			tree[base + node] = produced ? customer.getWTPOfProduct(j, i) - price
+					: Double.NEGATIVE_INFINITY;
+
+			for (node >>>= 1; node > 0; node >>>= 1) {
+				double max = Math.max(tree[base + 2 * node], tree[base + 2
+						* node + 1]);
+				if (tree[base + node] == max)
+					break; // the upper nodes do not change either
+				tree[base + node] = max;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the tree of segment i for the represented prices and product
+	 * line, e.g. after its willingness to pay has changed.
+	 * 
+	 * @param i
+	 *            the segment
+	 */
+	public void refresh(int i) {
+		int base = i * 2 * leaves;
+		for (int j = 0; j < nrOfProducts; j++) {
+			tree[base + leaves + j] = y[j] ? customer.getWTP(i, j) - p[j]
+					: Double.NEGATIVE_INFINITY;
+		}
+		for (int node = leaves - 1; node > 0; node--) {
+			tree[base + node] = Math.max(tree[base + 2 * node], tree[base + 2
+					* node + 1]);
+		}
+	}
+
+	/**
+	 * @param i
+	 *            the segment
+	 * @return the highest surplus segment i gets from a produced product or
+	 *         negative infinity if nothing is produced
+	 */
+	public double best(int i) {
+		return tree[i * 2 * leaves + 1];
+	}
+
+	/**
+	 * @param i
+	 *            the segment
+	 * @param surplus
+	 *            the surplus to beat
+	 * @return the number of produced products that give segment i more than
+	 *         the given surplus
+	 */
+	public int countBetter(int i, double surplus) {
+		return countBetter(i * 2 * leaves, 1, surplus);
+	}
+
+	private int countBetter(int base, int node, double surplus) {
+		if (!(surplus < tree[base + node]))
+			return 0;
+		if (node >= leaves)
+			return 1;
+		return countBetter(base, 2 * node, surplus)
+				+ countBetter(base, 2 * node + 1, surplus);
+	}
+}
+// EOF
@@ -0,0 +1,344 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregates conjoint survey responses into the customer model while they
+ * arrive. Every response names a segment and the willingness to pay of one
+ * respondent for each product. The aggregator keeps the sum of the
+ * willingness to pay and the number of respondents per segment in primitive
+ * arrays and publishes {@link SPLProblemDescription.Customer} snapshots with
+ * the mean willingness to pay and a demand proportional to the respondents.
+ * 
+ * <p>
+ * A snapshot shares the rows of all segments without new responses with the
+ * previous snapshot, only the changed rows are new arrays. Published rows
+ * are never changed afterwards, thus a snapshot can be handed to an
+ * optimizer while the aggregation goes on. {@link #toUpdate(int[])} turns
+ * the changes of a snapshot into a {@link SPLMarketUpdate} for the
+ * {@link SPLReoptimizer}.
+ * </p>
+ * 
+ * <p>
+ * Responses are read from a file or pipe with one response per line:
+ * 
+ * <pre>
+ * &lt;segment&gt; &lt;wtp product 0&gt; &lt;wtp product 1&gt; ...
+ * </pre>
+ * 
+ * Empty lines and lines starting with # are skipped.
+ * </p>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLSurveyAggregator {
+
+	/**
+	 * Receives the published snapshots.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public interface SnapshotListener {
+
+		/**
+		 * Called after a snapshot has been published.
+		 * 
+		 * @param customer
+		 *            the snapshot
+		 * @param changed
+		 *            the segments with new responses since the previous
+		 *            snapshot, in ascending order
+		 */
+		public void published(SPLProblemDescription.Customer customer,
+				int[] changed);
+	}
+
+	private final int nrOfSegments;
+	private final int nrOfProducts;
+	private final double demandPerRespondent;
+
+	// the sum of the willingness to pay of segment i for product j at
+	// i * nrOfProducts + j
+	private final double[] sum;
+	private final long[] respondents;
+
+	// segments with responses since the last snapshot
+	private final boolean[] dirty;
+	private int nrOfDirty = 0;
+
+	// the rows and demand of the last snapshot
+	private final double[][] wtp;
+	private final int[] q;
+	private SPLProblemDescription.Customer snapshot;
+
+	private int publishInterval = 10000;
+	private long publishMillis = 1000L;
+	private int sinceSnapshot = 0;
+	private long lastSnapshot = System.currentTimeMillis();
+
+	private final List<SnapshotListener> listeners = new ArrayList<SnapshotListener>();
+
+	/**
+	 * Constructs a new aggregator. Until a segment has a response it keeps
+	 * the willingness to pay and demand of the prior.
+	 * 
+	 * @param prior
+	 *            the customer model before the survey
+	 * @param nrOfProducts
+	 *            the number of products, including the product 0
+	 * @param demandPerRespondent
+	 *            the demand a single respondent represents
+	 */
+	public SPLSurveyAggregator(SPLProblemDescription.Customer prior,
+			int nrOfProducts, double demandPerRespondent) {
+		if (demandPerRespondent <= 0.0d)
+			throw new IllegalArgumentException(
+					"The demand per respondent has to be positive.");
+		this.nrOfSegments = prior.numberOfSegments();
+		this.nrOfProducts = nrOfProducts;
+		this.demandPerRespondent = demandPerRespondent;
+
+		this.sum = new double[nrOfSegments * nrOfProducts];
+		this.respondents = new long[nrOfSegments];
+		this.dirty = new boolean[nrOfSegments];
+
+		this.wtp = new double[nrOfSegments][];
+		this.q = new int[nrOfSegments];
+		for (int i = 0; i < nrOfSegments; i++) {
+			wtp[i] = new double[nrOfProducts];
+			for (int j = 0; j < nrOfProducts; j++)
+				wtp[i][j] = prior.getWTP(i, j);
+			q[i] = prior.getQ(i);
+		}
+		this.snapshot = new SPLProblemDescription.Customer(q.clone(),
+				wtp.clone());
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err
+					.println("usage: SPLSurveyAggregator <segments> <products> <file|-> [demandPerRespondent] [publishInterval]");
+			System.exit(1);
+		}
+		int segments = Integer.parseInt(args[0]);
+		int products = Integer.parseInt(args[1]);
+		SPLSurveyAggregator aggregator = new SPLSurveyAggregator(
+				new SPLProblemDescription.Customer(new int[segments],
+						new double[segments][products]), products,
+				args.length > 3 ? Double.parseDouble(args[3]) : 1.0d);
+		if (args.length > 4)
+			aggregator.setPublishInterval(Integer.parseInt(args[4]));
+
+		aggregator.addListener(new SnapshotListener() {
+			@Override
+			public void published(SPLProblemDescription.Customer customer,
+					int[] changed) {
+				System.out.println("snapshot with " + changed.length
+						+ " changed segments");
+			}
+		});
+
+		InputStream in = "-".equals(args[2]) ? System.in
+				: new FileInputStream(args[2]);
+		try {
+			System.out.println(aggregator.consume(in) + " responses");
+		} finally {
+			in.close();
+		}
+	}
+
+	public void addListener(SnapshotListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(SnapshotListener listener) {
+		listeners.remove(listener);
+	}
+
+	public int getPublishInterval() {
+		return publishInterval;
+	}
+
+	public long getPublishMillis() {
+		return publishMillis;
+	}
+
+	/**
+	 * @param publishInterval
+	 *            the number of responses after which a snapshot is published
+	 */
+	public void setPublishInterval(int publishInterval) {
+		this.publishInterval = publishInterval;
+	}
+
+	/**
+	 * @param publishMillis
+	 *            the time after which a snapshot is published if there are
+	 *            new responses
+	 */
+	public void setPublishMillis(long publishMillis) {
+		this.publishMillis = publishMillis;
+	}
+
+	/**
+	 * @return the last published snapshot
+	 */
+	public synchronized SPLProblemDescription.Customer getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Adds the response of a single respondent.
+	 * 
+	 * @param segment
+	 *            the segment of the respondent
+	 * @param wtp
+	 *            the willingness to pay of the respondent for each product
+	 */
+	public synchronized void add(int segment, double[] wtp) {
+		if (segment < 0 || segment >= nrOfSegments)
+			throw new IllegalArgumentException("Segment " + segment
+					+ " does not exist.");
+		if (wtp.length != nrOfProducts)
+			throw new IllegalArgumentException("Expected " + nrOfProducts
+					+ " products, got " + wtp.length + ".");
+
+		int base = segment * nrOfProducts;
+		for (int j = 0; j < nrOfProducts; j++)
+			sum[base + j] += wtp[j];
+		respondents[segment]++;
+		if (!dirty[segment]) {
+			dirty[segment] = true;
+			nrOfDirty++;
+		}
+
+		if (++sinceSnapshot >= publishInterval
+				|| System.currentTimeMillis() - lastSnapshot >= publishMillis)
+			publish();
+	}
+
+	/**
+	 * Reads responses until the end of the input and publishes the
+	 * remaining changes.
+	 * 
+	 * @param in
+	 *            the input
+	 * @return the number of responses read
+	 * @throws IOException
+	 *             if reading fails or a line is not a valid response
+	 */
+	public long consume(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+				"UTF-8"), 1 << 16);
+		double[] values = new double[nrOfProducts];
+		long count = 0;
+		long line = 0;
+
+		for (String s = reader.readLine(); s != null; s = reader.readLine()) {
+			line++;
+			s = s.trim();
+			if (s.length() == 0 || s.charAt(0) == '#')
+				continue;
+
+			String[] token = s.split("\\s+");
+			if (token.length != nrOfProducts + 1)
+				throw new IOException("line " + line + ": expected "
+						+ (nrOfProducts + 1) + " values, got "
+						+ token.length);
+			try {
+				int segment = Integer.parseInt(token[0]);
+				for (int j = 0; j < nrOfProducts; j++)
+					values[j] = Double.parseDouble(token[j + 1]);
+				add(segment, values);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("line " + line + ": " + e.getMessage());
+			}
+			count++;
+		}
+		publish();
+		return count;
+	}
+
+	/**
+	 * Publishes a snapshot if there are new responses.
+	 * 
+	 * @return the segments that have changed since the previous snapshot
+	 */
+	public int[] publish() {
+		SPLProblemDescription.Customer customer;
+		int[] changed;
+		synchronized (this) {
+			sinceSnapshot = 0;
+			lastSnapshot = System.currentTimeMillis();
+			if (nrOfDirty == 0)
+				return new int[0];
+
+			changed = new int[nrOfDirty];
+			int n = 0;
+			for (int i = 0; i < nrOfSegments; i++) {
+				if (!dirty[i])
+					continue;
+				dirty[i] = false;
+				changed[n++] = i;
+
+				// a new row, the old one may be part of a published snapshot
+				double[] row = new double[nrOfProducts];
+				int base = i * nrOfProducts;
+				for (int j = 0; j < nrOfProducts; j++)
+					row[j] = sum[base + j] / respondents[i];
+				wtp[i] = row;
+				q[i] = (int) Math.max(1L,
+						Math.round(respondents[i] * demandPerRespondent));
+			}
+			nrOfDirty = 0;
+
+			snapshot = new SPLProblemDescription.Customer(q.clone(),
+					wtp.clone());
+			customer = snapshot;
+		}
+
+		for (SnapshotListener listener : listeners)
+			listener.published(customer, changed);
+		return changed;
+	}
+
+	/**
+	 * Creates the update that brings a problem to the current snapshot.
+	 * 
+	 * @param changed
+	 *            the segments to update, e.g. those passed to the listeners
+	 * @return the update of the willingness to pay and demand of the segments
+	 */
+	public synchronized SPLMarketUpdate toUpdate(int[] changed) {
+		SPLMarketUpdate update = new SPLMarketUpdate();
+		for (int i : changed) {
+			update.setWTP(i, wtp[i]);
+			update.setQ(i, q[i]);
+		}
+		return update;
+	}
+}
+// EOF
@@ -0,0 +1,414 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opt4j.genotype.DoubleBounds;
+import org.opt4j.genotype.DoubleGenotype;
+import org.opt4j.operator.normalize.NormalizeDouble;
+import org.opt4j.optimizer.sa.CoolingSchedule;
+import org.opt4j.optimizer.sa.CoolingSchedulesModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Runs many short optimizations, e.g. of cost variants of one instance, with
+ * little overhead per job. Other than the {@link SPLBatchRunner} a job does
+ * not create an injector and an opt4j task. The creator, neighbor, decoder
+ * and evaluator are created directly and the simulated annealing loop runs
+ * without archive and population, thus the throughput is bound by the
+ * evaluation. All jobs share the problem data, the variants of an instance
+ * share the customer, the competition and the product-asset requirements.
+ * <p>
+ * The loop shares its {@link SPLAnnealingStep} with the
+ * {@link SPLSimulatedAnnealing}, i.e. the random stream per iteration, the
+ * acceptance and the break criterion, and uses the same cooling schedule and
+ * move weights as the {@link SPLBatchRunner} (the defaults of the
+ * {@link CoolingSchedulesModule} and the given {@link SPLModule}). It has
+ * none of the hooks of the optimizer, e.g. restarts, migration or
+ * speculation.
+ * <p>
+ * At most the given number of jobs run at the same time. The sweep is
+ * structured: {@link #run(List)} does not return before every job has
+ * finished or stopped, a failing job stops all others, and {@link #cancel()}
+ * stops a running sweep from another thread.
+ * 
+ * <pre>
+ * java SPLSweep PAPER|SMALL &lt;variants&gt; &lt;spread&gt; &lt;iterations&gt; [concurrency]
+ * </pre>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLSweep {
+
+	// the number of iterations between two checks for cancellation
+	private static final int CANCEL_INTERVAL = 256;
+
+	private final Map<String, SPLProblem> instances = new LinkedHashMap<String, SPLProblem>();
+
+	private final int concurrency;
+
+	// the initialization and the move weights of the jobs
+	private final SPLModule module;
+
+	// stateless and shared by all jobs
+	private final NormalizeDouble normalize;
+
+	private CoolingSchedule coolingSchedule;
+
+	// the cancellation flag of the running sweep
+	private volatile AtomicBoolean cancelled;
+
+	/**
+	 * Creates a sweep with the defaults of the {@link SPLModule}.
+	 * 
+	 * @param concurrency
+	 *            the maximal number of jobs that run at the same time
+	 */
+	public SPLSweep(int concurrency) {
+		this(concurrency, new SPLModule());
+	}
+
+	/**
+	 * @param concurrency
+	 *            the maximal number of jobs that run at the same time
+	 * @param module
+	 *            the module whose initialization, price grid and move weights
+	 *            the jobs use
+	 */
+	public SPLSweep(int concurrency, SPLModule module) {
+		if (concurrency <= 0)
+			throw new IllegalArgumentException(
+					"The concurrency has to be positive.");
+		this.concurrency = concurrency;
+		this.module = module;
+
+		Injector injector = Guice.createInjector(new CoolingSchedulesModule());
+		this.normalize = injector.getInstance(NormalizeDouble.class);
+		this.coolingSchedule = injector.getInstance(CoolingSchedule.class);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 4) {
+			System.err
+					.println("usage: SPLSweep PAPER|SMALL <variants> <spread> <iterations> [concurrency]");
+			System.exit(1);
+		}
+
+		SPLModule.ProblemSelection selection = SPLModule.ProblemSelection
+				.valueOf(args[0]);
+		int variants = Integer.parseInt(args[1]);
+		double spread = Double.parseDouble(args[2]);
+		int iterations = Integer.parseInt(args[3]);
+		int concurrency = args.length > 4 ? Integer.parseInt(args[4])
+				: Runtime.getRuntime().availableProcessors();
+
+		SPLSweep sweep = new SPLSweep(concurrency);
+		List<String> names = sweep.addVariants(selection.name(),
+				new SPLProblem(0, 0, 0, 0.0d, 0, selection), variants, spread,
+				0L);
+
+		List<SPLBatchManifest.Job> jobs = new ArrayList<SPLBatchManifest.Job>();
+		for (int v = 0; v < names.size(); v++)
+			jobs.add(new SPLBatchManifest.Job(names.get(v), iterations, 0.0d,
+					iterations, v));
+
+		long start = System.currentTimeMillis();
+		SPLBatchRunner.Result[] results = sweep.run(jobs);
+		long millis = System.currentTimeMillis() - start;
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+				"UTF-8"));
+		out.write(SPLBatchRunner.HEADER);
+		out.write('\n');
+		for (SPLBatchRunner.Result result : results)
+			SPLBatchRunner.write(out, result);
+		out.flush();
+		System.err.println(results.length + " jobs in " + millis + " ms");
+	}
+
+	/**
+	 * Adds a problem instance the jobs can refer to by its name.
+	 * 
+	 * @param name
+	 *            the name of the instance
+	 * @param problem
+	 *            the problem
+	 */
+	public void addInstance(String name, SPLProblem problem) {
+		instances.put(name, problem);
+	}
+
+	/**
+	 * Adds cost variants of a problem. Each variable, fixed and asset cost is
+	 * multiplied by a random factor in [1 - spread, 1 + spread]. The variants
+	 * are named name#0, name#1, ... and only own their costs, everything else
+	 * is shared with the given problem.
+	 * 
+	 * @param name
+	 *            the name of the base instance
+	 * @param problem
+	 *            the base instance
+	 * @param count
+	 *            the number of variants
+	 * @param spread
+	 *            the relative deviation of the costs, in [0, 1)
+	 * @param seed
+	 *            the seed of the random factors, variant v uses the stream v
+	 *            of the seed
+	 * @return the names of the variants
+	 */
+	public List<String> addVariants(String name, SPLProblem problem, int count,
+			double spread, long seed) {
+		if (spread < 0.0d || spread >= 1.0d)
+			throw new IllegalArgumentException("The spread " + spread
+					+ " is not in [0, 1).");
+
+		SPLProblemDescription base = problem.getSPLProblemDescription();
+		SPLProblemDescription.Firm firm = base.getFirm();
+		int products = firm.NumberOfProducts();
+		int assets = firm.NumberOfAssets();
+
+		List<String> names = new ArrayList<String>(count);
+		for (int v = 0; v < count; v++) {
+			SPLRandom random = SPLRandom.stream(seed, v);
+			double[] cv = new double[products];
+			double[] cf = new double[products];
+			double[] ca = new double[assets];
+			for (int j = 0; j < products; j++) {
+				cv[j] = firm.getCv(j) * factor(random, spread);
+				cf[j] = firm.getCf(j) * factor(random, spread);
+			}
+			for (int k = 0; k < assets; k++)
+				ca[k] = firm.getCa(k) * factor(random, spread);
+
+			SPLProblemDescription variant = new SPLProblemDescription(
+					base.getCustomer(), new SPLProblemDescription.Firm(firm,
+							cv, cf, ca), base.getCompetition(),
+					base.getPriceSteps());
+			String variantName = name + "#" + v;
+			addInstance(variantName, new SPLProblem(variant));
+			names.add(variantName);
+		}
+		return names;
+	}
+
+	private static double factor(SPLRandom random, double spread) {
+		return 1.0d + spread * (2.0d * random.nextDouble() - 1.0d);
+	}
+
+	/**
+	 * Stops the running sweep. The jobs stop within a few iterations, the
+	 * running {@link #run(List)} then throws a CancellationException.
+	 */
+	public void cancel() {
+		AtomicBoolean flag = cancelled;
+		if (flag != null)
+			flag.set(true);
+	}
+
+	public CoolingSchedule getCoolingSchedule() {
+		return coolingSchedule;
+	}
+
+	public SPLProblem getInstance(String name) {
+		SPLProblem problem = instances.get(name);
+		if (problem == null)
+			throw new IllegalArgumentException("Unknown instance " + name
+					+ ".");
+		return problem;
+	}
+
+	public void setCoolingSchedule(CoolingSchedule coolingSchedule) {
+		this.coolingSchedule = coolingSchedule;
+	}
+
+	/**
+	 * Runs the jobs and waits until all of them have finished. If a job fails,
+	 * the other jobs are stopped and the failure is thrown after they have
+	 * stopped.
+	 * 
+	 * @param jobs
+	 *            the jobs
+	 * @return the results in the order of the jobs
+	 * @throws ExecutionException
+	 *             if a job fails
+	 * @throws CancellationException
+	 *             if the sweep is cancelled
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted, the jobs are stopped
+	 *             before
+	 */
+	public SPLBatchRunner.Result[] run(List<SPLBatchManifest.Job> jobs)
+			throws ExecutionException, InterruptedException {
+		final AtomicBoolean flag = new AtomicBoolean(false);
+		cancelled = flag;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+				Math.min(concurrency, jobs.size())), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "sweep");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		List<Future<SPLBatchRunner.Result>> futures = new ArrayList<Future<SPLBatchRunner.Result>>(
+				jobs.size());
+		SPLBatchRunner.Result[] results = new SPLBatchRunner.Result[jobs
+				.size()];
+		ExecutionException failure = null;
+		try {
+			for (final SPLBatchManifest.Job job : jobs) {
+				futures.add(executor.submit(new Callable<SPLBatchRunner.Result>() {
+					@Override
+					public SPLBatchRunner.Result call() {
+						return execute(job, flag);
+					}
+				}));
+			}
+
+			for (int n = 0; n < futures.size(); n++) {
+				try {
+					results[n] = futures.get(n).get();
+				} catch (ExecutionException e) {
+					if (failure == null
+							&& !(e.getCause() instanceof CancellationException))
+						failure = e;
+					flag.set(true);
+				}
+			}
+		} finally {
+			// no job outlives the sweep
+			flag.set(true);
+			executor.shutdownNow();
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// jobs check the flag every few iterations
+			}
+			cancelled = null;
+		}
+
+		if (failure != null)
+			throw failure;
+		for (SPLBatchRunner.Result result : results) {
+			if (result == null)
+				throw new CancellationException("The sweep has been cancelled.");
+		}
+		return results;
+	}
+
+	/**
+	 * Runs a single job in the calling thread.
+	 * 
+	 * @param job
+	 *            the job to run
+	 * @return the best solution found by the job
+	 */
+	public SPLBatchRunner.Result execute(SPLBatchManifest.Job job) {
+		return execute(job, new AtomicBoolean(false));
+	}
+
+	private SPLBatchRunner.Result execute(SPLBatchManifest.Job job,
+			AtomicBoolean cancelled) {
+		long start = System.currentTimeMillis();
+		SPLProblem problem = getInstance(job.instance);
+		DoubleBounds bounds = SPLCreator.priceBounds(problem
+				.getSPLProblemDescription());
+
+		SPLRandom random = new SPLRandom(job.seed);
+		SPLCreator creator = new SPLCreator(problem, random,
+				module.getInitialization(), module.isPriceGrid());
+		NeighborSPLGenotype neighbor = new NeighborSPLGenotype(problem,
+				random, normalize, module.getMoveX(), module.getMoveP(),
+				module.getMoveReassign(), module.getMoveSwap(),
+				module.getMoveDrop(), module.getMoveRaise(),
+				module.isPriceGrid());
+		SPLDecoder decoder = new SPLDecoder(problem);
+		SPLEvaluator evaluator = new SPLEvaluator(problem);
+
+		try {
+			SPLGenotype x = creator.create();
+			Solution sx = decoder.decode(x);
+			double fx = evaluator.fitness(sx);
+			Solution best = sx;
+			double fbest = fx;
+
+			// the iterations of the optimizer, which minimizes the negated
+			// fitness
+			SPLAnnealingStep step = new SPLAnnealingStep(random.getState(),
+					job.delta, job.changeIterations);
+			for (int i = 1; i < job.iterations && !step.isConverged(); i++) {
+				if (i % CANCEL_INTERVAL == 0 && cancelled.get())
+					throw new CancellationException("Job " + job.instance
+							+ " has been cancelled.");
+
+				SPLRandom r = step.stream(i);
+				SPLGenotype y = copy(x, bounds);
+				neighbor.neighbor(y, r);
+				double u = r.nextDouble();
+				Solution sy = decoder.decode(y);
+				double fy = evaluator.fitness(sy);
+
+				if (step.accept(-fx, -fy, coolingSchedule.getTemperature(i,
+						job.iterations), u)) {
+					x = y;
+					sx = sy;
+					fx = fy;
+				}
+				if (fx > fbest) {
+					best = sx;
+					fbest = fx;
+				}
+			}
+
+			return new SPLBatchRunner.Result(job, fbest, best.profit(),
+					System.currentTimeMillis() - start);
+		} finally {
+			// the pool thread runs the next job with another evaluator
+			evaluator.release();
+		}
+	}
+
+	private static SPLGenotype copy(SPLGenotype genotype, DoubleBounds bounds) {
+		DoubleGenotype p = new DoubleGenotype(bounds);
+		p.addAll(genotype.getP());
+
+		SPLGenotype copy = new SPLGenotype();
+		copy.setP(p);
+		copy.setX(new SPLBitGenotype(genotype.getX()));
+		return copy;
+	}
+}
+// EOF
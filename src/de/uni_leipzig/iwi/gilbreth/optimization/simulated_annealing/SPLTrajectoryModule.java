@@ -0,0 +1,57 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import org.opt4j.start.Constant;
+import org.opt4j.start.Opt4JModule;
+
+/**
+ * Records the trajectory of the {@link SPLSimulatedAnnealing} (objective
+ * values, acceptance, temperature and move of every iteration) into a file.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLTrajectoryModule extends Opt4JModule {
+
+	@Constant(value = "trajectoryFile")
+	protected String trajectoryFile = "spl.trajectory";
+
+	@Constant(value = "trajectoryBuffer")
+	protected int trajectoryBuffer = 1 << 16;
+
+	@Override
+	public void config() {
+		bind(SPLTrajectorySink.class).to(SPLTrajectoryRecorder.class);
+	}
+
+	public int getTrajectoryBuffer() {
+		return trajectoryBuffer;
+	}
+
+	public String getTrajectoryFile() {
+		return trajectoryFile;
+	}
+
+	public void setTrajectoryBuffer(int trajectoryBuffer) {
+		this.trajectoryBuffer = trajectoryBuffer;
+	}
+
+	public void setTrajectoryFile(String trajectoryFile) {
+		this.trajectoryFile = trajectoryFile;
+	}
+}
+// EOF
@@ -0,0 +1,169 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads trajectory files written by the {@link SPLTrajectoryRecorder} and
+ * converts them to CSV.
+ * 
+ * <pre>
+ * java SPLTrajectoryReader &lt;trajectory&gt; &gt; trajectory.csv
+ * </pre>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLTrajectoryReader {
+
+	public static final String HEADER = "iteration,fx,fy,accepted,temperature,move";
+
+	private final DataInputStream in;
+
+	private int iteration = 0;
+	private long fx = 0L;
+	private long fy = 0L;
+	private long temperature = 0L;
+	private int flags = 0;
+
+	public SPLTrajectoryReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(in)));
+
+		if (this.in.readInt() != SPLTrajectoryRecorder.MAGIC)
+			throw new IOException("The data does not contain a trajectory.");
+		int version = this.in.readInt();
+		if (version != SPLTrajectoryRecorder.VERSION)
+			throw new IOException("Unsupported trajectory version " + version);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("usage: SPLTrajectoryReader <trajectory>");
+			System.exit(1);
+		}
+
+		SPLTrajectoryReader reader = new SPLTrajectoryReader(
+				new FileInputStream(args[0]));
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+				"UTF-8"));
+		try {
+			reader.toCSV(out);
+		} finally {
+			reader.close();
+			out.flush();
+		}
+	}
+
+	/**
+	 * Reads the next record.
+	 * 
+	 * @return false if the end of the trajectory is reached
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	public boolean next() throws IOException {
+		long delta;
+		try {
+			delta = readVarLong(in);
+		} catch (EOFException e) {
+			return false;
+		}
+		iteration += (int) ((delta >>> 1) ^ -(delta & 1));
+		flags = in.readUnsignedByte();
+		fx ^= readVarLong(in);
+		fy = fx ^ readVarLong(in);
+		temperature ^= readVarLong(in);
+		return true;
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	public double getFx() {
+		return Double.longBitsToDouble(fx);
+	}
+
+	public double getFy() {
+		return Double.longBitsToDouble(fy);
+	}
+
+	public boolean isAccepted() {
+		return (flags & 1) != 0;
+	}
+
+	public double getTemperature() {
+		return Double.longBitsToDouble(temperature);
+	}
+
+	/**
+	 * @return the move that generated the neighbor or null if unknown
+	 */
+	public NeighborSPLGenotype.Move getMove() {
+		int move = flags >>> 1;
+		NeighborSPLGenotype.Move[] moves = NeighborSPLGenotype.Move.values();
+		return move == 0 || move > moves.length ? null : moves[move - 1];
+	}
+
+	/**
+	 * Writes all remaining records as CSV.
+	 * 
+	 * @param out
+	 *            the writer
+	 * @throws IOException
+	 *             if reading or writing fails
+	 */
+	public void toCSV(Writer out) throws IOException {
+		out.write(HEADER);
+		out.write('\n');
+		while (next()) {
+			NeighborSPLGenotype.Move move = getMove();
+			out.write(getIteration() + "," + getFx() + "," + getFy() + ","
+					+ isAccepted() + "," + getTemperature() + ","
+					+ (move == null ? "" : move.name()) + "\n");
+		}
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0L;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 63)
+				throw new IOException("Malformed variable length integer.");
+			b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
+// EOF
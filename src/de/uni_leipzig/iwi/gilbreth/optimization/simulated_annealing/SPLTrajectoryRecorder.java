@@ -0,0 +1,251 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.opt4j.start.Constant;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Records the trajectory of the optimization into a compressed binary file.
+ * The optimizer puts the records into a preallocated ring buffer, a background
+ * thread encodes and writes them. If the buffer is full, the record is
+ * dropped and counted, thus the optimizer never waits for the writer. The
+ * trajectory then has gaps in the iterations. The file can be converted with
+ * the {@link SPLTrajectoryReader}.
+ * 
+ * <p>
+ * Each record is encoded relative to its predecessor: the iteration as
+ * difference, the objective values and the temperature as XOR of their bit
+ * patterns (the neighbor relative to the current value), all as variable
+ * length integers. Unchanged values therefore need a single byte. The encoded
+ * stream is gzip compressed.
+ * </p>
+ * 
+ * @author Johannes Müller
+ * 
+ */
+@Singleton
+public class SPLTrajectoryRecorder implements SPLTrajectorySink {
+
+	static final int MAGIC = 0x53504c54; // "SPLT"
+	static final int VERSION = 1;
+
+	// waiting time of the writer if the buffer is empty
+	private static final long IDLE_NANOS = 1000000L;
+
+	private final String file;
+
+	// the ring buffer
+	private final int mask;
+	private final int[] iteration;
+	private final double[] fx;
+	private final double[] fy;
+	private final double[] temperature;
+	private final byte[] flags;
+
+	// records [tail, head) are filled but not written yet
+	private volatile long head = 0;
+	private volatile long tail = 0;
+	private volatile boolean closed = false;
+	private volatile boolean failed = false;
+
+	// the number of records dropped because the buffer was full, only
+	// changed by the optimizer thread
+	private volatile long dropped = 0L;
+
+	private Thread writer = null;
+
+	/**
+	 * Creates a new recorder.
+	 * 
+	 * @param file
+	 *            the trajectory file
+	 * @param bufferSize
+	 *            the number of records the buffer holds, rounded up to a power
+	 *            of two
+	 */
+	@Inject
+	public SPLTrajectoryRecorder(
+			@Constant(value = "trajectoryFile") String file,
+			@Constant(value = "trajectoryBuffer") int bufferSize) {
+		if (bufferSize <= 0)
+			throw new IllegalArgumentException(
+					"The trajectory buffer has to hold at least one record.");
+
+		int capacity = Integer.highestOneBit(bufferSize);
+		if (capacity < bufferSize)
+			capacity <<= 1;
+
+		this.file = file;
+		this.mask = capacity - 1;
+		this.iteration = new int[capacity];
+		this.fx = new double[capacity];
+		this.fy = new double[capacity];
+		this.temperature = new double[capacity];
+		this.flags = new byte[capacity];
+	}
+
+	@Override
+	public void record(int iteration, double fx, double fy, boolean accepted,
+			double temperature, NeighborSPLGenotype.Move move) {
+		if (writer == null)
+			start();
+		if (failed)
+			return;
+
+		long h = head;
+		if (h - tail > mask) {
+			dropped++;
+			return;
+		}
+
+		int n = (int) (h & mask);
+		this.iteration[n] = iteration;
+		this.fx[n] = fx;
+		this.fy[n] = fy;
+		this.temperature[n] = temperature;
+		this.flags[n] = (byte) ((accepted ? 1 : 0) | (move == null ? 0
+				: (move.ordinal() + 1) << 1));
+
+		head = h + 1;
+	}
+
+	/**
+	 * @return the number of records dropped because the buffer was full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		if (writer != null) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void start() {
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write();
+				} catch (IOException e) {
+					failed = true;
+					System.err.println("Writing trajectory " + file
+							+ " failed: " + e.getMessage());
+				}
+			}
+		}, "trajectory-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private void write() throws IOException {
+		// the delta encoding already removes most redundancy, thus the fastest
+		// compression level keeps the writer ahead of the optimizer
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(file),
+				1 << 16) {
+			{
+				def.setLevel(Deflater.BEST_SPEED);
+			}
+		};
+		try {
+			DataOutputStream header = new DataOutputStream(out);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+
+			// records are encoded into a chunk, a record takes at most
+			// 41 bytes
+			byte[] chunk = new byte[1 << 16];
+			int pos = 0;
+
+			int lastIteration = 0;
+			long lastFx = 0L;
+			long lastTemperature = 0L;
+
+			while (true) {
+				long h = head;
+				long t = tail;
+				if (t == h) {
+					if (pos > 0) {
+						out.write(chunk, 0, pos);
+						pos = 0;
+					}
+					if (closed && head == t)
+						break;
+					LockSupport.parkNanos(IDLE_NANOS);
+					continue;
+				}
+
+				for (; t < h; t++) {
+					int n = (int) (t & mask);
+					long bx = Double.doubleToRawLongBits(fx[n]);
+					long by = Double.doubleToRawLongBits(fy[n]);
+					long bt = Double.doubleToRawLongBits(temperature[n]);
+
+					pos = putVarLong(chunk, pos,
+							zigzag(iteration[n] - lastIteration));
+					chunk[pos++] = flags[n];
+					pos = putVarLong(chunk, pos, bx ^ lastFx);
+					pos = putVarLong(chunk, pos, by ^ bx);
+					pos = putVarLong(chunk, pos, bt ^ lastTemperature);
+
+					lastIteration = iteration[n];
+					lastFx = bx;
+					lastTemperature = bt;
+
+					if (pos > chunk.length - 64) {
+						out.write(chunk, 0, pos);
+						pos = 0;
+					}
+				}
+				tail = t;
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static int putVarLong(byte[] buffer, int pos, long value) {
+		while ((value & ~0x7fL) != 0) {
+			buffer[pos++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+		return pos;
+	}
+}
+// EOF
@@ -0,0 +1,55 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * Receives the trajectory of the {@link SPLSimulatedAnnealing}, i.e. one
+ * record per iteration. If bound, the optimizer calls
+ * {@link #record(int, double, double, boolean, double, NeighborSPLGenotype.Move)}
+ * in every iteration,
+ * thus implementations have to be fast and must not block.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public interface SPLTrajectorySink {
+
+	/**
+	 * Records an iteration.
+	 * 
+	 * @param iteration
+	 *            the iteration
+	 * @param fx
+	 *            the objective value of the current individual
+	 * @param fy
+	 *            the objective value of the neighbor
+	 * @param accepted
+	 *            true if the neighbor replaces the current individual
+	 * @param temperature
+	 *            the temperature of the iteration
+	 * @param move
+	 *            the move that created the neighbor, null if unknown
+	 */
+	public void record(int iteration, double fx, double fy, boolean accepted,
+			double temperature, NeighborSPLGenotype.Move move);
+
+	/**
+	 * Called once after the optimization has finished. Waits until all
+	 * records are stored.
+	 */
+	public void close();
+}
+// EOF
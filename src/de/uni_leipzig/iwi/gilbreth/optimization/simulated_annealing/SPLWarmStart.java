@@ -0,0 +1,66 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+/**
+ * Starts the {@link SPLSimulatedAnnealing} from a given genotype instead of a
+ * random one. The start is handed to the optimizer as the checkpoint of
+ * iteration 0, nothing is saved.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLWarmStart implements SPLCheckpointer {
+
+	private final SPLCheckpoint checkpoint;
+
+	/**
+	 * Constructs a new {@code SPLWarmStart}.
+	 * 
+	 * @param start
+	 *            the genotype to start from
+	 * @param iterations
+	 *            the iterations of the optimizer
+	 * @param changeIterations
+	 *            the iterations without change the optimizer tolerates
+	 */
+	public SPLWarmStart(SPLGenotype start, int iterations,
+			int changeIterations) {
+		this.checkpoint = new SPLCheckpoint(0, iterations, changeIterations,
+				false, 0L, start, start);
+	}
+
+	@Override
+	public int getInterval() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public SPLCheckpoint restore() {
+		return checkpoint;
+	}
+
+	@Override
+	public void save(SPLCheckpoint checkpoint) {
+		// nothing to save
+	}
+
+	@Override
+	public void close() {
+		// nothing to close
+	}
+}
+// EOF
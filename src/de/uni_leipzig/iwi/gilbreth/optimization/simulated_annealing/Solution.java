@@ -26,7 +26,9 @@ import org.opt4j.core.problem.Phenotype;
  * functional dependencies that determine the profit of a specific solution to
  * the problem. The decision variables x and p vary and depend therefore on the
  * genotype. The values y and r_k are derived from x and therefore calculated
- * from this value.
+ * from this value. The profit is calculated once and kept until x or p is
+ * set, thus the arrays returned by {@link #getX()} and {@link #getP()} must
+ * not be changed.
  * 
  * @author Johannes Müller
  * 
@@ -56,11 +58,41 @@ public class Solution implements Phenotype {
 			return Double.compare(this.delta_profit, o.delta_profit);
 		}
 	}
+	/**
+	 * Receives the progress of a long running calculation.
+	 * 
+	 * @author Johannes Müller
+	 * 
+	 */
+	public interface Progress {
+
+		/**
+		 * @param done
+		 *            the number of finished steps
+		 * @param total
+		 *            the total number of steps
+		 * @return false to abort the calculation
+		 */
+		public boolean update(int done, int total);
+	}
+
 	// ---- The values that are determined by the genotype
+	// the segment assignment, derived from the assignment vector on demand
 	private boolean[][] x;
 
+	// the product of each segment, -1 if a segment has none or several
+	// products assigned, derived from x on demand
+	private int[] assignment = null;
+
 	private double[] p;
 
+	// the indices of the prices in the price grid, null if the prices are
+	// not restricted to the grid
+	private int[] priceIndex = null;
+
+	// the profit, NaN until it is calculated
+	private double profit = Double.NaN;
+
 	// ---- Constructor Section -------
 
 	// ---- The problem description that determines the constant values of a
@@ -88,6 +120,24 @@ public class Solution implements Phenotype {
 		this.problemDescription = problemDescription;
 	}
 
+	/**
+	 * Creates a new solution in which every segment has exactly one product
+	 * assigned. The assignment matrix is only built if it is requested.
+	 * 
+	 * @param assignment
+	 *            the product of each segment
+	 * @param p
+	 *            the prices of the products
+	 * @param problemDescription
+	 *            the problem description
+	 */
+	public Solution(int[] assignment, double[] p,
+			SPLProblemDescription problemDescription) {
+		this.assignment = assignment;
+		this.p = p;
+		this.problemDescription = problemDescription;
+	}
+
 	/**
 	 * Copy constructor. Creates a new Solution on the basis of a given
 	 * solution.
@@ -97,7 +147,10 @@ public class Solution implements Phenotype {
 	 */
 	public Solution(Solution s) {
 		this.p = copy(s.p);
-		this.x = copy(s.x);
+		this.x = s.x == null ? null : copy(s.x);
+		this.assignment = s.assignment == null ? null : s.assignment.clone();
+		this.priceIndex = s.priceIndex == null ? null : s.priceIndex.clone();
+		this.profit = s.profit;
 		this.problemDescription = s.problemDescription;
 	}
 
@@ -106,7 +159,7 @@ public class Solution implements Phenotype {
 	 * @return the asset step cost incurred by this solution
 	 */
 	public double assetStepCost() {
-		return assetStepCost(x);
+		return assetStepCost(determineY());
 	}
 
 	/**
@@ -114,10 +167,29 @@ public class Solution implements Phenotype {
 	 * @return the asset step cost incurred by this solution
 	 */
 	protected double assetStepCost(boolean[][] _x) {
+		return assetStepCost(determineY(_x));
+	}
+
+	/**
+	 * 
+	 * @return the asset step cost incurred by the product line y
+	 */
+	private double assetStepCost(boolean[] y) {
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		boolean[] rk = new boolean[f.NumberOfAssets()];
 		double cost = 0.0d;
-		boolean[] rk = determineRk(_x);
-		for (int k = 0; k < problemDescription.getFirm().NumberOfAssets(); k++) {
-			cost += rk[k] ? problemDescription.getFirm().getCa(k) : 0.0d;
+
+		// visit only the assets actually required by produced products
+		for (int j = 0; j < y.length; j++) {
+			if (!y[j])
+				continue;
+			for (int n = 0; n < f.numberOfAssetsOf(j); n++) {
+				int k = f.getAssetOf(j, n);
+				if (!rk[k]) {
+					rk[k] = true;
+					cost += f.getCa(k);
+				}
+			}
 		}
 		return cost;
 	}
@@ -130,18 +202,74 @@ public class Solution implements Phenotype {
 	 *         importance to the profit
 	 */
 	public ArrayList<AssetContainer> calculateAssetImportance() {
+		return calculateAssetImportance(null);
+	}
+
+	/**
+	 * Calculates a List of contributes of single assets to the overall profit
+	 * of a SPL and reports the progress after each asset.
+	 * 
+	 * @param progress
+	 *            the receiver of the progress, may be null
+	 * @return a list of integer values naming the assets ordered by their
+	 *         importance to the profit, null if the calculation has been
+	 *         aborted
+	 */
+	public ArrayList<AssetContainer> calculateAssetImportance(Progress progress) {
 		ArrayList<AssetContainer> assets = new ArrayList<AssetContainer>();
-		int nrOfAssets = problemDescription.getFirm().NumberOfAssets();
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		int nrOfAssets = f.NumberOfAssets();
+
+		boolean[] y = determineY();
+		double[] margin = productContributionMargins();
+
+		// usage[k] counts the produced products that require asset k
+		int[] usage = new int[nrOfAssets];
+		double profit = 0.0d;
+		for (int j = 0; j < y.length; j++) {
+			if (!y[j])
+				continue;
+			profit += margin[j] - f.getCf(j);
+			for (int n = 0; n < f.numberOfAssetsOf(j); n++) {
+				usage[f.getAssetOf(j, n)]++;
+			}
+		}
+		for (int k = 0; k < nrOfAssets; k++) {
+			profit -= usage[k] > 0 ? f.getCa(k) : 0.0d;
+		}
 
-		boolean[][] x_temp = null;
 		double profit_temp = 0.0d;
 
 		for (int k = 0; k < nrOfAssets; k++) {
-			x_temp = generateTempX(k);
-			profit_temp = profit(x_temp);
+			// without k no product requiring k can be sold, so withdraw their
+			// margin and fixed cost and save the cost of every asset that is
+			// no longer required by any other product
+			profit_temp = profit;
+			for (int n = 0; n < f.numberOfProductsUsing(k); n++) {
+				int j = f.getProductUsing(k, n);
+				if (!y[j])
+					continue;
+				profit_temp -= margin[j] - f.getCf(j);
+				for (int m = 0; m < f.numberOfAssetsOf(j); m++) {
+					int l = f.getAssetOf(j, m);
+					if (--usage[l] == 0)
+						profit_temp += f.getCa(l);
+				}
+			}
+			for (int n = 0; n < f.numberOfProductsUsing(k); n++) {
+				int j = f.getProductUsing(k, n);
+				if (!y[j])
+					continue;
+				for (int m = 0; m < f.numberOfAssetsOf(j); m++) {
+					usage[f.getAssetOf(j, m)]++;
+				}
+			}
 			// As smaller profit_temp as more important k is for the profit
 			// without k is so and so much lower profit generated
 			assets.add(new AssetContainer(profit_temp, k));
+
+			if (progress != null && !progress.update(k + 1, nrOfAssets))
+				return null;
 		}
 
 		Collections.sort(assets);
@@ -156,7 +284,21 @@ public class Solution implements Phenotype {
 	 * @return the generated revenue from this solution
 	 */
 	public double contributionMargin() {
-		return contributionMargin(x);
+		int[] a = getAssignment();
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		double revenue = 0.0d;
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] >= 0) {
+				revenue += c.getQ(i) * (p[a[i]] - f.getCv(a[i]));
+			} else {
+				for (int j = 0; j < f.NumberOfProducts(); j++) {
+					revenue += getX()[i][j] ? c.getQ(i) * (p[j] - f.getCv(j))
+							: 0.0d;
+				}
+			}
+		}
+		return revenue;
 	}
 
 	/**
@@ -206,7 +348,7 @@ public class Solution implements Phenotype {
 	 * @return the r_k vector that determines which assets have to be produced
 	 */
 	public boolean[] determineRk() {
-		return determineRk(x);
+		return determineRk(getX());
 	}
 
 	/**
@@ -214,14 +356,15 @@ public class Solution implements Phenotype {
 	 * @return the r_k vector that determines which assets have to be produced
 	 */
 	protected boolean[] determineRk(boolean[][] _x) {
-		boolean[] r = new boolean[problemDescription.getFirm().NumberOfAssets()];
-
-		for (int k = 0; k < r.length; k++) {
-			r[k] = false;
-			for (int j = 0; j < problemDescription.getFirm().NumberOfProducts(); j++) {
-				if (r[k] = problemDescription.getFirm().getA(j, k)
-						&& determineY(_x)[j])
-					break;
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		boolean[] r = new boolean[f.NumberOfAssets()];
+		boolean[] y = determineY(_x);
+
+		for (int j = 0; j < y.length; j++) {
+			if (!y[j])
+				continue;
+			for (int n = 0; n < f.numberOfAssetsOf(j); n++) {
+				r[f.getAssetOf(j, n)] = true;
 			}
 		}
 		return r;
@@ -234,7 +377,47 @@ public class Solution implements Phenotype {
 	 * @return a vector of products produced in the product line
 	 */
 	public boolean[] determineY() {
-		return determineY(x);
+		int[] a = getAssignment();
+		boolean[] y = new boolean[problemDescription.getFirm()
+				.NumberOfProducts()];
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] >= 0) {
+				y[a[i]] = true;
+			} else {
+				boolean[] row = getX()[i];
+				for (int j = 0; j < y.length; j++) {
+					if (row[j])
+						y[j] = true;
+				}
+			}
+		}
+		return y;
+	}
+
+	/**
+	 * The product of each segment in O(1), unlike a row of the assignment
+	 * matrix.
+	 * 
+	 * @return the product assigned to each segment, -1 if a segment has no or
+	 *         several products assigned
+	 */
+	public int[] getAssignment() {
+		if (assignment == null) {
+			int[] a = new int[x.length];
+			for (int i = 0; i < x.length; i++) {
+				int n = 0;
+				for (int j = 0; j < x[i].length; j++) {
+					if (x[i][j]) {
+						a[i] = j;
+						n++;
+					}
+				}
+				if (n != 1)
+					a[i] = -1;
+			}
+			assignment = a;
+		}
+		return assignment;
 	}
 
 	// ---- Protected Interface Section -----
@@ -249,41 +432,80 @@ public class Solution implements Phenotype {
 		boolean[] y = new boolean[problemDescription.getFirm()
 				.NumberOfProducts()];
 
-		for (int j = 0; j < problemDescription.getFirm().NumberOfProducts(); j++) {
-			for (int i = 0; i < problemDescription.getCustomer()
-					.numberOfSegments(); i++) {
-				if (_x[i][j]) {
-					y[j] = true; // If at least one segments gets a product
-									// assigned it has to be produced
-					break;
-				}
+		// walk the rows of x, a product is produced if at least one segment
+		// gets it assigned
+		for (int i = 0; i < problemDescription.getCustomer().numberOfSegments(); i++) {
+			boolean[] row = _x[i];
+			for (int j = 0; j < y.length; j++) {
+				if (row[j])
+					y[j] = true;
 			}
-
 		}
 		return y;
 	}
 
-	private boolean[][] generateTempX(int k) {
-		boolean[][] x_temp = copy(x);
+	/**
+	 * 
+	 * @return the contribution margin generated by each product
+	 */
+	protected double[] productContributionMargins() {
+		int[] a = getAssignment();
+		SPLProblemDescription.Customer c = problemDescription.getCustomer();
+		SPLProblemDescription.Firm f = problemDescription.getFirm();
+		double[] margin = new double[f.NumberOfProducts()];
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] >= 0) {
+				margin[a[i]] += c.getQ(i) * (p[a[i]] - f.getCv(a[i]));
+			} else {
+				boolean[] row = getX()[i];
+				for (int j = 0; j < margin.length; j++) {
+					margin[j] += row[j] ? c.getQ(i) * (p[j] - f.getCv(j))
+							: 0.0d;
+				}
+			}
+		}
+		return margin;
+	}
 
+	/**
+	 * 
+	 * @param _x
+	 *            the segment assignment
+	 * @return the contribution margin generated by each product
+	 */
+	protected double[] productContributionMargins(boolean[][] _x) {
+		double[] margin = new double[problemDescription.getFirm()
+				.NumberOfProducts()];
 		for (int i = 0; i < problemDescription.getCustomer().numberOfSegments(); i++) {
-			for (int j = 0; j < problemDescription.getFirm().NumberOfProducts(); j++) {
-				x_temp[i][j] = x_temp[i][j]
-						& !problemDescription.getFirm().getA(j, k);
-				// if seg i has j assigned and j needs k, than set temporary to
-				// false
+			for (int j = 0; j < margin.length; j++) {
+				margin[j] += _x[i][j] ? problemDescription.getCustomer().getQ(i)
+						* (p[j] - problemDescription.getFirm().getCv(j)) : 0.0d;
 			}
 		}
-
-		return x_temp;
+		return margin;
 	}
 
 	public double[] getP() {
 		return p;
 	}
 
+	/**
+	 * @return the indices of the prices in the {@link SPLPriceGrid}, null if
+	 *         the prices are not restricted to the grid
+	 */
+	public int[] getPriceIndex() {
+		return priceIndex;
+	}
+
 	// ---- Public Interface Section ----
 	public boolean[][] getX() {
+		if (x == null) {
+			x = new boolean[assignment.length][problemDescription.getFirm()
+					.NumberOfProducts()];
+			for (int i = 0; i < assignment.length; i++) {
+				x[i][assignment[i]] = true;
+			}
+		}
 		return x;
 	}
 
@@ -293,7 +515,12 @@ public class Solution implements Phenotype {
 	 * @return the profit as double value
 	 */
 	public double profit() {
-		return profit(x);
+		if (Double.isNaN(profit)) {
+			boolean[] y = determineY();
+			profit = contributionMargin() - systemStepCost(y)
+					- assetStepCost(y);
+		}
+		return profit;
 	}
 
 	/**
@@ -307,12 +534,19 @@ public class Solution implements Phenotype {
 
 	public void setP(double[] p) {
 		this.p = p;
+		this.profit = Double.NaN;
+	}
+
+	public void setPriceIndex(int[] priceIndex) {
+		this.priceIndex = priceIndex;
 	}
 
 	// ---- Helper functions
 
 	public void setX(boolean[][] x) {
 		this.x = x;
+		this.assignment = null;
+		this.profit = Double.NaN;
 	}
 
 	/**
@@ -320,7 +554,7 @@ public class Solution implements Phenotype {
 	 * @return the incurred system step cost from this solution
 	 */
 	public double systemStepCost() {
-		return systemStepCost(x);
+		return systemStepCost(determineY());
 	}
 
 	/**
@@ -328,10 +562,17 @@ public class Solution implements Phenotype {
 	 * @return the incurred system step cost from this solution
 	 */
 	protected double systemStepCost(boolean[][] _x) {
+		return systemStepCost(determineY(_x));
+	}
+
+	/**
+	 * 
+	 * @return the incurred system step cost of the product line y
+	 */
+	private double systemStepCost(boolean[] y) {
 		double cost = 0.0d;
-		for (int j = 0; j < problemDescription.getFirm().NumberOfProducts(); j++) {
-			cost += determineY(_x)[j] ? problemDescription.getFirm().getCf(j)
-					: 0.0d;
+		for (int j = 0; j < y.length; j++) {
+			cost += y[j] ? problemDescription.getFirm().getCf(j) : 0.0d;
 		}
 		return cost;
 	}
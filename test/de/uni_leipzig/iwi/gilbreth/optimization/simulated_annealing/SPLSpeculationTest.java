@@ -0,0 +1,111 @@
+/*   
+ * Copyright 2011 Johannes Müller, University of Leipzig
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.uni_leipzig.iwi.gilbreth.optimization.simulated_annealing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opt4j.common.random.RandomModule;
+import org.opt4j.optimizer.sa.CoolingSchedulesModule;
+import org.opt4j.start.Opt4JTask;
+
+import com.google.inject.Module;
+
+/**
+ * Checks that the {@link SPLSpeculationModule} does not change the search of
+ * the {@link SPLSimulatedAnnealing}.
+ * 
+ * @author Johannes Müller
+ * 
+ */
+public class SPLSpeculationTest {
+
+	private static final int ITERATIONS = 3000;
+
+	@Test
+	public void speculationKeepsTheTrajectory() throws Exception {
+		SPLProblem problem = new SPLProblem(20, 8, 10, 100.0d, 100,
+				SPLModule.ProblemSelection.RANDOM, 7L,
+				SPLInstanceGenerator.Structure.TIERED, "");
+
+		String sequential = trajectory(problem, false);
+		String speculative = trajectory(problem, true);
+
+		assertTrue(sequential.split("\n").length > ITERATIONS / 2);
+		assertEquals(sequential, speculative);
+	}
+
+	/**
+	 * Runs the optimization and returns its trajectory as CSV.
+	 */
+	private static String trajectory(SPLProblem problem, boolean speculate)
+			throws Exception {
+		File file = File.createTempFile("spl", ".trajectory");
+		try {
+			SPLSimulatedAnnealingModule sa = new SPLSimulatedAnnealingModule();
+			sa.setIterations(ITERATIONS);
+			sa.setChangeIterations(ITERATIONS);
+
+			RandomModule random = new RandomModule();
+			random.setSeed(42L);
+
+			SPLTrajectoryModule trajectory = new SPLTrajectoryModule();
+			trajectory.setTrajectoryFile(file.getPath());
+			trajectory.setTrajectoryBuffer(ITERATIONS);
+
+			List<Module> modules = new ArrayList<Module>();
+			modules.add(new SPLBatchRunner.HeadlessSPLModule(problem));
+			modules.add(sa);
+			modules.add(new CoolingSchedulesModule());
+			modules.add(random);
+			modules.add(trajectory);
+			if (speculate) {
+				SPLSpeculationModule speculation = new SPLSpeculationModule();
+				speculation.setSpeculationThreads(4);
+				speculation.setSpeculationDepth(8);
+				modules.add(speculation);
+			}
+
+			Opt4JTask task = new Opt4JTask(false);
+			task.init(modules);
+			try {
+				task.execute();
+			} finally {
+				task.close();
+			}
+
+			SPLTrajectoryReader reader = new SPLTrajectoryReader(
+					new FileInputStream(file));
+			StringWriter out = new StringWriter();
+			try {
+				reader.toCSV(out);
+			} finally {
+				reader.close();
+			}
+			return out.toString();
+		} finally {
+			file.delete();
+		}
+	}
+}
+// EOF